@@ -0,0 +1,52 @@
+package dbpedia.api.client;
+
+import java.io.IOException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Sends the requests of a single query execution with the pooled client and remembers the running
+ * request, so the execution can be aborted while it is connecting or waiting for the response.
+ * Jena's QueryExecution.abort() only closes a response which has already arrived. The pooled
+ * client is shared, it is not closed by this client.
+ */
+public class CancellableHttpClient {
+
+  private final CloseableHttpClient delegate;
+  private volatile HttpRequestBase request;
+  private volatile boolean aborted;
+
+  public CancellableHttpClient(CloseableHttpClient delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Aborts the running request and all further requests of this client
+   */
+  public void abort() {
+    aborted = true;
+    HttpRequestBase running = request;
+    if (running != null) {
+      running.abort();
+    }
+  }
+
+  public boolean isAborted() {
+    return aborted;
+  }
+
+  /**
+   * @throws IOException if the request was aborted or failed
+   */
+  public CloseableHttpResponse execute(HttpRequestBase request, HttpContext context)
+      throws IOException {
+    // set before aborted is read, so either abort() or this method sees the other one
+    this.request = request;
+    if (aborted) {
+      throw new IOException("Request aborted");
+    }
+    return delegate.execute(request, context);
+  }
+}
@@ -0,0 +1,288 @@
+package dbpedia.api.client;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Circuit breaker of a single endpoint. The outcomes of the last calls are kept in a window; if
+ * too many of them failed or were slow the circuit opens and the endpoint gets no requests for
+ * some time. Afterwards a few probe requests are let through (half-open), and the circuit closes
+ * again if all of them succeed. Use the CircuitBreaker.Builder to build it.
+ */
+public class CircuitBreaker {
+
+  private static final Logger LOG = LogManager.getLogger(CircuitBreaker.class.getName());
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private static final byte SUCCESS = 0;
+  private static final byte FAILURE = 1;
+  private static final byte SLOW = 2;
+
+  private final String name;
+  private final boolean enabled;
+  private final int minimumCalls;
+  private final int failureRateThreshold;
+  private final long slowCallMillis;
+  private final int slowCallRateThreshold;
+  private final long openNanos;
+  private final int halfOpenCalls;
+
+  private State state = State.CLOSED;
+  /**
+   * Ring buffer with the outcomes of the last calls while the circuit is closed
+   */
+  private final byte[] outcomes;
+  private int count;
+  private int next;
+  private int failures;
+  private int slowCalls;
+  private long openedAt;
+  private int halfOpenPermits;
+  private int halfOpenSuccesses;
+  private long openings;
+  private long rejectedCalls;
+
+  private CircuitBreaker(String name, Builder builder) {
+    this.name = name;
+    this.enabled = builder.enabled;
+    this.outcomes = new byte[builder.windowSize];
+    this.minimumCalls = Math.min(builder.minimumCalls, builder.windowSize);
+    this.failureRateThreshold = builder.failureRateThreshold;
+    this.slowCallMillis = builder.slowCallMillis;
+    this.slowCallRateThreshold = builder.slowCallRateThreshold;
+    this.openNanos = TimeUnit.MILLISECONDS.toNanos(builder.openMillis);
+    this.halfOpenCalls = builder.halfOpenCalls;
+  }
+
+  /**
+   * @return true if a call would be permitted now, without reserving it
+   */
+  public synchronized boolean isAvailable() {
+    if (!enabled) {
+      return true;
+    }
+    switch (state) {
+      case OPEN:
+        return System.nanoTime() - openedAt >= openNanos;
+      case HALF_OPEN:
+        return halfOpenPermits > 0;
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * Reserves a call. The result of every permitted call has to be reported with onSuccess or
+   * onFailure.
+   *
+   * @return false if the circuit is open and the call must not be sent
+   */
+  public synchronized boolean tryAcquire() {
+    if (!enabled) {
+      return true;
+    }
+    if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+      state = State.HALF_OPEN;
+      halfOpenPermits = halfOpenCalls;
+      halfOpenSuccesses = 0;
+      LOG.info("Circuit of " + name + " is half-open, sending probe requests.");
+    }
+    if (state == State.CLOSED) {
+      return true;
+    }
+    if (state == State.HALF_OPEN && halfOpenPermits > 0) {
+      halfOpenPermits--;
+      return true;
+    }
+    rejectedCalls++;
+    return false;
+  }
+
+  public synchronized void onSuccess(long millis) {
+    if (!enabled) {
+      return;
+    }
+    boolean slow = millis >= slowCallMillis;
+    if (state == State.HALF_OPEN) {
+      if (slow) {
+        open();
+      } else if (++halfOpenSuccesses >= halfOpenCalls) {
+        close();
+      }
+    } else if (state == State.CLOSED) {
+      record(slow ? SLOW : SUCCESS);
+    }
+  }
+
+  public synchronized void onFailure() {
+    if (!enabled) {
+      return;
+    }
+    if (state == State.HALF_OPEN) {
+      open();
+    } else if (state == State.CLOSED) {
+      record(FAILURE);
+    }
+  }
+
+  private void record(byte outcome) {
+    if (count == outcomes.length) {
+      remove(outcomes[next]);
+    } else {
+      count++;
+    }
+    outcomes[next] = outcome;
+    next = (next + 1) % outcomes.length;
+    if (outcome == FAILURE) {
+      failures++;
+    } else if (outcome == SLOW) {
+      slowCalls++;
+    }
+
+    if (count >= minimumCalls && (failures * 100 >= failureRateThreshold * count
+        || slowCalls * 100 >= slowCallRateThreshold * count)) {
+      LOG.warn("Opening circuit of " + name + ": " + failures + " failed and " + slowCalls
+          + " slow of the last " + count + " calls.");
+      open();
+    }
+  }
+
+  private void remove(byte outcome) {
+    if (outcome == FAILURE) {
+      failures--;
+    } else if (outcome == SLOW) {
+      slowCalls--;
+    }
+  }
+
+  private void open() {
+    if (state == State.HALF_OPEN) {
+      LOG.warn("Probe request to " + name + " failed, opening circuit again.");
+    }
+    state = State.OPEN;
+    openedAt = System.nanoTime();
+    openings++;
+    resetWindow();
+  }
+
+  private void close() {
+    LOG.info("Circuit of " + name + " is closed again.");
+    state = State.CLOSED;
+    resetWindow();
+  }
+
+  private void resetWindow() {
+    count = 0;
+    next = 0;
+    failures = 0;
+    slowCalls = 0;
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * @return how often the circuit was opened
+   */
+  public synchronized long getOpenings() {
+    return openings;
+  }
+
+  /**
+   * @return number of calls which were not sent because the circuit was open
+   */
+  public synchronized long getRejectedCalls() {
+    return rejectedCalls;
+  }
+
+  /**
+   * Settings of circuit breakers. The same Builder can build the breakers of several endpoints.
+   */
+  public static class Builder {
+
+    private boolean enabled = true;
+    private int windowSize = 20;
+    private int minimumCalls = 10;
+    private int failureRateThreshold = 50;
+    private long slowCallMillis = 10000;
+    private int slowCallRateThreshold = 80;
+    private long openMillis = 30000;
+    private int halfOpenCalls = 3;
+
+    /**
+     * A disabled circuit breaker is always closed
+     */
+    public Builder setEnabled(boolean enabled) {
+      this.enabled = enabled;
+      return this;
+    }
+
+    /**
+     * Number of recent calls from which the failure and slow call rates are calculated
+     */
+    public Builder setWindowSize(int windowSize) {
+      this.windowSize = windowSize;
+      return this;
+    }
+
+    /**
+     * Minimum number of calls in the window before the circuit can open
+     */
+    public Builder setMinimumCalls(int minimumCalls) {
+      this.minimumCalls = minimumCalls;
+      return this;
+    }
+
+    /**
+     * Percentage of failed calls at which the circuit opens
+     */
+    public Builder setFailureRateThreshold(int failureRateThreshold) {
+      this.failureRateThreshold = failureRateThreshold;
+      return this;
+    }
+
+    /**
+     * Calls which take at least this time are counted as slow
+     */
+    public Builder setSlowCallMillis(long slowCallMillis) {
+      this.slowCallMillis = slowCallMillis;
+      return this;
+    }
+
+    /**
+     * Percentage of slow calls at which the circuit opens
+     */
+    public Builder setSlowCallRateThreshold(int slowCallRateThreshold) {
+      this.slowCallRateThreshold = slowCallRateThreshold;
+      return this;
+    }
+
+    /**
+     * Time for which an open circuit rejects all calls before it is probed
+     */
+    public Builder setOpenMillis(long openMillis) {
+      this.openMillis = openMillis;
+      return this;
+    }
+
+    /**
+     * Number of successful probe calls needed to close the circuit again
+     */
+    public Builder setHalfOpenCalls(int halfOpenCalls) {
+      this.halfOpenCalls = halfOpenCalls;
+      return this;
+    }
+
+    /**
+     * @param name name of the protected endpoint, used for logging
+     */
+    public CircuitBreaker build(String name) {
+      return new CircuitBreaker(name, this);
+    }
+  }
+}
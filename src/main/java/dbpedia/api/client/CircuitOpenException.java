@@ -0,0 +1,11 @@
+package dbpedia.api.client;
+
+/**
+ * Thrown instead of sending a query if the circuits of all endpoints are open
+ */
+public class CircuitOpenException extends RuntimeException {
+
+  public CircuitOpenException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,125 @@
+package dbpedia.api.client;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time budget of a request. Work for the request (e.g. a query execution) can register an abort
+ * action, which is run when the deadline expires or when the request is cancelled because the
+ * client went away.
+ */
+public class Deadline {
+
+  private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+  private static final long NONE_MILLIS = TimeUnit.DAYS.toMillis(365);
+
+  private final long expiresAt;
+  private final boolean expires;
+  private volatile boolean cancelled;
+  private final Set<Runnable> abortActions = ConcurrentHashMap.newKeySet();
+
+  private Deadline(long millis, boolean expires) {
+    this.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    this.expires = expires;
+  }
+
+  /**
+   * Cancelled timers are removed from the queue right away. Otherwise each of them would keep its
+   * abort action, and with it e.g. the request, until the deadline is reached.
+   */
+  private static ScheduledThreadPoolExecutor createTimer() {
+    ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "deadline-timer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    timer.setRemoveOnCancelPolicy(true);
+    return timer;
+  }
+
+  /**
+   * @param millis time budget from now on
+   */
+  public static Deadline after(long millis) {
+    return new Deadline(millis, true);
+  }
+
+  /**
+   * @return a deadline which never expires, only cancelling it runs the abort actions. Its
+   * remaining time is a year.
+   */
+  public static Deadline none() {
+    return new Deadline(NONE_MILLIS, false);
+  }
+
+  /**
+   * @return the remaining time in milliseconds, 0 if the deadline has expired
+   */
+  public long getRemainingMillis() {
+    return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime()));
+  }
+
+  public boolean isExpired() {
+    return expires && expiresAt - System.nanoTime() <= 0;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Cancels the request and runs all registered abort actions
+   */
+  public void cancel() {
+    cancelled = true;
+    for (Runnable action : abortActions) {
+      if (abortActions.remove(action)) {
+        action.run();
+      }
+    }
+  }
+
+  /**
+   * Runs the action once when the deadline expires or the request is cancelled, unless the
+   * returned registration is closed before
+   */
+  public Registration onAbort(Runnable action) {
+    abortActions.add(action);
+    if (cancelled && abortActions.remove(action)) {
+      action.run();
+      return () -> {
+      };
+    }
+    if (!expires) {
+      return () -> abortActions.remove(action);
+    }
+    ScheduledFuture<?> timer = TIMER.schedule(() -> {
+      if (abortActions.remove(action)) {
+        action.run();
+      }
+    }, expiresAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+    return () -> {
+      abortActions.remove(action);
+      timer.cancel(false);
+    };
+  }
+
+  /**
+   * @return number of abort actions waiting for their deadline to expire
+   */
+  public static int getScheduledAborts() {
+    return TIMER.getQueue().size();
+  }
+
+  /**
+   * Handle of an abort action, close it when the work is done
+   */
+  public interface Registration extends AutoCloseable {
+
+    @Override
+    void close();
+  }
+}
@@ -0,0 +1,11 @@
+package dbpedia.api.client;
+
+/**
+ * Thrown if a query was aborted because the deadline of its request expired
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+  public DeadlineExceededException(String message) {
+    super(message);
+  }
+}
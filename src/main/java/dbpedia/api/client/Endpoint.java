@@ -0,0 +1,120 @@
+package dbpedia.api.client;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A SPARQL endpoint together with the statistics which are used to choose between endpoints:
+ * the exponentially weighted moving average (EWMA) of its latency, the number of outstanding
+ * requests and the most recent latencies for percentiles.
+ */
+public class Endpoint {
+
+  /**
+   * Weight of a new latency in the moving average
+   */
+  private static final double EWMA_WEIGHT = 0.3;
+  /**
+   * Number of recent latencies which are kept for percentiles
+   */
+  private static final int SAMPLE_SIZE = 100;
+  /**
+   * Minimum number of latencies needed for a percentile
+   */
+  private static final int MIN_SAMPLES = 10;
+
+  private final String url;
+  private final CircuitBreaker circuitBreaker;
+  private final AtomicInteger outstanding = new AtomicInteger();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  /**
+   * Moving average of the latency in milliseconds, negative as long as it is unknown
+   */
+  private volatile double ewmaMillis = -1;
+  private final long[] samples = new long[SAMPLE_SIZE];
+  private int sampleCount;
+  private int nextSample;
+
+  public Endpoint(String url, CircuitBreaker circuitBreaker) {
+    this.url = url;
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  /**
+   * Estimated cost of sending a request to this endpoint now: its average latency weighted with
+   * the requests that are already waiting for it. An endpoint without latencies is tried first.
+   */
+  public double getCost() {
+    double latency = ewmaMillis < 0 ? 0 : ewmaMillis;
+    return (latency + 1) * (outstanding.get() + 1);
+  }
+
+  void requestStarted() {
+    requests.incrementAndGet();
+    outstanding.incrementAndGet();
+  }
+
+  void requestFinished() {
+    outstanding.decrementAndGet();
+  }
+
+  void requestFailed() {
+    failures.incrementAndGet();
+  }
+
+  /**
+   * Adds the latency of a successful request to the moving average and the samples
+   */
+  synchronized void recordLatency(long millis) {
+    ewmaMillis = ewmaMillis < 0 ? millis : EWMA_WEIGHT * millis + (1 - EWMA_WEIGHT) * ewmaMillis;
+    samples[nextSample] = millis;
+    nextSample = (nextSample + 1) % SAMPLE_SIZE;
+    sampleCount = Math.min(sampleCount + 1, SAMPLE_SIZE);
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the latency in milliseconds below which the given percentage of the recent requests
+   * were answered, or -1 if there are not enough requests yet
+   */
+  public synchronized long getLatencyPercentile(double percentile) {
+    if (sampleCount < MIN_SAMPLES) {
+      return -1;
+    }
+    long[] sorted = Arrays.copyOf(samples, sampleCount);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile / 100 * sampleCount) - 1;
+    return sorted[Math.max(0, Math.min(index, sampleCount - 1))];
+  }
+
+  public double getEwmaMillis() {
+    return ewmaMillis;
+  }
+
+  public int getOutstanding() {
+    return outstanding.get();
+  }
+
+  public long getRequests() {
+    return requests.get();
+  }
+
+  public long getFailures() {
+    return failures.get();
+  }
+
+  @Override
+  public String toString() {
+    return url;
+  }
+}
@@ -0,0 +1,333 @@
+package dbpedia.api.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Pool of persistent HTTP connections to the SPARQL endpoint. Use the EndpointConnectionPool.Builder
+ * to build it.
+ */
+public class EndpointConnectionPool implements Closeable {
+
+  private static final Logger LOG = LogManager.getLogger(EndpointConnectionPool.class.getName());
+
+  private PoolingHttpClientConnectionManager connectionManager;
+  private CloseableHttpClient httpClient;
+  /**
+   * Timeouts for all requests. The config of the HttpContext overrides the default config of the
+   * client, so this config has to be put into the context of every request.
+   */
+  private RequestConfig requestConfig;
+  private boolean responseCompression;
+  private final TransferMetrics transferMetrics = new TransferMetrics();
+
+  private EndpointConnectionPool() {
+  } //used by the Builder
+
+  public CloseableHttpClient getHttpClient() {
+    return httpClient;
+  }
+
+  /**
+   * @return true if gzip or deflate encoded responses are accepted
+   */
+  public boolean isResponseCompression() {
+    return responseCompression;
+  }
+
+  /**
+   * @return bytes and transfer time of the responses
+   */
+  public TransferMetrics getTransferMetrics() {
+    return transferMetrics;
+  }
+
+  /**
+   * Creates the context for a request to the endpoint, containing the timeouts of the pool
+   */
+  public HttpClientContext createContext() {
+    HttpClientContext context = HttpClientContext.create();
+    context.setRequestConfig(requestConfig);
+    return context;
+  }
+
+  /**
+   * Creates the context for a request which has to finish within the given time. The socket and
+   * connect timeouts of the pool are shortened to it.
+   */
+  public HttpClientContext createContext(long remainingMillis) {
+    int remaining = (int) Math.min(remainingMillis, Integer.MAX_VALUE);
+    HttpClientContext context = HttpClientContext.create();
+    context.setRequestConfig(RequestConfig.copy(requestConfig)
+        .setSocketTimeout(Math.min(remaining, requestConfig.getSocketTimeout()))
+        .setConnectTimeout(Math.min(remaining, requestConfig.getConnectTimeout()))
+        .build());
+    return context;
+  }
+
+  /**
+   * Opens connections to the endpoint and puts them into the pool, so the first requests do not
+   * have to wait for TCP and TLS handshakes. Errors are logged only, because the endpoint might not
+   * be reachable yet.
+   *
+   * @param endpoint URL of the SPARQL endpoint
+   * @param connections number of connections to open, limited by maxPerRoute
+   * @return the number of opened connections
+   */
+  public int warmUp(String endpoint, int connections) {
+    URI uri = URI.create(endpoint);
+    boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+    int port = uri.getPort() > 0 ? uri.getPort() : (secure ? 443 : 80);
+    HttpRoute route = new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()), null,
+        secure);
+    int count = Math.min(connections, connectionManager.getMaxPerRoute(route));
+
+    // all connections are leased before any of them is released, otherwise the pool would hand
+    // out the same connection again
+    List<HttpClientConnection> opened = new ArrayList<>();
+    try {
+      for (int i = 0; i < count; i++) {
+        HttpClientConnection connection = connectionManager.requestConnection(route, null)
+            .get(requestConfig.getConnectTimeout(), TimeUnit.MILLISECONDS);
+        HttpClientContext context = createContext();
+        connectionManager.connect(connection, route, requestConfig.getConnectTimeout(), context);
+        connectionManager.routeComplete(connection, route, context);
+        // binds the socket streams, otherwise the stale check of the pool fails on this connection
+        connection.flush();
+        opened.add(connection);
+      }
+    } catch (Exception e) {
+      LOG.warn("Could not open connections to " + endpoint + ": " + e);
+    } finally {
+      for (HttpClientConnection connection : opened) {
+        connectionManager.releaseConnection(connection, null, -1, TimeUnit.MILLISECONDS);
+      }
+    }
+    LOG.info(opened.size() + " connections to " + endpoint + " opened.");
+    return opened.size();
+  }
+
+  /**
+   * @return number of leased, available and pending connections of the pool
+   */
+  public PoolStats getStats() {
+    return connectionManager.getTotalStats();
+  }
+
+  @Override
+  public void close() throws IOException {
+    httpClient.close();
+  }
+
+  public static class Builder {
+
+    private int maxTotal = 200;
+    private int maxPerRoute = 100;
+    private int idleTimeoutSeconds = 60;
+    private int keepAliveSeconds = 30;
+    private int connectTimeoutMillis = 5000;
+    private int socketTimeoutMillis = 60000;
+    private int connectionRequestTimeoutMillis = 10000;
+    private int tlsSessionCacheSize = 1000;
+    private int tlsSessionTimeoutSeconds = 3600;
+    private boolean responseCompression = true;
+    private boolean requestCompression = false;
+    private int requestCompressionMinBytes = 1024;
+
+    /**
+     * Maximum number of open connections
+     */
+    public Builder setMaxTotal(int maxTotal) {
+      this.maxTotal = maxTotal;
+      return this;
+    }
+
+    /**
+     * Maximum number of open connections to a single host
+     */
+    public Builder setMaxPerRoute(int maxPerRoute) {
+      this.maxPerRoute = maxPerRoute;
+      return this;
+    }
+
+    /**
+     * Connections which are not used for this time are closed
+     */
+    public Builder setIdleTimeoutSeconds(int idleTimeoutSeconds) {
+      this.idleTimeoutSeconds = idleTimeoutSeconds;
+      return this;
+    }
+
+    /**
+     * How long connections are kept alive if the endpoint does not send a Keep-Alive header
+     */
+    public Builder setKeepAliveSeconds(int keepAliveSeconds) {
+      this.keepAliveSeconds = keepAliveSeconds;
+      return this;
+    }
+
+    public Builder setConnectTimeoutMillis(int connectTimeoutMillis) {
+      this.connectTimeoutMillis = connectTimeoutMillis;
+      return this;
+    }
+
+    /**
+     * Maximum time of inactivity while reading the response
+     */
+    public Builder setSocketTimeoutMillis(int socketTimeoutMillis) {
+      this.socketTimeoutMillis = socketTimeoutMillis;
+      return this;
+    }
+
+    /**
+     * Maximum time to wait for a free connection of the pool
+     */
+    public Builder setConnectionRequestTimeoutMillis(int connectionRequestTimeoutMillis) {
+      this.connectionRequestTimeoutMillis = connectionRequestTimeoutMillis;
+      return this;
+    }
+
+    /**
+     * Number of TLS sessions which are cached for resumption (abbreviated handshakes)
+     */
+    public Builder setTlsSessionCacheSize(int tlsSessionCacheSize) {
+      this.tlsSessionCacheSize = tlsSessionCacheSize;
+      return this;
+    }
+
+    public Builder setTlsSessionTimeoutSeconds(int tlsSessionTimeoutSeconds) {
+      this.tlsSessionTimeoutSeconds = tlsSessionTimeoutSeconds;
+      return this;
+    }
+
+    /**
+     * Accept gzip and deflate encoded responses, which are decoded while they are read
+     */
+    public Builder setResponseCompression(boolean responseCompression) {
+      this.responseCompression = responseCompression;
+      return this;
+    }
+
+    /**
+     * Send the bodies of POST requests (long queries) gzip encoded. Only enable it if all endpoints
+     * accept encoded request bodies.
+     */
+    public Builder setRequestCompression(boolean requestCompression) {
+      this.requestCompression = requestCompression;
+      return this;
+    }
+
+    /**
+     * Request bodies shorter than this are sent unencoded
+     */
+    public Builder setRequestCompressionMinBytes(int requestCompressionMinBytes) {
+      this.requestCompressionMinBytes = requestCompressionMinBytes;
+      return this;
+    }
+
+    public EndpointConnectionPool build() {
+      EndpointConnectionPool pool = new EndpointConnectionPool();
+      pool.responseCompression = responseCompression;
+
+      // one SSLContext for all connections, so its session cache is shared
+      SSLContext sslContext = SSLContexts.createSystemDefault();
+      SSLSessionContext sessions = sslContext.getClientSessionContext();
+      sessions.setSessionCacheSize(tlsSessionCacheSize);
+      sessions.setSessionTimeout(tlsSessionTimeoutSeconds);
+      Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+          .register("http", PlainConnectionSocketFactory.getSocketFactory())
+          .register("https", new SSLConnectionSocketFactory(sslContext))
+          .build();
+
+      pool.connectionManager = new PoolingHttpClientConnectionManager(registry);
+      pool.connectionManager.setMaxTotal(maxTotal);
+      pool.connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+      pool.connectionManager.setDefaultSocketConfig(SocketConfig.custom()
+          .setSoKeepAlive(true)
+          .setTcpNoDelay(true)
+          .setSoTimeout(socketTimeoutMillis)
+          .build());
+
+      pool.requestConfig = RequestConfig.custom()
+          .setContentCompressionEnabled(responseCompression)
+          .setConnectTimeout(connectTimeoutMillis)
+          .setSocketTimeout(socketTimeoutMillis)
+          .setConnectionRequestTimeout(connectionRequestTimeoutMillis)
+          .build();
+
+      long keepAliveMillis = TimeUnit.SECONDS.toMillis(keepAliveSeconds);
+      ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+        long duration = DefaultConnectionKeepAliveStrategy.INSTANCE
+            .getKeepAliveDuration(response, context);
+        return duration > 0 ? duration : keepAliveMillis;
+      };
+
+      HttpRequestInterceptor compressRequest = (request, context) -> {
+        if (!(request instanceof HttpEntityEnclosingRequest)) {
+          return;
+        }
+        HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+        if (entity != null && entity.getContentEncoding() == null
+            && entity.getContentLength() >= requestCompressionMinBytes) {
+          ((HttpEntityEnclosingRequest) request).setEntity(new GzipCompressingEntity(entity));
+          pool.transferMetrics.requestCompressed();
+        }
+      };
+
+      HttpClientBuilder builder = HttpClients.custom();
+      if (requestCompression) {
+        // before RequestContent, which sets the Content-Encoding header from the entity
+        builder.addInterceptorFirst(compressRequest);
+      }
+      pool.httpClient = builder
+          // the built-in decoding is replaced, so the bytes can be counted before and after it
+          .disableContentCompression()
+          .addInterceptorLast(new RequestAcceptEncoding())
+          .addInterceptorLast(pool.transferMetrics.wireCounter())
+          .addInterceptorLast(new ResponseContentEncoding())
+          .addInterceptorLast(pool.transferMetrics.decodedCounter())
+          .setConnectionManager(pool.connectionManager)
+          .setDefaultRequestConfig(pool.requestConfig)
+          .setKeepAliveStrategy(keepAliveStrategy)
+          // connections are not bound to a user, so every connection can be reused
+          .disableConnectionState()
+          .evictExpiredConnections()
+          .evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+          .build();
+      return pool;
+    }
+  }
+}
@@ -0,0 +1,392 @@
+package dbpedia.api.client;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Distributes requests over several SPARQL endpoints (e.g. mirrors of the same data). Every request
+ * goes to the endpoint with the lowest cost, i.e. the lowest latency (EWMA) weighted with its
+ * outstanding requests. If hedging is enabled and the endpoint does not answer within a percentile
+ * of its recent latencies, the same request is sent to a second endpoint and the first answer is
+ * used and the other one is aborted; if it fails before that, the request is sent to the second
+ * endpoint right away. The hedged requests run on a bounded pool, without a free thread a request
+ * is sent without hedging. Every
+ * endpoint has a circuit breaker, endpoints with an open circuit get no requests. Use
+ * the EndpointRouter.Builder to build it.
+ */
+public class EndpointRouter implements Closeable {
+
+  private static final Logger LOG = LogManager.getLogger(EndpointRouter.class.getName());
+
+  private final List<Endpoint> endpoints;
+  private final boolean hedging;
+  private final double hedgePercentile;
+  private final long initialHedgeDelayMillis;
+  private final ExecutorService hedgeExecutor;
+  private final AtomicLong hedgedRequests = new AtomicLong();
+  private final AtomicLong hedgeWins = new AtomicLong();
+  private final AtomicLong failovers = new AtomicLong();
+  private final AtomicLong unhedgedRequests = new AtomicLong();
+
+  private EndpointRouter(Builder builder) {
+    if (builder.urls.isEmpty()) {
+      throw new IllegalArgumentException("At least one SPARQL endpoint is needed");
+    }
+    List<Endpoint> list = new ArrayList<>();
+    for (String url : builder.urls) {
+      list.add(new Endpoint(url, builder.circuitBreaker.build(url)));
+    }
+    this.endpoints = Collections.unmodifiableList(list);
+    this.hedging = builder.hedging && endpoints.size() > 1;
+    this.hedgePercentile = builder.hedgePercentile;
+    this.initialHedgeDelayMillis = builder.initialHedgeDelayMillis;
+    AtomicInteger threadNumber = new AtomicInteger();
+    // no queue, a request is rejected if all threads are busy
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(builder.maxHedgeThreads,
+        builder.maxHedgeThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "sparql-hedge-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    this.hedgeExecutor = executor;
+  }
+
+  /**
+   * Sends a request to the best endpoint, and to a second one if hedging is enabled and the first
+   * one is too slow or fails. Exceptions of the request are rethrown; with hedging only if both
+   * requests fail or the first one failed because of the query. Endpoints with an open circuit
+   * are skipped.
+   *
+   * @param request sends the request to the given endpoint URL
+   * @return the first result
+   * @throws CircuitOpenException if the circuits of all endpoints are open
+   */
+  public <V> V execute(Function<String, V> request) {
+    return execute((url, attempt) -> request.apply(url));
+  }
+
+  /**
+   * Like execute(Function), but a hedged request which lost is aborted: the deadline of its
+   * attempt is cancelled when the other endpoint answered first.
+   *
+   * @param request sends the request to the given endpoint URL and aborts it when the deadline of
+   * the attempt is cancelled
+   * @return the first result
+   * @throws CircuitOpenException if the circuits of all endpoints are open
+   */
+  public <V> V execute(BiFunction<String, Deadline, V> request) {
+    Endpoint primary = select(null);
+    if (primary == null) {
+      throw new CircuitOpenException("The circuits of all SPARQL endpoints are open");
+    }
+    if (!hedging) {
+      return send(primary, request, Deadline.none());
+    }
+
+    Deadline primaryAttempt = Deadline.none();
+    CompletableFuture<V> primaryResult;
+    try {
+      primaryResult = CompletableFuture
+          .supplyAsync(() -> send(primary, request, primaryAttempt), hedgeExecutor);
+    } catch (RejectedExecutionException e) {
+      unhedgedRequests.incrementAndGet();
+      return send(primary, request, primaryAttempt);
+    }
+    try {
+      return primaryResult.get(getHedgeDelay(primary), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      // the primary endpoint is slow, hedge below
+    } catch (ExecutionException e) {
+      return failOver(primary, request, unwrap(e.getCause()));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for " + primary, e);
+    }
+
+    Endpoint secondary = select(primary);
+    if (secondary == null) {
+      // no other endpoint is available, keep waiting for the first one
+      try {
+        return primaryResult.join();
+      } catch (CompletionException e) {
+        throw unwrap(e.getCause());
+      }
+    }
+    Deadline secondaryAttempt = Deadline.none();
+    CompletableFuture<V> secondaryResult;
+    try {
+      secondaryResult = CompletableFuture
+          .supplyAsync(() -> send(secondary, request, secondaryAttempt), hedgeExecutor);
+    } catch (RejectedExecutionException e) {
+      unhedgedRequests.incrementAndGet();
+      try {
+        return primaryResult.join();
+      } catch (CompletionException failure) {
+        throw unwrap(failure.getCause());
+      }
+    }
+    hedgedRequests.incrementAndGet();
+    LOG.debug(primary + " is slow, sending the query to " + secondary + " too.");
+    return firstSuccessful(primaryResult, primaryAttempt, secondaryResult, secondaryAttempt);
+  }
+
+  /**
+   * Sends the request to another endpoint after the primary endpoint failed before the hedge
+   * delay, unless the query itself was at fault
+   */
+  private <V> V failOver(Endpoint primary, BiFunction<String, Deadline, V> request,
+      RuntimeException error) {
+    Endpoint secondary = isEndpointFailure(error) ? select(primary) : null;
+    if (secondary == null) {
+      throw error;
+    }
+    failovers.incrementAndGet();
+    LOG.debug(primary + " failed, sending the query to " + secondary + ".");
+    return send(secondary, request, Deadline.none());
+  }
+
+  /**
+   * Waits for the first of both results which is not exceptional. The request of the loser is
+   * aborted, so it releases its hedge thread and connection.
+   */
+  private <V> V firstSuccessful(CompletableFuture<V> primaryResult, Deadline primaryAttempt,
+      CompletableFuture<V> secondaryResult, Deadline secondaryAttempt) {
+    // completed with the future which succeeded first
+    CompletableFuture<CompletableFuture<V>> winner = new CompletableFuture<>();
+    AtomicInteger failures = new AtomicInteger();
+    for (CompletableFuture<V> result : Arrays.asList(primaryResult, secondaryResult)) {
+      result.whenComplete((value, error) -> {
+        if (error == null) {
+          winner.complete(result);
+        } else if (failures.incrementAndGet() == 2) {
+          winner.completeExceptionally(error);
+        }
+      });
+    }
+    try {
+      CompletableFuture<V> first = winner.join();
+      if (first == secondaryResult) {
+        hedgeWins.incrementAndGet();
+        primaryAttempt.cancel();
+      } else {
+        secondaryAttempt.cancel();
+      }
+      return first.join();
+    } catch (CompletionException e) {
+      throw unwrap(e.getCause());
+    }
+  }
+
+  private <V> V send(Endpoint endpoint, BiFunction<String, Deadline, V> request,
+      Deadline attempt) {
+    CircuitBreaker circuitBreaker = endpoint.getCircuitBreaker();
+    if (!circuitBreaker.tryAcquire()) {
+      throw new CircuitOpenException("The circuit of " + endpoint + " is open");
+    }
+    endpoint.requestStarted();
+    long start = System.nanoTime();
+    try {
+      V result = request.apply(endpoint.getUrl(), attempt);
+      long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      endpoint.recordLatency(millis);
+      circuitBreaker.onSuccess(millis);
+      return result;
+    } catch (RuntimeException e) {
+      long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      if (attempt.isCancelled()) {
+        // aborted because the other endpoint was faster, it took at least this long
+        endpoint.recordLatency(millis);
+        circuitBreaker.onSuccess(millis);
+        throw e;
+      }
+      endpoint.requestFailed();
+      if (isEndpointFailure(e)) {
+        circuitBreaker.onFailure();
+      } else {
+        // the query or the request was at fault, not the endpoint
+        circuitBreaker.onSuccess(millis);
+      }
+      throw e;
+    } finally {
+      endpoint.requestFinished();
+    }
+  }
+
+  /**
+   * @return false if the endpoint rejected the query itself (4xx) or the request was aborted
+   */
+  private static boolean isEndpointFailure(RuntimeException e) {
+    if (e instanceof DeadlineExceededException || e instanceof QueryCancelledException) {
+      return false;
+    }
+    if (e instanceof QueryExceptionHTTP) {
+      int status = ((QueryExceptionHTTP) e).getResponseCode();
+      return status < 400 || status >= 500;
+    }
+    return true;
+  }
+
+  /**
+   * @param excluded endpoint that must not be selected, may be null
+   * @return the available endpoint with the lowest cost, the first one of the list for equal costs,
+   * or null if the circuits of all endpoints are open
+   */
+  Endpoint select(Endpoint excluded) {
+    Endpoint best = null;
+    double bestCost = Double.MAX_VALUE;
+    for (Endpoint endpoint : endpoints) {
+      if (endpoint == excluded || !endpoint.getCircuitBreaker().isAvailable()) {
+        continue;
+      }
+      double cost = endpoint.getCost();
+      if (cost < bestCost) {
+        best = endpoint;
+        bestCost = cost;
+      }
+    }
+    return best;
+  }
+
+  private long getHedgeDelay(Endpoint endpoint) {
+    long percentile = endpoint.getLatencyPercentile(hedgePercentile);
+    return percentile < 0 ? initialHedgeDelayMillis : percentile;
+  }
+
+  private static RuntimeException unwrap(Throwable cause) {
+    if (cause instanceof CompletionException && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    if (cause instanceof RuntimeException) {
+      return (RuntimeException) cause;
+    }
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    return new IllegalStateException(cause);
+  }
+
+  public List<Endpoint> getEndpoints() {
+    return endpoints;
+  }
+
+  public boolean isHedging() {
+    return hedging;
+  }
+
+  /**
+   * @return number of requests which were sent to a second endpoint
+   */
+  public long getHedgedRequests() {
+    return hedgedRequests.get();
+  }
+
+  /**
+   * @return number of hedged requests for which the second endpoint answered first
+   */
+  public long getHedgeWins() {
+    return hedgeWins.get();
+  }
+
+  /**
+   * @return number of requests which were sent to a second endpoint because the first one failed
+   *     before the hedge delay
+   */
+  public long getFailovers() {
+    return failovers.get();
+  }
+
+  /**
+   * @return number of requests which were not hedged because all hedge threads were busy
+   */
+  public long getUnhedgedRequests() {
+    return unhedgedRequests.get();
+  }
+
+  @Override
+  public void close() {
+    hedgeExecutor.shutdown();
+  }
+
+  public static class Builder {
+
+    private List<String> urls = new ArrayList<>();
+    private boolean hedging = false;
+    private double hedgePercentile = 95;
+    private long initialHedgeDelayMillis = 1000;
+    private int maxHedgeThreads = 64;
+    private CircuitBreaker.Builder circuitBreaker = new CircuitBreaker.Builder();
+
+    /**
+     * URLs of the endpoints, at least one
+     */
+    public Builder setEndpoints(List<String> urls) {
+      this.urls = urls;
+      return this;
+    }
+
+    /**
+     * Send a second request if the first endpoint is slow
+     */
+    public Builder setHedging(boolean hedging) {
+      this.hedging = hedging;
+      return this;
+    }
+
+    /**
+     * Percentile (0-100) of the latencies of an endpoint after which the second request is sent
+     */
+    public Builder setHedgePercentile(double hedgePercentile) {
+      this.hedgePercentile = hedgePercentile;
+      return this;
+    }
+
+    /**
+     * Delay of the second request as long as there are not enough latencies for the percentile
+     */
+    public Builder setInitialHedgeDelayMillis(long initialHedgeDelayMillis) {
+      this.initialHedgeDelayMillis = initialHedgeDelayMillis;
+      return this;
+    }
+
+    /**
+     * Threads which send hedged requests, each request needs one or two of them while it runs
+     */
+    public Builder setMaxHedgeThreads(int maxHedgeThreads) {
+      this.maxHedgeThreads = maxHedgeThreads;
+      return this;
+    }
+
+    /**
+     * Settings of the circuit breaker of every endpoint
+     */
+    public Builder setCircuitBreaker(CircuitBreaker.Builder circuitBreaker) {
+      this.circuitBreaker = circuitBreaker;
+      return this;
+    }
+
+    public EndpointRouter build() {
+      return new EndpointRouter(this);
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package dbpedia.api.client;
+
+import org.apache.jena.query.Query;
+
+/**
+ * A query with its canonical key (see {@link QueryCanonicalizer}). The key is computed once per
+ * request and passed on with the query to the caches and the shared executions. The query must not
+ * be changed afterwards.
+ */
+public final class KeyedQuery {
+
+  private final Query query;
+  /**
+   * canonical key of the query without OFFSET and LIMIT
+   */
+  private final String unwindowedKey;
+  private final String key;
+
+  /**
+   * @param query is canonicalized once
+   */
+  public KeyedQuery(Query query) {
+    this(query, QueryCanonicalizer.unwindowedKey(query));
+  }
+
+  private KeyedQuery(Query query, String unwindowedKey) {
+    this.query = query;
+    this.unwindowedKey = unwindowedKey;
+    this.key = QueryCanonicalizer.windowedKey(unwindowedKey, query);
+  }
+
+  public Query getQuery() {
+    return query;
+  }
+
+  /**
+   * @return the canonical key, equal to QueryCanonicalizer.canonicalKey(getQuery())
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * @return a copy of the query with another OFFSET and LIMIT, its key is derived from this key
+   *     without canonicalizing the query again
+   */
+  public KeyedQuery withWindow(long offset, long limit) {
+    Query copy = query.cloneQuery();
+    copy.setOffset(offset);
+    copy.setLimit(limit);
+    return new KeyedQuery(copy, unwindowedKey);
+  }
+
+  @Override
+  public String toString() {
+    return query.toString();
+  }
+}
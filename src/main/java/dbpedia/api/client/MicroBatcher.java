@@ -0,0 +1,362 @@
+package dbpedia.api.client;
+
+import dbpedia.api.model.ResultSetWrapper;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Merges concurrent queries which only differ in the entities of their VALUES block (like the
+ * queries of /values requests) into one query for all entities. The first query of a batch waits
+ * for a short window for more queries, sends the merged query and splits the result by the
+ * entities of every query. LIMIT and OFFSET of the single queries are applied to their part of the
+ * result. Use the MicroBatcher.Builder to build it.
+ */
+public class MicroBatcher {
+
+  private static final Logger LOG = LogManager.getLogger(MicroBatcher.class.getName());
+
+  private final Var variable;
+  private final boolean enabled;
+  private final long windowNanos;
+  private final int maxBatchSize;
+  private final int maxRows;
+  /**
+   * Batches which still accept queries, by the query without entities and windowing
+   */
+  private final ConcurrentMap<String, Batch> openBatches = new ConcurrentHashMap<>();
+  private final AtomicLong mergedQueries = new AtomicLong();
+  private final AtomicLong batchedQueries = new AtomicLong();
+  private final AtomicLong truncatedBatches = new AtomicLong();
+
+  private MicroBatcher(Builder builder) {
+    this.variable = Var.alloc(builder.variable);
+    this.enabled = builder.enabled && builder.maxBatchSize > 1;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(builder.windowMillis);
+    this.maxBatchSize = builder.maxBatchSize;
+    this.maxRows = builder.maxRows;
+  }
+
+  /**
+   * Sends the query, merged with other queries if possible
+   *
+   * @param query the query of a single request
+   * @param send sends a query; its second argument is true if the query is merged, i.e. its result
+   * is needed by several requests
+   * @return the result of the query
+   */
+  public ResultSetWrapper execute(Query query, BiFunction<Query, Boolean, ResultSetWrapper> send) {
+    ElementData values = enabled ? findValues(query) : null;
+    if (values == null) {
+      return send.apply(query, false);
+    }
+    Member member = new Member(query, values);
+    String key = batchKey(query);
+
+    Batch batch;
+    boolean first;
+    while (true) {
+      batch = openBatches.computeIfAbsent(key, k -> new Batch(query));
+      synchronized (batch) {
+        if (batch.closed) {
+          continue;
+        }
+        batch.members.add(member);
+        first = batch.members.size() == 1;
+        if (batch.members.size() >= maxBatchSize) {
+          close(key, batch);
+        }
+        break;
+      }
+    }
+
+    if (first) {
+      synchronized (batch) {
+        long end = System.nanoTime() + windowNanos;
+        long remaining = windowNanos;
+        while (!batch.closed && remaining > 0) {
+          try {
+            TimeUnit.NANOSECONDS.timedWait(batch, remaining);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            break;
+          }
+          remaining = end - System.nanoTime();
+        }
+        close(key, batch);
+      }
+      send(batch, send);
+    }
+
+    ResultSetWrapper result;
+    try {
+      result = member.result.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+    // null if the merged result was too large, the query is sent on its own
+    return result != null ? result : send.apply(query, false);
+  }
+
+  private void close(String key, Batch batch) {
+    batch.closed = true;
+    openBatches.remove(key, batch);
+    batch.notifyAll();
+  }
+
+  private void send(Batch batch, BiFunction<Query, Boolean, ResultSetWrapper> send) {
+    List<Member> members = batch.members;
+    if (members.size() == 1) {
+      Member member = members.get(0);
+      try {
+        member.result.complete(send.apply(member.query, false));
+      } catch (RuntimeException e) {
+        member.result.completeExceptionally(e);
+      }
+      return;
+    }
+
+    mergedQueries.incrementAndGet();
+    batchedQueries.addAndGet(members.size());
+    Query merged = merge(batch.template, members);
+    LOG.debug("Sending " + members.size() + " queries as one.");
+    try {
+      ResultSetWrapper result = send.apply(merged, true);
+      List<String> resultVars = result.getResultVars();
+      List<Binding> rows = result.getRows();
+      if (rows.size() >= maxRows) {
+        // the endpoint might have cut the result, every query is sent on its own
+        truncatedBatches.incrementAndGet();
+        for (Member member : members) {
+          member.result.complete(null);
+        }
+        return;
+      }
+      for (Member member : members) {
+        member.result.complete(split(resultVars, rows, member));
+      }
+    } catch (RuntimeException e) {
+      for (Member member : members) {
+        member.result.completeExceptionally(e);
+      }
+    }
+  }
+
+  /**
+   * @return the rows of the entities of the member, windowed with its LIMIT and OFFSET
+   */
+  private ResultSetWrapper split(List<String> resultVars, List<Binding> rows, Member member) {
+    long offset = member.query.hasOffset() ? member.query.getOffset() : 0;
+    long limit = member.query.hasLimit() ? member.query.getLimit() : Long.MAX_VALUE;
+    List<Binding> own = new ArrayList<>();
+    long skipped = 0;
+    for (Binding row : rows) {
+      if (own.size() >= limit) {
+        break;
+      }
+      if (member.entities.contains(row.get(variable))) {
+        if (skipped < offset) {
+          skipped++;
+        } else {
+          own.add(row);
+        }
+      }
+    }
+    return new ResultSetWrapper(resultVars, own);
+  }
+
+  /**
+   * @return a copy of the template for the entities of all members, limited to maxRows
+   */
+  private Query merge(Query template, List<Member> members) {
+    Set<Node> entities = new LinkedHashSet<>();
+    for (Member member : members) {
+      entities.addAll(member.entities);
+    }
+    ElementData values = new ElementData();
+    values.add(variable);
+    for (Node entity : entities) {
+      values.add(BindingFactory.binding(variable, entity));
+    }
+    Query merged = withValues(template, values);
+    merged.setLimit(maxRows);
+    return merged;
+  }
+
+  /**
+   * @return the query without entities and windowing, equal for all queries which can be merged.
+   * The queries of one kind of request are generated alike, so the key is the query string and
+   * not the canonical key of the query.
+   */
+  private String batchKey(Query query) {
+    ElementData values = new ElementData();
+    values.add(variable);
+    return withValues(query, values).toString();
+  }
+
+  /**
+   * @return a copy of the query with other VALUES and without LIMIT and OFFSET
+   */
+  private Query withValues(Query query, ElementData values) {
+    Query copy = query.cloneQuery();
+    List<Element> elements = ((ElementGroup) copy.getQueryPattern()).getElements();
+    for (int i = 0; i < elements.size(); i++) {
+      if (elements.get(i) instanceof ElementData) {
+        elements.set(i, values);
+      }
+    }
+    copy.setLimit(Query.NOLIMIT);
+    copy.setOffset(Query.NOLIMIT);
+    return copy;
+  }
+
+  /**
+   * @return the VALUES block of the query if it can be merged: a SELECT query without grouping
+   * whose pattern has one VALUES block with only the batching variable
+   */
+  private ElementData findValues(Query query) {
+    if (!query.isSelectType() || query.hasGroupBy() || query.hasAggregators()
+        || query.hasHaving() || query.hasValues()
+        || !(query.getQueryPattern() instanceof ElementGroup)) {
+      return null;
+    }
+    ElementData found = null;
+    for (Element element : ((ElementGroup) query.getQueryPattern()).getElements()) {
+      if (element instanceof ElementData) {
+        ElementData data = (ElementData) element;
+        if (found != null || data.getVars().size() != 1 || !data.getVars().contains(variable)) {
+          return null;
+        }
+        found = data;
+      }
+    }
+    return found;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return number of merged queries sent to the endpoint
+   */
+  public long getMergedQueries() {
+    return mergedQueries.get();
+  }
+
+  /**
+   * @return number of queries which were answered by a merged query
+   */
+  public long getBatchedQueries() {
+    return batchedQueries.get();
+  }
+
+  /**
+   * @return number of merged queries whose result reached maxRows, so their queries were sent on
+   * their own
+   */
+  public long getTruncatedBatches() {
+    return truncatedBatches.get();
+  }
+
+  private static class Batch {
+
+    private final Query template;
+    private final List<Member> members = new ArrayList<>();
+    private boolean closed;
+
+    private Batch(Query template) {
+      this.template = template;
+    }
+  }
+
+  private static class Member {
+
+    private final Query query;
+    private final Set<Node> entities = new HashSet<>();
+    private final CompletableFuture<ResultSetWrapper> result = new CompletableFuture<>();
+
+    private Member(Query query, ElementData values) {
+      this.query = query;
+      Var var = values.getVars().get(0);
+      for (Binding row : values.getRows()) {
+        if (row.get(var) != null) {
+          entities.add(row.get(var));
+        }
+      }
+    }
+  }
+
+  public static class Builder {
+
+    private boolean enabled = true;
+    private String variable = "entities";
+    private long windowMillis = 3;
+    private int maxBatchSize = 50;
+    private int maxRows = 10000;
+
+    public Builder setEnabled(boolean enabled) {
+      this.enabled = enabled;
+      return this;
+    }
+
+    /**
+     * Variable of the VALUES block by which queries are merged and results are split
+     */
+    public Builder setVariable(String variable) {
+      this.variable = variable;
+      return this;
+    }
+
+    /**
+     * Time the first query of a batch waits for other queries
+     */
+    public Builder setWindowMillis(long windowMillis) {
+      this.windowMillis = windowMillis;
+      return this;
+    }
+
+    /**
+     * Maximum number of queries in one batch, a full batch is sent at once
+     */
+    public Builder setMaxBatchSize(int maxBatchSize) {
+      this.maxBatchSize = maxBatchSize;
+      return this;
+    }
+
+    /**
+     * LIMIT of merged queries. If a merged result has this many rows it might be cut by the
+     * endpoint, so the queries are sent on their own.
+     */
+    public Builder setMaxRows(int maxRows) {
+      this.maxRows = maxRows;
+      return this;
+    }
+
+    public MicroBatcher build() {
+      return new MicroBatcher(this);
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package dbpedia.api.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.syntax.Element;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementGroup;
+import org.apache.jena.sparql.syntax.ElementMinus;
+import org.apache.jena.sparql.syntax.ElementNamedGraph;
+import org.apache.jena.sparql.syntax.ElementOptional;
+import org.apache.jena.sparql.syntax.ElementUnion;
+import org.apache.jena.sparql.syntax.PatternVars;
+import org.apache.jena.sparql.util.FmtUtils;
+
+/**
+ * Creates keys for queries which are equal for queries with the same results, so they share a
+ * cache entry and a running execution. The key is the algebra of a normalized copy of the query:
+ * <ul>
+ * <li>prefix declarations do not matter, the algebra contains full IRIs</li>
+ * <li>the rows of VALUES blocks are sorted</li>
+ * <li>adjacent OPTIONAL blocks are sorted if they only share variables which are bound before
+ * them, so their order cannot change the result</li>
+ * </ul>
+ * The projection and ORDER BY are kept as they are, because they determine the order of the
+ * variables and rows of the result. OFFSET and LIMIT are appended to the key, so the key of another
+ * window of the same query can be derived without canonicalizing it again (see
+ * {@link KeyedQuery}).
+ */
+public final class QueryCanonicalizer {
+
+  private QueryCanonicalizer() {
+  }
+
+  /**
+   * @return the canonical key of the query
+   */
+  public static String canonicalKey(Query query) {
+    return windowedKey(unwindowedKey(query), query);
+  }
+
+  /**
+   * @return the canonical key of the query without OFFSET and LIMIT, which are the outermost
+   *     operation of the algebra
+   */
+  static String unwindowedKey(Query query) {
+    Query copy = query.cloneQuery();
+    copy.setOffset(Query.NOLIMIT);
+    copy.setLimit(Query.NOLIMIT);
+    if (!copy.isSelectType()) {
+      // the algebra does not contain the template of CONSTRUCT and DESCRIBE queries
+      return copy.toString();
+    }
+    normalize(copy.getQueryPattern());
+    if (copy.hasValues()) {
+      List<Binding> rows = new ArrayList<>(copy.getValuesData());
+      rows.sort(rowOrder(copy.getValuesVariables()));
+      copy.setValuesDataBlock(copy.getValuesVariables(), rows);
+    }
+    return "SELECT\n" + Algebra.compile(copy).toString();
+  }
+
+  /**
+   * @param unwindowedKey key of the query without OFFSET and LIMIT
+   * @return the key with OFFSET and LIMIT of the query
+   */
+  static String windowedKey(String unwindowedKey, Query query) {
+    if (!query.hasOffset() && !query.hasLimit()) {
+      return unwindowedKey;
+    }
+    return unwindowedKey + "\nOFFSET " + (query.hasOffset() ? query.getOffset() : 0) + " LIMIT "
+        + (query.hasLimit() ? query.getLimit() : "-");
+  }
+
+  private static void normalize(Element element) {
+    if (element instanceof ElementGroup) {
+      List<Element> elements = ((ElementGroup) element).getElements();
+      for (Element child : elements) {
+        normalize(child);
+      }
+      sortOptionals(elements);
+    } else if (element instanceof ElementOptional) {
+      normalize(((ElementOptional) element).getOptionalElement());
+    } else if (element instanceof ElementUnion) {
+      for (Element child : ((ElementUnion) element).getElements()) {
+        normalize(child);
+      }
+    } else if (element instanceof ElementMinus) {
+      normalize(((ElementMinus) element).getMinusElement());
+    } else if (element instanceof ElementNamedGraph) {
+      normalize(((ElementNamedGraph) element).getElement());
+    } else if (element instanceof ElementData) {
+      ElementData data = (ElementData) element;
+      data.getRows().sort(rowOrder(data.getVars()));
+    }
+  }
+
+  /**
+   * Sorts each run of adjacent OPTIONAL blocks of a group, if the blocks of the run share no
+   * variable which is unbound before the run
+   */
+  private static void sortOptionals(List<Element> elements) {
+    Set<Var> bound = new HashSet<>();
+    int i = 0;
+    while (i < elements.size()) {
+      if (!(elements.get(i) instanceof ElementOptional)) {
+        bound.addAll(PatternVars.vars(elements.get(i)));
+        i++;
+        continue;
+      }
+      int end = i;
+      while (end < elements.size() && elements.get(end) instanceof ElementOptional) {
+        end++;
+      }
+      List<Element> run = elements.subList(i, end);
+      if (commute(run, bound)) {
+        run.sort(Comparator.comparing(Element::toString));
+      }
+      for (Element optional : run) {
+        bound.addAll(PatternVars.vars(optional));
+      }
+      i = end;
+    }
+  }
+
+  private static boolean commute(List<Element> optionals, Set<Var> bound) {
+    Set<Var> seen = new HashSet<>();
+    for (Element optional : optionals) {
+      Collection<Var> vars = PatternVars.vars(optional);
+      for (Var var : vars) {
+        if (seen.contains(var) && !bound.contains(var)) {
+          return false;
+        }
+      }
+      seen.addAll(vars);
+    }
+    return true;
+  }
+
+  private static Comparator<Binding> rowOrder(List<Var> vars) {
+    return (first, second) -> {
+      for (Var var : vars) {
+        int compared = format(first.get(var)).compareTo(format(second.get(var)));
+        if (compared != 0) {
+          return compared;
+        }
+      }
+      return 0;
+    };
+  }
+
+  private static String format(Node node) {
+    return node == null ? "" : FmtUtils.stringForNode(node);
+  }
+}
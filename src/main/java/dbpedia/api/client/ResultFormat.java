@@ -0,0 +1,74 @@
+package dbpedia.api.client;
+
+import java.io.InputStream;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.riot.ResultSetMgr;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.resultset.ResultSetLang;
+
+/**
+ * Formats of SELECT results which can be requested from a SPARQL endpoint
+ */
+public enum ResultFormat {
+
+  /**
+   * Binary RDF Thrift encoding, cheapest to parse. Supported by Fuseki, not by Virtuoso.
+   */
+  THRIFT(WebContent.contentTypeResultsThrift) {
+    @Override
+    public ResultSet parse(InputStream in) {
+      return ResultSetMgr.read(in, ResultSetLang.SPARQLResultSetThrift);
+    }
+  },
+  JSON(WebContent.contentTypeResultsJSON, WebContent.contentTypeJSON) {
+    @Override
+    public ResultSet parse(InputStream in) {
+      return ResultSetFactory.fromJSON(in);
+    }
+  },
+  XML(WebContent.contentTypeResultsXML, WebContent.contentTypeXML) {
+    @Override
+    public ResultSet parse(InputStream in) {
+      return ResultSetFactory.fromXML(in);
+    }
+  };
+
+  private final String contentType;
+  private final String[] alternativeContentTypes;
+
+  ResultFormat(String contentType, String... alternativeContentTypes) {
+    this.contentType = contentType;
+    this.alternativeContentTypes = alternativeContentTypes;
+  }
+
+  /**
+   * @return the content type which is requested in the Accept header
+   */
+  public String getContentType() {
+    return contentType;
+  }
+
+  /**
+   * @return a ResultSet reading the stream, it may read lazily
+   */
+  public abstract ResultSet parse(InputStream in);
+
+  /**
+   * @param contentType content type of a response without parameters
+   * @return the format with this content type, null if there is none
+   */
+  public static ResultFormat forContentType(String contentType) {
+    for (ResultFormat format : values()) {
+      if (format.contentType.equalsIgnoreCase(contentType)) {
+        return format;
+      }
+      for (String alternative : format.alternativeContentTypes) {
+        if (alternative.equalsIgnoreCase(contentType)) {
+          return format;
+        }
+      }
+    }
+    return null;
+  }
+}
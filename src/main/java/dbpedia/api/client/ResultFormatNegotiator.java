@@ -0,0 +1,209 @@
+package dbpedia.api.client;
+
+import dbpedia.api.model.ResultSetWrapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.apache.jena.query.QueryException;
+import org.apache.jena.sparql.engine.http.HttpQuery;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Sends SELECT queries to the SPARQL endpoints and negotiates the result format. The formats are
+ * requested in the order of preference; the format an endpoint answers with is remembered and
+ * requested alone from then on. If an endpoint answers 406 Not Acceptable, its preferred format is
+ * dropped for this endpoint and the query is sent again. The time to parse the results is measured
+ * per format.
+ */
+public class ResultFormatNegotiator {
+
+  private static final Logger LOG = LogManager.getLogger(ResultFormatNegotiator.class.getName());
+
+  private final List<ResultFormat> preferredFormats;
+  /**
+   * Formats which are still requested from an endpoint, best first
+   */
+  private final ConcurrentMap<String, List<ResultFormat>> candidates = new ConcurrentHashMap<>();
+  /**
+   * Format each endpoint answered with
+   */
+  private final ConcurrentMap<String, ResultFormat> learnedFormats = new ConcurrentHashMap<>();
+  private final Map<ResultFormat, AtomicLong> parsedResults = new EnumMap<>(ResultFormat.class);
+  private final Map<ResultFormat, AtomicLong> parseNanos = new EnumMap<>(ResultFormat.class);
+
+  /**
+   * @param preferredFormats the formats to request, best first
+   */
+  public ResultFormatNegotiator(List<ResultFormat> preferredFormats) {
+    if (preferredFormats.isEmpty()) {
+      throw new IllegalArgumentException("At least one result format is needed");
+    }
+    this.preferredFormats = Collections.unmodifiableList(new ArrayList<>(preferredFormats));
+    for (ResultFormat format : ResultFormat.values()) {
+      parsedResults.put(format, new AtomicLong());
+      parseNanos.put(format, new AtomicLong());
+    }
+  }
+
+  /**
+   * Sends the query to the endpoint and reads the complete result. Like Jena, long queries are
+   * sent as POST.
+   *
+   * @param context context of the request, its RequestConfig contains the timeouts
+   * @return the complete result, which can be read several times
+   * @throws QueryExceptionHTTP if the endpoint answers with an error or cannot be reached, with
+   * status 502 if it accepts none of the formats
+   */
+  public ResultSetWrapper select(CancellableHttpClient httpClient, HttpClientContext context,
+      String endpoint, String query) {
+    while (true) {
+      List<ResultFormat> formats = getCandidates(endpoint);
+      HttpRequestBase request = createRequest(endpoint, query);
+      request.setHeader(HttpHeaders.ACCEPT, acceptHeader(endpoint, formats));
+      try (CloseableHttpResponse response = httpClient.execute(request, context)) {
+        int status = response.getStatusLine().getStatusCode();
+        HttpEntity entity = response.getEntity();
+        if (status == HttpStatus.SC_NOT_ACCEPTABLE) {
+          if (learnedFormats.remove(endpoint) != null) {
+            // the endpoint has changed, the format is negotiated again
+            EntityUtils.consumeQuietly(entity);
+            continue;
+          }
+          if (formats.size() > 1) {
+            EntityUtils.consumeQuietly(entity);
+            LOG.info(endpoint + " does not accept " + formats.get(0).getContentType() + ".");
+            candidates.put(endpoint, formats.subList(1, formats.size()));
+            continue;
+          }
+          // no format is left: the endpoint failed, not the query, so this must neither be
+          // cached as an error of the query nor count as a success of the endpoint
+          EntityUtils.consumeQuietly(entity);
+          candidates.remove(endpoint);
+          throw new QueryExceptionHTTP(HttpStatus.SC_BAD_GATEWAY,
+              endpoint + " accepts none of the result formats " + preferredFormats);
+        }
+        if (status >= 300) {
+          String body = entity != null ? EntityUtils.toString(entity) : null;
+          throw new QueryExceptionHTTP(status,
+              response.getStatusLine().getReasonPhrase() + (body != null ? "\n" + body : ""));
+        }
+        if (entity == null) {
+          throw new QueryException("Endpoint returned no result");
+        }
+        return parse(endpoint, entity);
+      } catch (IOException e) {
+        throw new QueryExceptionHTTP(e);
+      }
+    }
+  }
+
+  private ResultSetWrapper parse(String endpoint, HttpEntity entity) throws IOException {
+    ContentType contentType = ContentType.get(entity);
+    ResultFormat format = contentType != null
+        ? ResultFormat.forContentType(contentType.getMimeType()) : null;
+    if (format == null) {
+      throw new QueryException("Endpoint returned Content-Type: "
+          + (contentType != null ? contentType.getMimeType() : null)
+          + " which is not supported for SELECT queries");
+    }
+    if (learnedFormats.put(endpoint, format) != format) {
+      LOG.info(endpoint + " answers with " + format + " results.");
+    }
+    long start = System.nanoTime();
+    try (InputStream in = entity.getContent()) {
+      // the parsers read lazily, the rows are collected once before the stream is closed
+      ResultSetWrapper result = new ResultSetWrapper(format.parse(in));
+      parseNanos.get(format).addAndGet(System.nanoTime() - start);
+      parsedResults.get(format).incrementAndGet();
+      return result;
+    }
+  }
+
+  private static HttpRequestBase createRequest(String endpoint, String query) {
+    List<NameValuePair> parameters = Collections
+        .singletonList(new BasicNameValuePair("query", query));
+    UrlEncodedFormEntity form = new UrlEncodedFormEntity(parameters, StandardCharsets.UTF_8);
+    if (endpoint.length() + form.getContentLength() < HttpQuery.urlLimit) {
+      try {
+        return new HttpGet(endpoint + (endpoint.contains("?") ? "&" : "?")
+            + EntityUtils.toString(form));
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    HttpPost post = new HttpPost(endpoint);
+    post.setEntity(form);
+    return post;
+  }
+
+  /**
+   * @return the learned format of the endpoint alone, otherwise all candidates with descending
+   * quality
+   */
+  private String acceptHeader(String endpoint, List<ResultFormat> formats) {
+    ResultFormat learned = learnedFormats.get(endpoint);
+    if (learned != null) {
+      return learned.getContentType();
+    }
+    StringBuilder accept = new StringBuilder(formats.get(0).getContentType());
+    for (int i = 1; i < formats.size(); i++) {
+      accept.append(", ").append(formats.get(i).getContentType())
+          .append(";q=").append((10 - i) / 10.0);
+    }
+    return accept.toString();
+  }
+
+  private List<ResultFormat> getCandidates(String endpoint) {
+    return candidates.getOrDefault(endpoint, preferredFormats);
+  }
+
+  /**
+   * @return the format the endpoint answered with, null if it did not answer yet
+   */
+  public ResultFormat getFormat(String endpoint) {
+    return learnedFormats.get(endpoint);
+  }
+
+  public List<ResultFormat> getPreferredFormats() {
+    return preferredFormats;
+  }
+
+  /**
+   * @return number of parsed results of the format
+   */
+  public long getParsedResults(ResultFormat format) {
+    return parsedResults.get(format).get();
+  }
+
+  /**
+   * @return time spent on parsing results of the format. The parsers read from the network, so
+   * this includes the transfer of the response body.
+   */
+  public long getParseMillis(ResultFormat format) {
+    return TimeUnit.NANOSECONDS.toMillis(parseNanos.get(format).get());
+  }
+}
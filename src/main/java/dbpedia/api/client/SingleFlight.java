@@ -0,0 +1,136 @@
+package dbpedia.api.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.apache.jena.query.QueryCancelledException;
+
+/**
+ * Lets concurrent callers with the same key share one execution. The first caller runs the
+ * supplier, every caller that arrives while this execution is still running waits for it and gets
+ * the same result (or the same exception).
+ *
+ * @param <K> type of the key that identifies equal calls
+ * @param <V> type of the result
+ */
+public class SingleFlight<K, V> {
+
+  /**
+   * Executions that are currently running, by key
+   */
+  private final ConcurrentMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+  /**
+   * Number of executions that were really run
+   */
+  private final AtomicLong executions = new AtomicLong();
+  /**
+   * Number of callers that were served by the execution of another caller
+   */
+  private final AtomicLong sharedCalls = new AtomicLong();
+
+  /**
+   * Runs the supplier, unless an execution for an equal key is already running. In this case the
+   * result of the running execution is returned.
+   *
+   * @param key identifies equal calls
+   * @param supplier the actual execution
+   * @return the result of the own or the shared execution
+   */
+  public V execute(K key, Supplier<V> supplier) {
+    return execute(key, supplier, Deadline.none());
+  }
+
+  /**
+   * Like execute(key, supplier), but a caller that waits for the execution of another caller stops
+   * waiting when its deadline expires or its request is cancelled. The execution keeps running for
+   * the other callers.
+   *
+   * @param deadline time budget of the caller
+   * @throws DeadlineExceededException if the deadline expired while waiting
+   * @throws QueryCancelledException if the request was cancelled while waiting
+   */
+  public V execute(K key, Supplier<V> supplier, Deadline deadline) {
+    Flight<V> own = new Flight<>();
+    Flight<V> running = inFlight.putIfAbsent(key, own);
+    if (running != null) {
+      sharedCalls.incrementAndGet();
+      running.callers.incrementAndGet();
+      CompletableFuture<V> waiting = new CompletableFuture<>();
+      running.result.whenComplete((result, e) -> {
+        if (e == null) {
+          waiting.complete(result);
+        } else {
+          waiting.completeExceptionally(e);
+        }
+      });
+      try (Deadline.Registration abort = deadline.onAbort(() -> waiting.completeExceptionally(
+          deadline.isCancelled() ? new QueryCancelledException()
+              : new DeadlineExceededException("Deadline expired while waiting for the result"
+                  + " of a shared execution")))) {
+        return await(waiting);
+      } finally {
+        running.callers.decrementAndGet();
+      }
+    }
+    executions.incrementAndGet();
+    try {
+      V result = supplier.get();
+      own.result.complete(result);
+      return result;
+    } catch (RuntimeException | Error e) {
+      own.result.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, own);
+    }
+  }
+
+  /**
+   * Waits for a running execution and rethrows its exception unwrapped, so the waiting callers
+   * see the same exception types as the executing one
+   */
+  private static <V> V await(CompletableFuture<V> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * @return number of callers which currently wait for the running execution for the key
+   * (including the executing caller), 0 if there is none
+   */
+  public int getCallers(K key) {
+    Flight<V> running = inFlight.get(key);
+    return running == null ? 0 : running.callers.get();
+  }
+
+  public long getExecutions() {
+    return executions.get();
+  }
+
+  public long getSharedCalls() {
+    return sharedCalls.get();
+  }
+
+  public int getInFlight() {
+    return inFlight.size();
+  }
+
+  private static class Flight<V> {
+
+    private final CompletableFuture<V> result = new CompletableFuture<>();
+    private final AtomicInteger callers = new AtomicInteger(1);
+  }
+}
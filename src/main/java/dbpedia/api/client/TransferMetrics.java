@@ -0,0 +1,166 @@
+package dbpedia.api.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * Counts the bytes of the responses of the SPARQL endpoints, once as they come over the wire and
+ * once after decoding (gzip or deflate), and the time spent reading the response bodies. The
+ * counters are filled by the two interceptors, which wrap the response entity before and after
+ * the decoding.
+ */
+public class TransferMetrics {
+
+  private final AtomicLong responses = new AtomicLong();
+  private final AtomicLong compressedResponses = new AtomicLong();
+  private final AtomicLong wireBytes = new AtomicLong();
+  private final AtomicLong decodedBytes = new AtomicLong();
+  private final AtomicLong transferNanos = new AtomicLong();
+  private final AtomicLong compressedRequests = new AtomicLong();
+
+  /**
+   * @return interceptor which counts the bytes of the body as received, it has to run before the
+   * body is decoded
+   */
+  HttpResponseInterceptor wireCounter() {
+    return (response, context) -> {
+      HttpEntity entity = response.getEntity();
+      if (entity == null) {
+        return;
+      }
+      responses.incrementAndGet();
+      if (entity.getContentEncoding() != null) {
+        compressedResponses.incrementAndGet();
+      }
+      // the headers have arrived, from now on the body is transferred
+      long start = System.nanoTime();
+      response.setEntity(new CountingEntity(entity, wireBytes,
+          () -> transferNanos.addAndGet(System.nanoTime() - start)));
+    };
+  }
+
+  /**
+   * @return interceptor which counts the bytes of the decoded body, it has to run after the body
+   * is decoded
+   */
+  HttpResponseInterceptor decodedCounter() {
+    return (response, context) -> {
+      HttpEntity entity = response.getEntity();
+      if (entity != null) {
+        response.setEntity(new CountingEntity(entity, decodedBytes, () -> {
+        }));
+      }
+    };
+  }
+
+  void requestCompressed() {
+    compressedRequests.incrementAndGet();
+  }
+
+  /**
+   * @return number of responses with a body
+   */
+  public long getResponses() {
+    return responses.get();
+  }
+
+  /**
+   * @return number of responses with a gzip or deflate encoded body
+   */
+  public long getCompressedResponses() {
+    return compressedResponses.get();
+  }
+
+  /**
+   * @return bytes of the response bodies as received from the endpoints
+   */
+  public long getWireBytes() {
+    return wireBytes.get();
+  }
+
+  /**
+   * @return bytes of the response bodies after decoding
+   */
+  public long getDecodedBytes() {
+    return decodedBytes.get();
+  }
+
+  /**
+   * @return time between the arrival of the headers and the end of the body, summed over all
+   * responses
+   */
+  public long getTransferMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(transferNanos.get());
+  }
+
+  /**
+   * @return number of requests sent with a gzip encoded body
+   */
+  public long getCompressedRequests() {
+    return compressedRequests.get();
+  }
+
+  /**
+   * Entity whose content counts the read bytes and reports the end of the body once, at the end
+   * of the stream or when it is closed before
+   */
+  private static class CountingEntity extends HttpEntityWrapper {
+
+    private final AtomicLong bytes;
+    private final Runnable onEnd;
+    private final AtomicBoolean ended = new AtomicBoolean();
+
+    private CountingEntity(HttpEntity entity, AtomicLong bytes, Runnable onEnd) {
+      super(entity);
+      this.bytes = bytes;
+      this.onEnd = onEnd;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      return new FilterInputStream(super.getContent()) {
+
+        @Override
+        public int read() throws IOException {
+          int read = super.read();
+          if (read < 0) {
+            end();
+          } else {
+            bytes.incrementAndGet();
+          }
+          return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+          int read = super.read(buffer, offset, length);
+          if (read < 0) {
+            end();
+          } else {
+            bytes.addAndGet(read);
+          }
+          return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+          end();
+          super.close();
+        }
+      };
+    }
+
+    private void end() {
+      if (ended.compareAndSet(false, true)) {
+        onEnd.run();
+      }
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package dbpedia.api.configuration;
+
+import dbpedia.api.controller.QueryLogWarmer;
+import dbpedia.api.controller.ResultCacheSnapshot;
+import dbpedia.api.versioning.VersionHandler;
+import javax.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Loads the snapshot of the result cache when the application is ready and saves it on shutdown.
+ * If pre-warming is enabled, the most requested calls of the query log are replayed afterwards in
+ * the background.
+ */
+@Component
+public class CacheWarmup {
+
+  private static final Logger LOG = LogManager.getLogger(CacheWarmup.class.getName());
+
+  private ResultCacheSnapshot snapshot;
+  private QueryLogWarmer warmer;
+  private VersionHandler versionHandler;
+  private Configuration config;
+  private Environment environment;
+
+  public CacheWarmup(ResultCacheSnapshot snapshot, QueryLogWarmer warmer,
+      VersionHandler versionHandler, Configuration config, Environment environment) {
+    this.snapshot = snapshot;
+    this.warmer = warmer;
+    this.versionHandler = versionHandler;
+    this.config = config;
+    this.environment = environment;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void warm() {
+    snapshot.load();
+    if (!config.isPrewarmEnabled()) {
+      return;
+    }
+    String baseUrl = "http://localhost:" + environment.getProperty("local.server.port")
+        + "/" + config.getUriPath() + "/" + versionHandler.getLatest();
+    Thread thread = new Thread(() -> warmer.warm(baseUrl), "cache-prewarm");
+    thread.setDaemon(true);
+    thread.start();
+    LOG.info("Pre-warming the cache from the query log.");
+  }
+
+  @PreDestroy
+  public void save() {
+    snapshot.save();
+  }
+}
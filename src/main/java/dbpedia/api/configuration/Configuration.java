@@ -2,8 +2,30 @@ package dbpedia.api.configuration;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dbpedia.api.client.CircuitBreaker;
+import dbpedia.api.client.EndpointConnectionPool;
+import dbpedia.api.client.EndpointRouter;
+import dbpedia.api.client.MicroBatcher;
+import dbpedia.api.client.ResultFormat;
+import dbpedia.api.client.ResultFormatNegotiator;
+import dbpedia.api.controller.AlignedWindowFetcher;
+import dbpedia.api.controller.DBpediaClient;
+import dbpedia.api.controller.DeadlinePolicy;
+import dbpedia.api.controller.HttpCachePolicy;
+import dbpedia.api.controller.NegativeCache;
+import dbpedia.api.controller.OffHeapStore;
+import dbpedia.api.controller.OutputBufferPool;
+import dbpedia.api.controller.QueryLogWarmer;
+import dbpedia.api.controller.ResponseCache;
+import dbpedia.api.controller.ResultCacheSnapshot;
+import dbpedia.api.controller.ResultRefresher;
+import dbpedia.api.controller.SerializedSizeWeigher;
+import dbpedia.api.controller.TieredCache;
+import dbpedia.api.controller.TieredCacheResolver;
+import dbpedia.api.controller.TinyLfuCacheManager;
 import dbpedia.api.factory.DBpediaQueryFactory;
 import dbpedia.api.model.ApiVersion;
+import dbpedia.api.model.NamespaceTrie;
 import dbpedia.api.model.RequestModel;
 import dbpedia.api.versioning.SemanticVersionSet;
 import dbpedia.api.versioning.VersionLoader;
@@ -13,6 +35,8 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -20,6 +44,15 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.ConfigurationFactory;
 import org.apache.commons.io.FileUtils;
 import org.apache.jena.ontology.OntModel;
 import org.apache.jena.ontology.OntModelSpec;
@@ -27,15 +60,22 @@ import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.shared.impl.PrefixMappingImpl;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CachingConfigurerSupport;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.interceptor.CacheErrorHandler;
+import org.springframework.cache.support.NoOpCacheManager;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
 @org.springframework.context.annotation.Configuration
 @EnableCaching
 @Component
-public class Configuration {
+public class Configuration extends CachingConfigurerSupport {
 
   private static final Logger LOG = LogManager.getLogger(Configuration.class.getName());
 
@@ -57,6 +97,11 @@ public class Configuration {
   }
 
 
+  @Override
+  public CacheErrorHandler errorHandler() {
+    return new EvictingCacheErrorHandler();
+  }
+
   @Value("${keys.usingKeys}")
   private boolean usingKeys;
 
@@ -159,6 +204,26 @@ public class Configuration {
     return loadPrefixMapping(prefixesFile);
   }
 
+  @Value("${prefixes.preferred:dbr,dbo,dbp,dbc,xsd,rdf,rdfs,owl}")
+  private String preferredPrefixes;
+
+  /**
+   * Creates the namespace index which is shared by the query factories and the formatters. If
+   * several prefixes stand for a namespace, the first of prefixes.preferred is used for it.
+   */
+  @Bean
+  public NamespaceTrie createNamespaceTrie(PrefixMappingImpl prefixMapping) {
+    List<String> preferred = new ArrayList<>();
+    for (String prefix : preferredPrefixes.split(",")) {
+      if (!prefix.trim().isEmpty()) {
+        preferred.add(prefix.trim());
+      }
+    }
+    NamespaceTrie namespaces = new NamespaceTrie(prefixMapping.getNsPrefixMap(), preferred);
+    LOG.info("Indexed " + namespaces.size() + " namespaces.");
+    return namespaces;
+  }
+
   /**
    * Reads the prefix mapping file, creates a PrefixMappingImpl from it and locks it
    */
@@ -200,6 +265,482 @@ public class Configuration {
     return sparqlEndpoint;
   }
 
+  /**
+   * @return the URLs of dbpedia.sparqlEndpoint, which may contain several comma separated endpoints
+   */
+  public List<String> getSparqlEndpoints() {
+    List<String> endpoints = new ArrayList<>();
+    for (String endpoint : sparqlEndpoint.split(",")) {
+      if (!endpoint.trim().isEmpty()) {
+        endpoints.add(endpoint.trim());
+      }
+    }
+    return endpoints;
+  }
+
+  @Value("${dbpedia.hedging.enabled:false}")
+  private boolean hedgingEnabled;
+
+  @Value("${dbpedia.hedging.percentile:95}")
+  private double hedgingPercentile;
+
+  @Value("${dbpedia.hedging.initialDelayMillis:1000}")
+  private long hedgingInitialDelayMillis;
+
+  @Value("${dbpedia.hedging.maxThreads:64}")
+  private int hedgingMaxThreads;
+
+  @Value("${dbpedia.circuitBreaker.enabled:true}")
+  private boolean circuitBreakerEnabled;
+
+  @Value("${dbpedia.circuitBreaker.windowSize:20}")
+  private int circuitBreakerWindowSize;
+
+  @Value("${dbpedia.circuitBreaker.minimumCalls:10}")
+  private int circuitBreakerMinimumCalls;
+
+  @Value("${dbpedia.circuitBreaker.failureRateThreshold:50}")
+  private int circuitBreakerFailureRateThreshold;
+
+  @Value("${dbpedia.circuitBreaker.slowCallMillis:10000}")
+  private long circuitBreakerSlowCallMillis;
+
+  @Value("${dbpedia.circuitBreaker.slowCallRateThreshold:80}")
+  private int circuitBreakerSlowCallRateThreshold;
+
+  @Value("${dbpedia.circuitBreaker.openMillis:30000}")
+  private long circuitBreakerOpenMillis;
+
+  @Value("${dbpedia.circuitBreaker.halfOpenCalls:3}")
+  private int circuitBreakerHalfOpenCalls;
+
+  /**
+   * Creates the router which distributes the queries over the SPARQL endpoints
+   */
+  @Bean(destroyMethod = "close")
+  public EndpointRouter createEndpointRouter() {
+    return new EndpointRouter.Builder()
+        .setEndpoints(getSparqlEndpoints())
+        .setHedging(hedgingEnabled)
+        .setHedgePercentile(hedgingPercentile)
+        .setInitialHedgeDelayMillis(hedgingInitialDelayMillis)
+        .setMaxHedgeThreads(hedgingMaxThreads)
+        .setCircuitBreaker(new CircuitBreaker.Builder()
+            .setEnabled(circuitBreakerEnabled)
+            .setWindowSize(circuitBreakerWindowSize)
+            .setMinimumCalls(circuitBreakerMinimumCalls)
+            .setFailureRateThreshold(circuitBreakerFailureRateThreshold)
+            .setSlowCallMillis(circuitBreakerSlowCallMillis)
+            .setSlowCallRateThreshold(circuitBreakerSlowCallRateThreshold)
+            .setOpenMillis(circuitBreakerOpenMillis)
+            .setHalfOpenCalls(circuitBreakerHalfOpenCalls))
+        .build();
+  }
+
+  @Value("${batching.enabled:false}")
+  private boolean batchingEnabled;
+
+  @Value("${batching.windowMillis:3}")
+  private long batchingWindowMillis;
+
+  @Value("${batching.maxBatchSize:50}")
+  private int batchingMaxBatchSize;
+
+  @Value("${batching.maxRows:10000}")
+  private int batchingMaxRows;
+
+  /**
+   * Creates the batcher which merges concurrent /values queries into one query
+   */
+  @Bean
+  public MicroBatcher createMicroBatcher() {
+    return new MicroBatcher.Builder()
+        .setEnabled(batchingEnabled)
+        .setWindowMillis(batchingWindowMillis)
+        .setMaxBatchSize(batchingMaxBatchSize)
+        .setMaxRows(batchingMaxRows)
+        .build();
+  }
+
+  @Value("${cache.negative.enabled:true}")
+  private boolean negativeCacheEnabled;
+
+  @Value("${cache.negative.timeToLiveSeconds:60}")
+  private long negativeCacheTimeToLiveSeconds;
+
+  /**
+   * Creates the cache of empty results and query errors, they expire after
+   * cache.negative.timeToLiveSeconds
+   */
+  @Bean
+  public NegativeCache createNegativeCache(CacheManager cacheManager) {
+    return new NegativeCache(cacheManager.getCache(NegativeCache.CACHE), negativeCacheEnabled,
+        TimeUnit.SECONDS.toMillis(negativeCacheTimeToLiveSeconds));
+  }
+
+  @Value("${window.alignedBlocks:false}")
+  private boolean alignedBlocks;
+
+  @Value("${window.blockSize:${window.maxWindowLimit}}")
+  private int blockSize;
+
+  /**
+   * Creates the fetcher which serves the requested windows from cached blocks of window.blockSize
+   * rows
+   */
+  @Bean
+  public AlignedWindowFetcher createAlignedWindowFetcher(ResultRefresher refresher) {
+    return new AlignedWindowFetcher(refresher::sendQuery, alignedBlocks, blockSize);
+  }
+
+  @Value("${cache.refresh.enabled:true}")
+  private boolean refreshEnabled;
+
+  @Value("${cache.refresh.softTtlSeconds:300}")
+  private long refreshSoftTtlSeconds;
+
+  @Value("${cache.refresh.beta:1.0}")
+  private double refreshBeta;
+
+  @Value("${cache.refresh.timeoutMillis:60000}")
+  private long refreshTimeoutMillis;
+
+  /**
+   * Creates the refresher which renews cached results in the background after
+   * cache.refresh.softTtlSeconds, the hard TTL is the timeToLiveSeconds of ehcache.xml
+   */
+  @Bean
+  public ResultRefresher createResultRefresher(DBpediaClient client,
+      @Qualifier("sparqlExecutor") ExecutorService sparqlExecutor) {
+    return new ResultRefresher(client, sparqlExecutor, refreshEnabled,
+        TimeUnit.SECONDS.toMillis(refreshSoftTtlSeconds), refreshBeta, refreshTimeoutMillis);
+  }
+
+  @Value("${spring.cache.ehcache.config:classpath:ehcache.xml}")
+  private Resource ehcacheConfig;
+
+  @Value("${cache.tinylfu.maxBytes:268435456}")
+  private long tinyLfuMaxBytes;
+
+  /**
+   * With cache.backend=tinylfu, the caches are TinyLfuCaches limited by the serialized size of
+   * their entries instead of ehcache. The expiry of the caches is taken from ehcache.xml, their
+   * size from maxBytesLocalHeap or cache.tinylfu.maxBytes. Otherwise Spring Boot configures
+   * ehcache.
+   */
+  @Bean
+  @ConditionalOnProperty(name = "cache.backend", havingValue = "tinylfu")
+  public CacheManager createTinyLfuCacheManager() throws IOException {
+    Map<String, TinyLfuCacheManager.Spec> specs = new HashMap<>();
+    try (InputStream in = ehcacheConfig.getInputStream()) {
+      for (CacheConfiguration cache : ConfigurationFactory.parseConfiguration(in)
+          .getCacheConfigurations().values()) {
+        long maxBytes = cache.getMaxBytesLocalHeap() > 0
+            ? cache.getMaxBytesLocalHeap() : tinyLfuMaxBytes;
+        specs.put(cache.getName(), new TinyLfuCacheManager.Spec(maxBytes,
+            cache.isEternal() ? 0 : TimeUnit.SECONDS.toMillis(cache.getTimeToLiveSeconds()),
+            cache.isEternal() ? 0 : TimeUnit.SECONDS.toMillis(cache.getTimeToIdleSeconds())));
+      }
+    }
+    LOG.info("Using the TinyLFU caches " + specs.keySet());
+    return new TinyLfuCacheManager(specs, new TinyLfuCacheManager.Spec(tinyLfuMaxBytes, 0, 0),
+        new SerializedSizeWeigher());
+  }
+
+  @Value("${cache.offHeap.enabled:false}")
+  private boolean offHeapEnabled;
+
+  @Value("${cache.offHeap.maxBytes:268435456}")
+  private long offHeapMaxBytes;
+
+  @Value("${cache.offHeap.minRows:1000}")
+  private int offHeapMinRows;
+
+  @Value("${cache.offHeap.timeToLiveSeconds:600}")
+  private long offHeapTimeToLiveSeconds;
+
+  @Value("${cache.offHeap.timeToIdleSeconds:300}")
+  private long offHeapTimeToIdleSeconds;
+
+  /**
+   * Creates the result cache of the DBpediaClient: the cache DBpediaClient.sendQuery of ehcache.xml
+   * on the heap, results with more than cache.offHeap.minRows rows are kept in
+   * cache.offHeap.maxBytes of direct memory
+   */
+  @Bean(name = "resultCacheResolver")
+  public TieredCacheResolver createResultCacheResolver(CacheManager cacheManager) {
+    OffHeapStore offHeap = null;
+    // spring.cache.type=NONE switches off all caching, the off-heap tier as well
+    if (offHeapEnabled && !(cacheManager instanceof NoOpCacheManager)) {
+      offHeap = new OffHeapStore(offHeapMaxBytes,
+          TimeUnit.SECONDS.toMillis(offHeapTimeToLiveSeconds),
+          TimeUnit.SECONDS.toMillis(offHeapTimeToIdleSeconds));
+    }
+    return new TieredCacheResolver(new TieredCache(
+        cacheManager.getCache("DBpediaClient.sendQuery"), offHeap, offHeapMinRows));
+  }
+
+  @Value("${cache.snapshot.dir:}")
+  private String snapshotDir;
+
+  @Value("${cache.snapshot.maxAgeSeconds:3600}")
+  private long snapshotMaxAgeSeconds;
+
+  /**
+   * Creates the snapshot of the result cache in cache.snapshot.dir, no snapshot is taken if it is
+   * empty
+   */
+  @Bean
+  public ResultCacheSnapshot createResultCacheSnapshot(TieredCacheResolver resultCacheResolver) {
+    return new ResultCacheSnapshot(resultCacheResolver.getCache(),
+        snapshotDir.trim().isEmpty() ? null : Paths.get(snapshotDir.trim(), "sendQuery.snapshot"),
+        TimeUnit.SECONDS.toMillis(snapshotMaxAgeSeconds));
+  }
+
+  @Value("${cache.prewarm.enabled:false}")
+  private boolean prewarmEnabled;
+
+  @Value("${cache.prewarm.logDir:logs}")
+  private String prewarmLogDir;
+
+  @Value("${cache.prewarm.requests:100}")
+  private int prewarmRequests;
+
+  @Value("${cache.prewarm.concurrency:4}")
+  private int prewarmConcurrency;
+
+  @Value("${cache.prewarm.halfLifeHours:24}")
+  private double prewarmHalfLifeHours;
+
+  @Value("${cache.prewarm.key:}")
+  private String prewarmKey;
+
+  public boolean isPrewarmEnabled() {
+    return prewarmEnabled;
+  }
+
+  /**
+   * Creates the warmer which replays the top cache.prewarm.requests calls of the query log after
+   * a start
+   */
+  @Bean
+  public QueryLogWarmer createQueryLogWarmer() {
+    return new QueryLogWarmer(Paths.get(prewarmLogDir), prewarmRequests, prewarmConcurrency,
+        prewarmHalfLifeHours, prewarmKey.trim());
+  }
+
+  @Value("${cache.responses.enabled:true}")
+  private boolean responseCacheEnabled;
+
+  @Value("${cache.responses.maxEntryBytes:1048576}")
+  private int responseCacheMaxEntryBytes;
+
+  /**
+   * Creates the cache of formatted responses, its size in bytes is configured in ehcache.xml
+   */
+  @Bean
+  public ResponseCache createResponseCache(CacheManager cacheManager) {
+    return new ResponseCache(cacheManager.getCache(ResponseCache.CACHE), responseCacheEnabled,
+        responseCacheMaxEntryBytes);
+  }
+
+  @Value("${response.bufferBytes:32768}")
+  private int responseBufferBytes;
+
+  @Value("${response.pooledBuffers:200}")
+  private int responsePooledBuffers;
+
+  /**
+   * Creates the pool of the buffers through which the response bodies are streamed
+   */
+  @Bean
+  public OutputBufferPool createOutputBufferPool() {
+    return new OutputBufferPool(responsePooledBuffers, responseBufferBytes);
+  }
+
+  /**
+   * Registers the converter of streamed response bodies, Spring Boot adds converter beans to the
+   * default converters
+   */
+  @Bean
+  public StreamingResponseBodyConverter createStreamingResponseBodyConverter() {
+    return new StreamingResponseBodyConverter();
+  }
+
+  @Value("${cache.http.enabled:true}")
+  private boolean httpCacheEnabled;
+
+  @Value("${cache.http.maxAgeSeconds:${cache.refresh.softTtlSeconds:300}}")
+  private long httpCacheMaxAgeSeconds;
+
+  /**
+   * Creates the ETag and Cache-Control policy of the responses. Responses of fresh results may be
+   * reused for cache.http.maxAgeSeconds minus their age, by shared caches only if no API keys are
+   * used
+   */
+  @Bean
+  public HttpCachePolicy createHttpCachePolicy() {
+    return new HttpCachePolicy(httpCacheEnabled,
+        TimeUnit.SECONDS.toMillis(httpCacheMaxAgeSeconds), !usingKeys);
+  }
+
+  @Value("${dbpedia.resultFormats:thrift,json,xml}")
+  private String resultFormats;
+
+  /**
+   * Creates the negotiator which requests the result formats of dbpedia.resultFormats (best
+   * first) from the endpoints
+   */
+  @Bean
+  public ResultFormatNegotiator createResultFormatNegotiator() {
+    List<ResultFormat> formats = new ArrayList<>();
+    for (String format : resultFormats.split(",")) {
+      if (!format.trim().isEmpty()) {
+        formats.add(ResultFormat.valueOf(format.trim().toUpperCase()));
+      }
+    }
+    return new ResultFormatNegotiator(formats);
+  }
+
+  @Value("${dbpedia.pool.maxTotal:200}")
+  private int poolMaxTotal;
+
+  @Value("${dbpedia.pool.maxPerRoute:100}")
+  private int poolMaxPerRoute;
+
+  @Value("${dbpedia.pool.idleTimeoutSeconds:60}")
+  private int poolIdleTimeoutSeconds;
+
+  @Value("${dbpedia.pool.keepAliveSeconds:30}")
+  private int poolKeepAliveSeconds;
+
+  @Value("${dbpedia.pool.connectTimeoutMillis:5000}")
+  private int poolConnectTimeoutMillis;
+
+  @Value("${dbpedia.pool.socketTimeoutMillis:60000}")
+  private int poolSocketTimeoutMillis;
+
+  @Value("${dbpedia.pool.connectionRequestTimeoutMillis:10000}")
+  private int poolConnectionRequestTimeoutMillis;
+
+  @Value("${dbpedia.pool.tlsSessionCacheSize:1000}")
+  private int poolTlsSessionCacheSize;
+
+  @Value("${dbpedia.pool.tlsSessionTimeoutSeconds:3600}")
+  private int poolTlsSessionTimeoutSeconds;
+
+  @Value("${dbpedia.pool.warmUpConnections:10}")
+  private int poolWarmUpConnections;
+
+  @Value("${dbpedia.transport.responseCompression:true}")
+  private boolean transportResponseCompression;
+
+  @Value("${dbpedia.transport.requestCompression:false}")
+  private boolean transportRequestCompression;
+
+  @Value("${dbpedia.transport.requestCompressionMinBytes:1024}")
+  private int transportRequestCompressionMinBytes;
+
+  /**
+   * Creates the connection pool for the SPARQL endpoints and opens the first connections, so the
+   * first requests after a start do not have to wait for the handshakes
+   */
+  @Bean(destroyMethod = "close")
+  public EndpointConnectionPool createEndpointConnectionPool() {
+    EndpointConnectionPool pool = new EndpointConnectionPool.Builder()
+        .setMaxTotal(poolMaxTotal)
+        .setMaxPerRoute(poolMaxPerRoute)
+        .setIdleTimeoutSeconds(poolIdleTimeoutSeconds)
+        .setKeepAliveSeconds(poolKeepAliveSeconds)
+        .setConnectTimeoutMillis(poolConnectTimeoutMillis)
+        .setSocketTimeoutMillis(poolSocketTimeoutMillis)
+        .setConnectionRequestTimeoutMillis(poolConnectionRequestTimeoutMillis)
+        .setTlsSessionCacheSize(poolTlsSessionCacheSize)
+        .setTlsSessionTimeoutSeconds(poolTlsSessionTimeoutSeconds)
+        .setResponseCompression(transportResponseCompression)
+        .setRequestCompression(transportRequestCompression)
+        .setRequestCompressionMinBytes(transportRequestCompressionMinBytes)
+        .build();
+    if (poolWarmUpConnections > 0) {
+      for (String endpoint : getSparqlEndpoints()) {
+        pool.warmUp(endpoint, poolWarmUpConnections);
+      }
+    }
+    return pool;
+  }
+
+  @Value("${async.enabled:false}")
+  private boolean asyncEnabled;
+
+  @Value("${async.ioThreads:200}")
+  private int asyncIoThreads;
+
+  @Value("${async.queueSize:200}")
+  private int asyncQueueSize;
+
+  @Value("${async.virtualThreads:true}")
+  private boolean asyncVirtualThreads;
+
+  public boolean isAsyncEnabled() {
+    return asyncEnabled;
+  }
+
+  @Value("${deadline.valuesMillis:30000}")
+  private long deadlineValuesMillis;
+
+  @Value("${deadline.entitiesMillis:60000}")
+  private long deadlineEntitiesMillis;
+
+  @Value("${deadline.adminValuesMillis:120000}")
+  private long deadlineAdminValuesMillis;
+
+  @Value("${deadline.adminEntitiesMillis:120000}")
+  private long deadlineAdminEntitiesMillis;
+
+  @Bean
+  public DeadlinePolicy createDeadlinePolicy() {
+    return new DeadlinePolicy(deadlineValuesMillis, deadlineEntitiesMillis,
+        deadlineAdminValuesMillis, deadlineAdminEntitiesMillis);
+  }
+
+  @Bean(name = "sparqlExecutor", destroyMethod = "shutdown")
+  public ExecutorService createSparqlExecutor() {
+    return createSparqlExecutor(asyncIoThreads, asyncQueueSize, asyncVirtualThreads);
+  }
+
+  /**
+   * Creates the executor which sends the queries to the SPARQL endpoint in async mode. These
+   * threads mostly wait for the endpoint, so virtual threads are used if the JVM supports them.
+   * The project is built for Java 8, so they are only used when it runs on Java 21 or newer.
+   * Otherwise a fixed pool of platform threads is used, in front of which at most queueSize
+   * queries wait. Further queries are rejected (RejectedExecutionException) instead of waiting
+   * while their deadline runs out.
+   */
+  public static ExecutorService createSparqlExecutor(int threads, int queueSize,
+      boolean virtualThreads) {
+    if (virtualThreads) {
+      try {
+        Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        LOG.info("Using virtual threads for SPARQL requests.");
+        return (ExecutorService) factory.invoke(null);
+      } catch (NoSuchMethodException e) {
+        LOG.info("Virtual threads are not supported by this JVM, using " + threads
+            + " threads for SPARQL requests.");
+      } catch (ReflectiveOperationException e) {
+        LOG.warn("Cannot create virtual threads, using " + threads
+            + " threads for SPARQL requests. " + e);
+      }
+    }
+    AtomicInteger threadNumber = new AtomicInteger();
+    return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new SynchronousQueue<>(),
+        runnable -> {
+          Thread thread = new Thread(runnable, "sparql-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
 
   @Value("${mappedProperties}")
   public String mappedProperties;
@@ -0,0 +1,26 @@
+package dbpedia.api.configuration;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.cache.Cache;
+import org.springframework.cache.interceptor.SimpleCacheErrorHandler;
+
+/**
+ * Treats cache entries which cannot be read as misses, e.g. entries of the disk tier written in an
+ * older encoding. The entry is evicted, so the result of the query replaces it.
+ */
+public class EvictingCacheErrorHandler extends SimpleCacheErrorHandler {
+
+  private static final Logger LOG = LogManager.getLogger(EvictingCacheErrorHandler.class.getName());
+
+  @Override
+  public void handleCacheGetError(RuntimeException exception, Cache cache, Object key) {
+    LOG.warn("Dropping unreadable entry of cache " + cache.getName() + ": "
+        + exception.getMessage());
+    try {
+      cache.evict(key);
+    } catch (RuntimeException e) {
+      LOG.warn("Could not evict the entry: " + e.getMessage());
+    }
+  }
+}
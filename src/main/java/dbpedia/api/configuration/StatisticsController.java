@@ -0,0 +1,229 @@
+package dbpedia.api.configuration;
+
+import dbpedia.api.client.Endpoint;
+import dbpedia.api.client.EndpointConnectionPool;
+import dbpedia.api.client.EndpointRouter;
+import dbpedia.api.client.MicroBatcher;
+import dbpedia.api.client.ResultFormat;
+import dbpedia.api.client.TransferMetrics;
+import dbpedia.api.controller.AlignedWindowFetcher;
+import dbpedia.api.controller.DBpediaClient;
+import dbpedia.api.controller.HttpCachePolicy;
+import dbpedia.api.controller.NegativeCache;
+import dbpedia.api.controller.OutputBufferPool;
+import dbpedia.api.controller.ResponseCache;
+import dbpedia.api.controller.OffHeapStore;
+import dbpedia.api.controller.ResultRefresher;
+import dbpedia.api.controller.TieredCache;
+import dbpedia.api.controller.TieredCacheResolver;
+import dbpedia.api.controller.TinyLfuCache;
+import dbpedia.api.controller.TinyLfuCacheManager;
+import io.swagger.annotations.Api;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import org.apache.http.pool.PoolStats;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Controller for the /stats resource, which shows counters of the running API instance
+ */
+@Api(value = "StatisticsController", description = "Get runtime statistics of the API", tags = "Info")
+@org.springframework.stereotype.Controller
+@RestController
+public class StatisticsController {
+
+  private DBpediaClient client;
+  private EndpointConnectionPool connectionPool;
+  private EndpointRouter router;
+  private ResponseCache responseCache;
+  private OutputBufferPool outputBuffers;
+  private AlignedWindowFetcher windowFetcher;
+  private ResultRefresher refresher;
+  private TieredCache resultCache;
+  private HttpCachePolicy httpCachePolicy;
+  private CacheManager cacheManager;
+
+  public StatisticsController(DBpediaClient client, EndpointConnectionPool connectionPool,
+      EndpointRouter router, ResponseCache responseCache, AlignedWindowFetcher windowFetcher,
+      ResultRefresher refresher, TieredCacheResolver resultCacheResolver,
+      HttpCachePolicy httpCachePolicy, CacheManager cacheManager,
+      OutputBufferPool outputBuffers) {
+    this.client = client;
+    this.connectionPool = connectionPool;
+    this.router = router;
+    this.responseCache = responseCache;
+    this.windowFetcher = windowFetcher;
+    this.refresher = refresher;
+    this.resultCache = resultCacheResolver.getCache();
+    this.httpCachePolicy = httpCachePolicy;
+    this.cacheManager = cacheManager;
+    this.outputBuffers = outputBuffers;
+  }
+
+  @GetMapping(value = "/${uri.path:api}/stats", produces = {"application/JSON;"})
+  public ResponseEntity stats() {
+
+    JSONObject statsObject = new JSONObject();
+
+    JSONObject endpointObject = new JSONObject();
+    endpointObject.put("executedQueries", client.getExecutedQueries());
+    endpointObject.put("sharedQueries", client.getSharedQueries());
+    endpointObject.put("staleQueries", client.getStaleQueries());
+    endpointObject.put("abortedQueries", client.getAbortedQueries());
+    endpointObject.put("cancelledQueries", client.getCancelledQueries());
+    endpointObject.put("hedgedQueries", router.getHedgedRequests());
+    endpointObject.put("hedgeWins", router.getHedgeWins());
+    endpointObject.put("failovers", router.getFailovers());
+    endpointObject.put("unhedgedQueries", router.getUnhedgedRequests());
+    statsObject.put("endpoint", endpointObject);
+
+    JSONArray endpointsArray = new JSONArray();
+    for (Endpoint endpoint : router.getEndpoints()) {
+      JSONObject object = new JSONObject();
+      object.put("url", endpoint.getUrl());
+      object.put("requests", endpoint.getRequests());
+      object.put("failures", endpoint.getFailures());
+      object.put("outstanding", endpoint.getOutstanding());
+      object.put("latencyEwmaMillis", Math.round(endpoint.getEwmaMillis()));
+      object.put("latencyP95Millis", endpoint.getLatencyPercentile(95));
+      object.put("circuit", endpoint.getCircuitBreaker().getState());
+      object.put("circuitOpenings", endpoint.getCircuitBreaker().getOpenings());
+      object.put("rejectedByCircuit", endpoint.getCircuitBreaker().getRejectedCalls());
+      ResultFormat format = client.getFormatNegotiator().getFormat(endpoint.getUrl());
+      object.put("resultFormat", format != null ? format.toString() : JSONObject.NULL);
+      endpointsArray.put(object);
+    }
+    statsObject.put("endpoints", endpointsArray);
+
+    MicroBatcher batcher = client.getBatcher();
+    JSONObject batchingObject = new JSONObject();
+    batchingObject.put("enabled", batcher.isEnabled());
+    batchingObject.put("mergedQueries", batcher.getMergedQueries());
+    batchingObject.put("batchedQueries", batcher.getBatchedQueries());
+    batchingObject.put("truncatedBatches", batcher.getTruncatedBatches());
+    statsObject.put("batching", batchingObject);
+
+    PoolStats poolStats = connectionPool.getStats();
+    JSONObject poolObject = new JSONObject();
+    poolObject.put("leased", poolStats.getLeased());
+    poolObject.put("available", poolStats.getAvailable());
+    poolObject.put("pending", poolStats.getPending());
+    poolObject.put("max", poolStats.getMax());
+    statsObject.put("connectionPool", poolObject);
+
+    TransferMetrics transfer = connectionPool.getTransferMetrics();
+    JSONObject transferObject = new JSONObject();
+    transferObject.put("responses", transfer.getResponses());
+    transferObject.put("compressedResponses", transfer.getCompressedResponses());
+    transferObject.put("wireBytes", transfer.getWireBytes());
+    transferObject.put("decodedBytes", transfer.getDecodedBytes());
+    transferObject.put("transferMillis", transfer.getTransferMillis());
+    transferObject.put("compressedRequests", transfer.getCompressedRequests());
+    statsObject.put("transfer", transferObject);
+
+    JSONObject formatsObject = new JSONObject();
+    for (ResultFormat format : ResultFormat.values()) {
+      JSONObject formatObject = new JSONObject();
+      formatObject.put("parsedResults", client.getFormatNegotiator().getParsedResults(format));
+      formatObject.put("parseMillis", client.getFormatNegotiator().getParseMillis(format));
+      formatsObject.put(format.toString(), formatObject);
+    }
+    statsObject.put("resultFormats", formatsObject);
+
+    JSONObject responseCacheObject = new JSONObject();
+    responseCacheObject.put("enabled", responseCache.isEnabled());
+    responseCacheObject.put("hits", responseCache.getHits());
+    responseCacheObject.put("misses", responseCache.getMisses());
+    responseCacheObject.put("storedResponses", responseCache.getStoredResponses());
+    responseCacheObject.put("skippedResponses", responseCache.getSkippedResponses());
+    responseCacheObject.put("etags", httpCachePolicy.isEnabled());
+    responseCacheObject.put("notModifiedResponses", httpCachePolicy.getNotModifiedResponses());
+    statsObject.put("responseCache", responseCacheObject);
+
+    JSONObject buffersObject = new JSONObject();
+    buffersObject.put("bufferBytes", outputBuffers.getBufferSize());
+    buffersObject.put("freeBuffers", outputBuffers.getFreeBuffers());
+    buffersObject.put("streamedResponses", outputBuffers.getBorrowed());
+    buffersObject.put("allocatedBuffers", outputBuffers.getAllocated());
+    statsObject.put("responseBuffers", buffersObject);
+
+    NegativeCache negativeCache = client.getNegativeCache();
+    JSONObject negativeCacheObject = new JSONObject();
+    negativeCacheObject.put("enabled", negativeCache.isEnabled());
+    negativeCacheObject.put("emptyHits", negativeCache.getEmptyHits());
+    negativeCacheObject.put("errorHits", negativeCache.getErrorHits());
+    negativeCacheObject.put("storedEmptyResults", negativeCache.getStoredEmptyResults());
+    negativeCacheObject.put("storedErrors", negativeCache.getStoredErrors());
+    statsObject.put("negativeCache", negativeCacheObject);
+
+    JSONObject windowingObject = new JSONObject();
+    windowingObject.put("alignedBlocks", windowFetcher.isEnabled());
+    windowingObject.put("blockSize", windowFetcher.getBlockSize());
+    windowingObject.put("alignedRequests", windowFetcher.getAlignedRequests());
+    windowingObject.put("fetchedBlocks", windowFetcher.getFetchedBlocks());
+    statsObject.put("windowing", windowingObject);
+
+    JSONObject refreshObject = new JSONObject();
+    refreshObject.put("enabled", refresher.isEnabled());
+    refreshObject.put("startedRefreshes", refresher.getStartedRefreshes());
+    refreshObject.put("failedRefreshes", refresher.getFailedRefreshes());
+    statsObject.put("refresh", refreshObject);
+
+    JSONObject resultCacheObject = new JSONObject();
+    resultCacheObject.put("heapHits", resultCache.getHeapHits());
+    resultCacheObject.put("offHeapHits", resultCache.getOffHeapHits());
+    resultCacheObject.put("misses", resultCache.getMisses());
+    OffHeapStore offHeap = resultCache.getOffHeap();
+    JSONObject offHeapObject = new JSONObject();
+    offHeapObject.put("enabled", offHeap != null);
+    if (offHeap != null) {
+      offHeapObject.put("entries", offHeap.size());
+      offHeapObject.put("usedBytes", offHeap.getUsedBytes());
+      offHeapObject.put("maxBytes", offHeap.getMaxBytes());
+      offHeapObject.put("evictions", offHeap.getEvictions());
+    }
+    resultCacheObject.put("offHeap", offHeapObject);
+    statsObject.put("resultCache", resultCacheObject);
+
+    JSONObject backendObject = new JSONObject();
+    if (cacheManager instanceof TinyLfuCacheManager) {
+      backendObject.put("type", "tinylfu");
+      JSONObject cachesObject = new JSONObject();
+      for (TinyLfuCache cache : ((TinyLfuCacheManager) cacheManager).getCaches()) {
+        JSONObject cacheObject = new JSONObject();
+        cacheObject.put("entries", cache.size());
+        cacheObject.put("weightBytes", cache.getWeight());
+        cacheObject.put("maxWeightBytes", cache.getMaxWeight());
+        cacheObject.put("hits", cache.getHits());
+        cacheObject.put("misses", cache.getMisses());
+        cacheObject.put("evictions", cache.getEvictions());
+        cacheObject.put("rejections", cache.getRejections());
+        cachesObject.put(cache.getName(), cacheObject);
+      }
+      backendObject.put("caches", cachesObject);
+    } else {
+      backendObject.put("type", cacheManager.getClass().getSimpleName());
+    }
+    statsObject.put("cacheBackend", backendObject);
+
+    JSONObject memoryObject = new JSONObject();
+    memoryObject.put("heapUsedBytes",
+        ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+    memoryObject.put("heapMaxBytes",
+        ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax());
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      if (pool.getName().equals("direct")) {
+        memoryObject.put("directUsedBytes", pool.getMemoryUsed());
+      }
+    }
+    statsObject.put("memory", memoryObject);
+
+    return new ResponseEntity<>(statsObject.toString(), HttpStatus.OK);
+  }
+}
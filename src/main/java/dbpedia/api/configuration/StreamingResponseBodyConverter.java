@@ -0,0 +1,49 @@
+package dbpedia.api.configuration;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Writes StreamingResponseBody bodies of ResponseEntities directly into the response. The handler
+ * methods return a DeferredResult of a raw ResponseEntity, so Spring cannot tell from the method
+ * signature that the body is streamed and passes it to the message converters.
+ */
+public class StreamingResponseBodyConverter implements HttpMessageConverter<StreamingResponseBody> {
+
+  @Override
+  public boolean canRead(Class<?> clazz, MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+    return StreamingResponseBody.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  public List<MediaType> getSupportedMediaTypes() {
+    return Collections.singletonList(MediaType.ALL);
+  }
+
+  @Override
+  public StreamingResponseBody read(Class<? extends StreamingResponseBody> clazz,
+      HttpInputMessage inputMessage) {
+    throw new HttpMessageNotReadableException("Streamed bodies cannot be read");
+  }
+
+  /**
+   * The content type was already set by the handler
+   */
+  @Override
+  public void write(StreamingResponseBody body, MediaType contentType,
+      HttpOutputMessage outputMessage) throws IOException {
+    body.writeTo(outputMessage.getBody());
+  }
+}
@@ -0,0 +1,103 @@
+package dbpedia.api.controller;
+
+import dbpedia.api.client.Deadline;
+import dbpedia.api.client.KeyedQuery;
+import dbpedia.api.model.ResultSetWrapper;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+/**
+ * Fetches the window of a query from blocks which are aligned to the block size, so all windows
+ * within the same blocks share the cached results of the blocks. A window of at most one block
+ * size is sliced from one or two blocks; the second block is only fetched if the first one is
+ * full. Block k is the query with OFFSET k * blockSize and LIMIT blockSize.
+ * <p>
+ * The content hash (ETag) of a window is derived from the hashes of its blocks, which are computed
+ * once per cached block, and the window's offset and limit. So a cache hit does not encode the rows
+ * of the window.
+ */
+public class AlignedWindowFetcher {
+
+  private final BiFunction<KeyedQuery, Deadline, ResultSetWrapper> send;
+  private final boolean enabled;
+  private final int blockSize;
+  private final AtomicLong alignedRequests = new AtomicLong();
+  private final AtomicLong fetchedBlocks = new AtomicLong();
+
+  /**
+   * @param send sends the block queries and caches their results, e.g. DBpediaClient.sendQuery
+   * @param blockSize number of rows of a block, windows with a larger limit are sent as they are
+   */
+  public AlignedWindowFetcher(BiFunction<KeyedQuery, Deadline, ResultSetWrapper> send,
+      boolean enabled, int blockSize) {
+    this.send = send;
+    this.enabled = enabled && blockSize > 0;
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * @param query query with the requested OFFSET and LIMIT, the keys of the blocks are derived
+   *     from its key
+   * @return the rows of the requested window
+   */
+  public ResultSetWrapper fetch(KeyedQuery query, Deadline deadline) {
+    Query requested = query.getQuery();
+    long limit = requested.getLimit();
+    long offset = requested.getOffset() == Query.NOLIMIT ? 0 : requested.getOffset();
+    if (!enabled || limit == Query.NOLIMIT || limit == 0 || limit > blockSize) {
+      return send.apply(query, deadline);
+    }
+    alignedRequests.incrementAndGet();
+    long firstBlock = offset / blockSize;
+    long lastBlock = (offset + limit - 1) / blockSize;
+
+    ResultSetWrapper block = fetchBlock(query, firstBlock, deadline);
+    boolean stale = block.isStale();
+    int from = (int) (offset - firstBlock * blockSize);
+    List<Binding> rows = new ArrayList<>(
+        block.getRows().subList(Math.min(from, block.size()),
+            (int) Math.min(from + limit, block.size())));
+    String hashes = offset + " " + limit + " " + block.getContentHash();
+    if (lastBlock > firstBlock && block.size() == blockSize) {
+      ResultSetWrapper next = fetchBlock(query, lastBlock, deadline);
+      stale |= next.isStale();
+      rows.addAll(next.getRows().subList(0, (int) Math.min(limit - rows.size(), next.size())));
+      hashes += " " + next.getContentHash();
+    }
+    ResultSetWrapper window = new ResultSetWrapper(block.getResultVars(), rows)
+        .withContentHash(ResultSetWrapper.contentHash(hashes.getBytes(StandardCharsets.UTF_8)));
+    return stale ? window.asStale() : window;
+  }
+
+  private ResultSetWrapper fetchBlock(KeyedQuery query, long block, Deadline deadline) {
+    fetchedBlocks.incrementAndGet();
+    return send.apply(query.withWindow(block * blockSize, blockSize), deadline);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /**
+   * @return number of requests which were served from aligned blocks
+   */
+  public long getAlignedRequests() {
+    return alignedRequests.get();
+  }
+
+  /**
+   * @return number of blocks which were requested from the client, cached or not
+   */
+  public long getFetchedBlocks() {
+    return fetchedBlocks.get();
+  }
+}
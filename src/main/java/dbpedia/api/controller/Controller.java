@@ -22,10 +22,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.LinkedMultiValueMap;
@@ -37,6 +39,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.util.UrlPathHelper;
 import springfox.documentation.annotations.ApiIgnore;
 
@@ -159,9 +162,10 @@ public class Controller {
   )
   @ApiResponses(value = {
       @ApiResponse(code = 200, message = "Success"),
+      @ApiResponse(code = 304, message = "Not Modified (If-None-Match)"),
       @ApiResponse(code = 400, message = "Bad Request"),
       @ApiResponse(code = 500, message = "Internal Server Error")})
-  public ResponseEntity valueRequest(
+  public DeferredResult<ResponseEntity> valueRequest(
       //@PathVariable String path,
       @PathVariable String version,
       @RequestParam(value = ValueRequestModel.URI_ENTITY) @ApiIgnore List<String> entities,
@@ -192,11 +196,8 @@ public class Controller {
     builder.setProperties(propertySet);
     builder.setMapping(false);
 
-    try {
-      return requestHandler.handle(builder.build(), logData);
-    } catch (IllegalArgumentException e) {
-      return illegalArgument(e.getMessage());
-    }
+    builder.setIfNoneMatch(request.getHeader(HttpHeaders.IF_NONE_MATCH));
+    return handle(builder.build());
   }
   @GetMapping(value = EntityRequestModel.PATH, produces = {"application/JSON;",
       "application/JSONLD;", "application/NTRIPLES;", "application/TSV;", "application/RDFJSON",
@@ -267,9 +268,10 @@ public class Controller {
   )
   @ApiResponses(value = {
       @ApiResponse(code = 200, message = "Success"),
+      @ApiResponse(code = 304, message = "Not Modified (If-None-Match)"),
       @ApiResponse(code = 400, message = "Bad Request"),
       @ApiResponse(code = 500, message = "Internal Server Error")})
-  public ResponseEntity entityRequest(
+  public DeferredResult<ResponseEntity> entityRequest(
       @PathVariable String version,
       @RequestParam(value = "key", defaultValue = "") String key,
       @RequestParam(value = RequestModel.URI_OLD_VERSION, defaultValue = "false") boolean oldVersion,
@@ -309,11 +311,8 @@ public class Controller {
     }
     builder.setFilterList(filterSet);
 
-    try {
-      return requestHandler.handle(builder.build(), logData);
-    } catch (IllegalArgumentException e) {
-      return illegalArgument(e.getMessage());
-    }
+    builder.setIfNoneMatch(request.getHeader(HttpHeaders.IF_NONE_MATCH));
+    return handle(builder.build());
   }
 
 
@@ -399,9 +398,10 @@ public class Controller {
   )
   @ApiResponses(value = {
       @ApiResponse(code = 200, message = "Success"),
+      @ApiResponse(code = 304, message = "Not Modified (If-None-Match)"),
       @ApiResponse(code = 400, message = "Bad Request"),
       @ApiResponse(code = 500, message = "Internal Server Error")})
-  public ResponseEntity instancesRequest(
+  public DeferredResult<ResponseEntity> instancesRequest(
       @PathVariable String version,
       @PathVariable("classname") String classname,
       @RequestParam(value = "key", defaultValue = "") String key,
@@ -446,11 +446,41 @@ public class Controller {
 
     builder.setFilterList(filterSet);
     builder.setClassname(classname);
+    builder.setIfNoneMatch(request.getHeader(HttpHeaders.IF_NONE_MATCH));
+    return handle(builder.build());
+  }
+
+  /**
+   * Passes the request to the request handler. If async requests are enabled, the servlet thread
+   * is released while the query is running and the response is sent on completion. If the
+   * container completes the request before (client disconnect or timeout), the query is aborted.
+   *
+   * @param model the request built from the URI
+   * @return the deferred response
+   */
+  private DeferredResult<ResponseEntity> handle(RequestModel model) {
+    DeferredResult<ResponseEntity> deferred = new DeferredResult<>();
+    CompletableFuture<ResponseEntity> response;
     try {
-      return requestHandler.handle(builder.build(), logData);
+      if (config.isAsyncEnabled()) {
+        response = requestHandler.handleAsync(model, logData);
+      } else {
+        response = CompletableFuture.completedFuture(requestHandler.handle(model, logData));
+      }
     } catch (IllegalArgumentException e) {
-      return illegalArgument(e.getMessage());
+      response = CompletableFuture.completedFuture(illegalArgument(e.getMessage()));
     }
+    CompletableFuture<ResponseEntity> running = response;
+    deferred.onCompletion(() -> running.cancel(false));
+    deferred.onTimeout(() -> running.cancel(false));
+    running.whenComplete((result, e) -> {
+      if (e == null) {
+        deferred.setResult(result);
+      } else {
+        deferred.setErrorResult(e);
+      }
+    });
+    return deferred;
   }
 
   /**
@@ -1,49 +1,269 @@
 package dbpedia.api.controller;
 
-import dbpedia.api.configuration.Configuration;
+import dbpedia.api.client.CancellableHttpClient;
+import dbpedia.api.client.CircuitOpenException;
+import dbpedia.api.client.Deadline;
+import dbpedia.api.client.DeadlineExceededException;
+import dbpedia.api.client.EndpointConnectionPool;
+import dbpedia.api.client.EndpointRouter;
+import dbpedia.api.client.KeyedQuery;
+import dbpedia.api.client.MicroBatcher;
+import dbpedia.api.client.ResultFormatNegotiator;
+import dbpedia.api.client.SingleFlight;
 import dbpedia.api.model.ResultSetWrapper;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.jena.query.Query;
-import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
-import org.apache.jena.query.ResultSet;
-import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 
 /**
- * Sends SPARQL Queries to the SPARQL Endpoint
+ * Sends SPARQL Queries to the SPARQL Endpoints
  */
 @Component
 public class DBpediaClient {
 
   private static final Logger LOG = LogManager.getLogger(DBpediaClient.class.getName());
-  private final String endpoint;
+  public static final String STALE_CACHE = "DBpediaClient.staleResults";
+  /**
+   * Results which are not put into the query cache: stale results, results with more than
+   * maxCachedRows rows and empty results, which are kept in the NegativeCache if it is enabled
+   */
+  public static final String UNLESS = "#result.stale or #result.size() > #root.target.maxCachedRows"
+      + " or (#result.size() == 0 and #root.target.negativeCache.enabled)";
+  private final EndpointRouter router;
+  private final EndpointConnectionPool connectionPool;
+  /**
+   * Concurrent /values queries for different entities are merged into one query
+   */
+  private final MicroBatcher batcher;
+  private final ResultFormatNegotiator formatNegotiator;
+  /**
+   * Concurrent cache misses for the same query share one execution on the endpoint
+   */
+  private final SingleFlight<String, ResultSetWrapper> inFlightQueries = new SingleFlight<>();
+  /**
+   * Results are kept here longer than in the query cache, they are used when the circuits of all
+   * endpoints are open. The cache keeps them serialized and is limited in bytes, see ehcache.xml
+   */
+  private final Cache staleResults;
+  /**
+   * Larger results are not cached, so a few huge results cannot fill the heap
+   */
+  private final int maxCachedRows;
+  /**
+   * Empty results and errors of the query itself, they are kept shorter than results
+   */
+  private final NegativeCache negativeCache;
+  private final AtomicLong staleQueries = new AtomicLong();
+  private final AtomicLong abortedQueries = new AtomicLong();
+  private final AtomicLong cancelledQueries = new AtomicLong();
 
-  public DBpediaClient(Configuration config) {
-    endpoint = config.getSparqlEndpoint();
+  public DBpediaClient(EndpointRouter router, EndpointConnectionPool connectionPool,
+      MicroBatcher batcher, ResultFormatNegotiator formatNegotiator, CacheManager cacheManager,
+      @Value("${cache.maxEntryRows:100000}") int maxCachedRows, NegativeCache negativeCache) {
+    this.router = router;
+    this.connectionPool = connectionPool;
+    this.batcher = batcher;
+    this.formatNegotiator = formatNegotiator;
+    this.staleResults = cacheManager.getCache(STALE_CACHE);
+    this.maxCachedRows = maxCachedRows;
+    this.negativeCache = negativeCache;
   }
 
   /**
-   * sends query to DB service
+   * sends query to DB service. If the same query is already running, the result of the running
+   * execution is returned instead of sending the query again. The ResultSetWrapper is shared
+   * between these callers; each of them reads it with an own ResultSet. If the circuits of all
+   * endpoints are open, an expired result is returned if there is one; it is marked as stale and
+   * not cached. Results with more than maxCachedRows rows are not cached either. Empty results
+   * and errors of the query itself (4xx) are kept in the NegativeCache instead.
+   * <p>
+   * The execution is aborted when the deadline expires, or when the request is cancelled and no
+   * other caller waits for the execution any more. A shared execution runs with the deadline of
+   * the caller that sent it; the other callers stop waiting when their own deadline expires or
+   * their request is cancelled.
+   * <p>
+   * Queries which only differ in their entities may be merged with other running queries by the
+   * MicroBatcher. A merged query runs with the remaining time of the first caller, but it is not
+   * aborted when one of the requests is cancelled.
    *
-   * @param query The request query
-   * @return String response from DB service
+   * @param query The request query with its canonical key
+   * @param deadline time budget of the request
+   * @return the result rows, shared with the cache and the other callers of the same key
+   * @throws DeadlineExceededException if the deadline expired before the result arrived
    */
 
-  @Cacheable(value = "DBpediaClient.sendQuery", key = "#query.toString()")
-  public ResultSetWrapper sendQuery(Query query) {
-    ResultSet resultSet;
-    try (QueryExecution execution = QueryExecutionFactory.sparqlService(endpoint, query)) {
-      resultSet = execution.execSelect();
+  @Cacheable(value = "DBpediaClient.sendQuery", cacheResolver = "resultCacheResolver",
+      key = "#query.key", unless = UNLESS)
+  public ResultSetWrapper sendQuery(KeyedQuery query, Deadline deadline) {
+    String key = query.getKey();
+    ResultSetWrapper negative = negativeCache.get(key);
+    if (negative != null) {
+      return negative;
+    }
+    return inFlightQueries.execute(key, () -> execute(query.getQuery(), key, deadline), deadline);
+  }
+
+  /**
+   * Sends the query again and replaces its cache entry, which is still served until the new result
+   * arrives. Concurrent refreshes and requests of the same query share one execution. A result
+   * which sendQuery would not cache (stale, too large or empty) does not replace the entry.
+   *
+   * @param query The request query with its canonical key
+   * @param deadline time budget of the refresh
+   * @return the new result
+   */
+  @CachePut(value = "DBpediaClient.sendQuery", cacheResolver = "resultCacheResolver",
+      key = "#query.key", unless = UNLESS)
+  public ResultSetWrapper refreshQuery(KeyedQuery query, Deadline deadline) {
+    String key = query.getKey();
+    return inFlightQueries.execute(key, () -> execute(query.getQuery(), key, deadline), deadline);
+  }
+
+  /**
+   * @param key canonical key of the query, see {@link KeyedQuery}
+   */
+  private ResultSetWrapper execute(Query query, String key, Deadline deadline) {
+    try {
+      long start = System.currentTimeMillis();
+      ResultSetWrapper result;
+      try {
+        result = batcher.execute(query, (sent, merged) -> merged
+            ? route(sent, null, Deadline.after(deadline.getRemainingMillis()))
+            : route(sent, key, deadline));
+      } catch (QueryExceptionHTTP e) {
+        negativeCache.putError(key, e);
+        throw e;
+      }
+      long end = System.currentTimeMillis();
+      result = result.fetched(end, end - start);
+      negativeCache.putEmpty(key, result);
+      if (result.size() <= maxCachedRows) {
+        staleResults.put(key, result);
+      }
+      return result;
+    } catch (CircuitOpenException e) {
+      ResultSetWrapper stale = staleResults.get(key, ResultSetWrapper.class);
+      if (stale == null) {
+        throw e;
+      }
+      staleQueries.incrementAndGet();
+      LOG.warn(e.getMessage() + ", returning a stale result.");
+      return stale.asStale();
+    }
+  }
+
+  /**
+   * @param key canonical key of the shared execution, null for merged queries
+   */
+  private ResultSetWrapper route(Query query, String key, Deadline deadline) {
+    // the query is serialized once, because hedged requests may use it in parallel
+    String queryString = query.toString();
+    return router.execute(
+        (endpoint, attempt) -> execute(endpoint, queryString, key, deadline, attempt));
+  }
+
+  /**
+   * @param attempt cancelled by the router if another endpoint answered first
+   */
+  private ResultSetWrapper execute(String endpoint, String query, String key,
+      Deadline deadline, Deadline attempt) {
+    long remaining = deadline.getRemainingMillis();
+    if (remaining <= 0) {
+      abortedQueries.incrementAndGet();
+      throw new DeadlineExceededException("Deadline expired before the query was sent");
+    }
+    CancellableHttpClient httpClient = new CancellableHttpClient(connectionPool.getHttpClient());
+    HttpClientContext context = connectionPool.createContext(remaining);
+    try (Deadline.Registration abort = deadline.onAbort(() -> {
+      // other requests may still wait for the result of a shared execution
+      if (!deadline.isCancelled() || key == null
+          || inFlightQueries.getCallers(key) <= 1) {
+        httpClient.abort();
+      }
+    }); Deadline.Registration lost = attempt.onAbort(httpClient::abort)) {
+      ResultSetWrapper result = formatNegotiator.select(httpClient, context, endpoint, query);
       LOG.info("Query sent to: " + endpoint);
-      return new ResultSetWrapper(ResultSetFactory.copyResults(resultSet));
-    } catch (Exception e) {
+      return result;
+    } catch (RuntimeException e) {
+      if (httpClient.isAborted() && attempt.isCancelled()) {
+        LOG.info("Query to " + endpoint + " aborted, another endpoint answered first.");
+        throw new QueryCancelledException();
+      }
+      if (httpClient.isAborted() && deadline.isCancelled()) {
+        cancelledQueries.incrementAndGet();
+        LOG.info("Query to " + endpoint + " aborted, the request was cancelled.");
+        throw new QueryCancelledException();
+      }
+      if (httpClient.isAborted() || deadline.isExpired()) {
+        abortedQueries.incrementAndGet();
+        LOG.warn("Query to " + endpoint + " aborted, the deadline expired.");
+        throw new DeadlineExceededException("Deadline expired while waiting for " + endpoint);
+      }
       LOG.warn("Tried to send the query to the SparqlService... " + e.getMessage());
       throw e;
     }
   }
 
-}
+  /**
+   * @return number of queries that were really sent to the endpoint
+   */
+  public long getExecutedQueries() {
+    return inFlightQueries.getExecutions();
+  }
+
+  /**
+   * @return number of callers that got the result of a query sent by another caller
+   */
+  public long getSharedQueries() {
+    return inFlightQueries.getSharedCalls();
+  }
+
+  /**
+   * @return number of queries that were answered with an expired result because no endpoint was
+   * available
+   */
+  public long getStaleQueries() {
+    return staleQueries.get();
+  }
+
+  /**
+   * @return number of queries that were aborted because their deadline expired
+   */
+  public long getAbortedQueries() {
+    return abortedQueries.get();
+  }
+
+  /**
+   * @return number of queries that were aborted because the client went away
+   */
+  public long getCancelledQueries() {
+    return cancelledQueries.get();
+  }
+
+  public int getMaxCachedRows() {
+    return maxCachedRows;
+  }
 
+  public NegativeCache getNegativeCache() {
+    return negativeCache;
+  }
+
+  public MicroBatcher getBatcher() {
+    return batcher;
+  }
+
+  public ResultFormatNegotiator getFormatNegotiator() {
+    return formatNegotiator;
+  }
+
+}
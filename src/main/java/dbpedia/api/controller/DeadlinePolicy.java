@@ -0,0 +1,45 @@
+package dbpedia.api.controller;
+
+import dbpedia.api.client.Deadline;
+import dbpedia.api.model.EntityRequestModel;
+import dbpedia.api.model.RequestModel;
+import dbpedia.api.model.UserModel.userType;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Time budgets of requests, by type of the request (/values or /entities and /instances) and type
+ * of the user
+ */
+public class DeadlinePolicy {
+
+  private final Map<userType, Long> valuesMillis = new EnumMap<>(userType.class);
+  private final Map<userType, Long> entitiesMillis = new EnumMap<>(userType.class);
+
+  /**
+   * @param valuesMillis budget of /values requests
+   * @param entitiesMillis budget of /entities and /instances requests
+   * @param adminValuesMillis budget of /values requests of admins
+   * @param adminEntitiesMillis budget of /entities and /instances requests of admins
+   */
+  public DeadlinePolicy(long valuesMillis, long entitiesMillis, long adminValuesMillis,
+      long adminEntitiesMillis) {
+    this.valuesMillis.put(userType.USER, valuesMillis);
+    this.valuesMillis.put(userType.ADMIN, adminValuesMillis);
+    this.entitiesMillis.put(userType.USER, entitiesMillis);
+    this.entitiesMillis.put(userType.ADMIN, adminEntitiesMillis);
+  }
+
+  public long getMillis(RequestModel request, userType type) {
+    Map<userType, Long> budgets =
+        request instanceof EntityRequestModel ? entitiesMillis : valuesMillis;
+    return budgets.get(type == null ? userType.USER : type);
+  }
+
+  /**
+   * @return a deadline starting now for the request
+   */
+  public Deadline start(RequestModel request, userType type) {
+    return Deadline.after(getMillis(request, type));
+  }
+}
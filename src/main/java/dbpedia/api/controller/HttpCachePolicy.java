@@ -0,0 +1,106 @@
+package dbpedia.api.controller;
+
+import dbpedia.api.model.RequestModel.ReturnFormat;
+import dbpedia.api.model.RequestModel.Style;
+import dbpedia.api.model.ResultSetWrapper;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * HTTP caching of the API responses: strong ETags, conditional requests (If-None-Match) and
+ * Cache-Control headers, so clients and proxies can reuse responses. The ETag is built from the
+ * content hash of the result, the format and the style, which together determine the body, so it
+ * is known before the body is formatted.
+ * <p>
+ * A response may be reused by caches for maxAge minus the age of its result. Responses of stale
+ * results must be revalidated. If API keys are used, only private caches may store responses,
+ * otherwise a shared cache would answer requests without checking the quota of their key.
+ */
+public class HttpCachePolicy {
+
+  private final boolean enabled;
+  private final long maxAgeMillis;
+  private final boolean shared;
+  private final AtomicLong notModifiedResponses = new AtomicLong();
+
+  /**
+   * @param maxAgeMillis how long a response of a fresh result may be reused, e.g. the soft TTL of
+   *     the result cache
+   * @param shared true if shared caches (proxies, CDNs) may store the responses
+   */
+  public HttpCachePolicy(boolean enabled, long maxAgeMillis, boolean shared) {
+    this.enabled = enabled;
+    this.maxAgeMillis = maxAgeMillis;
+    this.shared = shared;
+  }
+
+  /**
+   * @return the ETag of the response of the result in the format and style, null if switched off
+   */
+  public String etag(ResultSetWrapper result, ReturnFormat format, Style style) {
+    if (!enabled) {
+      return null;
+    }
+    return "\"" + result.getContentHash() + "-" + format.toString().toLowerCase() + "-"
+        + style.toString().toLowerCase() + "\"";
+  }
+
+  /**
+   * @param ifNoneMatch the If-None-Match header of the request, may be null
+   * @return true if the client already has the response with the ETag
+   */
+  public boolean isNotModified(String ifNoneMatch, String etag) {
+    if (etag == null || ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      // If-None-Match uses the weak comparison (RFC 7232)
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param fetchedAt when the result was fetched from the endpoint, 0 if unknown
+   * @return the Cache-Control header of a response, null if switched off
+   */
+  public CacheControl cacheControl(long fetchedAt, boolean stale) {
+    if (!enabled) {
+      return null;
+    }
+    long age = fetchedAt == 0 ? 0 : Math.max(0, System.currentTimeMillis() - fetchedAt);
+    long maxAge = stale ? 0 : Math.max(0, maxAgeMillis - age);
+    CacheControl cacheControl = maxAge == 0 ? CacheControl.noCache()
+        : CacheControl.maxAge(TimeUnit.MILLISECONDS.toSeconds(maxAge), TimeUnit.SECONDS);
+    return shared ? cacheControl.cachePublic() : cacheControl.cachePrivate();
+  }
+
+  /**
+   * @return the 304 response to a request whose If-None-Match matched the ETag
+   */
+  public ResponseEntity notModified(String etag, long fetchedAt) {
+    notModifiedResponses.incrementAndGet();
+    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag)
+        .cacheControl(cacheControl(fetchedAt, false)).build();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return number of requests which were answered with 304 Not Modified
+   */
+  public long getNotModifiedResponses() {
+    return notModifiedResponses.get();
+  }
+}
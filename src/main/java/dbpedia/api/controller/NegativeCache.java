@@ -0,0 +1,138 @@
+package dbpedia.api.controller;
+
+import dbpedia.api.model.ResultSetWrapper;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.springframework.cache.Cache;
+
+/**
+ * Short-lived cache of negative answers of the endpoint: empty results (e.g. misspelled entities)
+ * and errors which the same query would get again (4xx responses of the endpoint, e.g. a query the
+ * endpoint rejects). They expire after their own timeToLive, independent of the result cache, so
+ * a new entity or a fixed endpoint shows up soon.
+ */
+public class NegativeCache {
+
+  public static final String CACHE = "DBpediaClient.negativeResults";
+
+  private final Cache cache;
+  private final boolean enabled;
+  private final long timeToLiveMillis;
+  private final AtomicLong emptyHits = new AtomicLong();
+  private final AtomicLong errorHits = new AtomicLong();
+  private final AtomicLong storedEmptyResults = new AtomicLong();
+  private final AtomicLong storedErrors = new AtomicLong();
+
+  /**
+   * @param cache stores the entries, its own timeToLive should not be shorter than
+   *     timeToLiveMillis
+   * @param timeToLiveMillis how long a negative answer is reused
+   */
+  public NegativeCache(Cache cache, boolean enabled, long timeToLiveMillis) {
+    this.cache = cache;
+    this.enabled = enabled && cache != null && timeToLiveMillis > 0;
+    this.timeToLiveMillis = timeToLiveMillis;
+  }
+
+  /**
+   * @param key canonical key of the query
+   * @return the cached empty result, null if there is no negative answer for the query
+   * @throws QueryExceptionHTTP the cached error of the query
+   */
+  public ResultSetWrapper get(String key) {
+    if (!enabled) {
+      return null;
+    }
+    Entry entry = cache.get(key, Entry.class);
+    if (entry == null) {
+      return null;
+    }
+    if (System.currentTimeMillis() - entry.createdAt >= timeToLiveMillis) {
+      cache.evict(key);
+      return null;
+    }
+    if (entry.message != null) {
+      errorHits.incrementAndGet();
+      throw new QueryExceptionHTTP(entry.responseCode, entry.message);
+    }
+    emptyHits.incrementAndGet();
+    return new ResultSetWrapper(entry.vars, Collections.emptyList())
+        .fetched(entry.createdAt, 0);
+  }
+
+  /**
+   * Caches the result if it is empty and not stale
+   */
+  public void putEmpty(String key, ResultSetWrapper result) {
+    if (enabled && result.size() == 0 && !result.isStale()) {
+      cache.put(key, new Entry(result.getResultVars(), 0, null));
+      storedEmptyResults.incrementAndGet();
+    }
+  }
+
+  /**
+   * Caches the error if the query would get it again
+   */
+  public void putError(String key, RuntimeException e) {
+    if (enabled && isDeterministic(e)) {
+      QueryExceptionHTTP error = (QueryExceptionHTTP) e;
+      cache.put(key, new Entry(Collections.emptyList(), error.getResponseCode(),
+          String.valueOf(error.getMessage())));
+      storedErrors.incrementAndGet();
+    }
+  }
+
+  /**
+   * @return true for errors of the query itself: 4xx responses except timeouts and rate limits
+   */
+  public static boolean isDeterministic(RuntimeException e) {
+    if (!(e instanceof QueryExceptionHTTP)) {
+      return false;
+    }
+    int status = ((QueryExceptionHTTP) e).getResponseCode();
+    return status >= 400 && status < 500 && status != 408 && status != 429;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public long getEmptyHits() {
+    return emptyHits.get();
+  }
+
+  public long getErrorHits() {
+    return errorHits.get();
+  }
+
+  public long getStoredEmptyResults() {
+    return storedEmptyResults.get();
+  }
+
+  public long getStoredErrors() {
+    return storedErrors.get();
+  }
+
+  private static final class Entry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ArrayList<String> vars;
+    private final int responseCode;
+    /**
+     * message of the error, null for an empty result
+     */
+    private final String message;
+    private final long createdAt = System.currentTimeMillis();
+
+    private Entry(List<String> vars, int responseCode, String message) {
+      this.vars = new ArrayList<>(vars);
+      this.responseCode = responseCode;
+      this.message = message;
+    }
+  }
+}
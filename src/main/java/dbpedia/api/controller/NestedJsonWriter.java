@@ -0,0 +1,283 @@
+package dbpedia.api.controller;
+
+import static dbpedia.api.controller.OrgJsonLayout.hashOrder;
+import static dbpedia.api.controller.OrgJsonLayout.writeString;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dbpedia.api.controller.OrgJsonLayout.Printer;
+import dbpedia.api.model.NamespaceTrie;
+import dbpedia.api.model.RequestModel.Style;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+
+/**
+ * Writes a result set in the NESTED style: one object per entity with its id and an array of the
+ * distinct values per property. Values with a label (a variable of the same name ending with
+ * "Label") are objects of the shortened value and the label.
+ * <p>
+ * The rows are grouped in one pass over the result set through a hash index of the entities, the
+ * values are deduplicated through a hash set per property. The output is the same as of the former
+ * formatting with org.json (allMightyNested), see OrgJsonLayout. This includes that values which
+ * parse as a JSON number, boolean or null (e.g. "1070303") were never recognized as duplicates.
+ */
+public class NestedJsonWriter {
+
+  private static final String DBR = "http://dbpedia.org/resource/";
+  private static final String ID = "@id";
+  private static final String LABEL = "label";
+  private static final String[] LABELLED_KEYS = hashOrder(ID, LABEL);
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final NamespaceTrie namespaces;
+
+  /**
+   * @param namespaces the values and the properties of "properties" and "values" queries are
+   *     shortened like in the SHORT style
+   */
+  public NestedJsonWriter(NamespaceTrie namespaces) {
+    this.namespaces = namespaces;
+  }
+
+  /**
+   * Groups the rows of the result set, the output is written after the last row
+   *
+   * @param out receives the UTF-8 encoded JSON, it is flushed but not closed
+   */
+  public void write(ResultSet resultSet, OutputStream out) throws IOException {
+    List<String> vars = resultSet.getResultVars();
+    Set<String> resultVars = new HashSet<>(vars);
+    List<String> properties = new ArrayList<>();
+    for (String var : vars) {
+      if (!var.contains("Label") && !var.equals("entities")) {
+        properties.add(var);
+      }
+    }
+    // a query for all values of the entities binds the property and the value of each row
+    boolean propertiesAndValues = properties.contains("properties")
+        && properties.contains("values");
+
+    Map<String, Entity> entities = new LinkedHashMap<>();
+    Map<Resource, String> blankNodeLabels = new HashMap<>();
+    while (resultSet.hasNext()) {
+      QuerySolution solution = resultSet.next();
+      for (String var : vars) {
+        RDFNode node = solution.get(var);
+        if (node != null && node.isAnon()) {
+          // labelled like Jena's SPARQL-JSON output: b0, b1, ... in the order of the variables
+          blankNodeLabels.computeIfAbsent(node.asResource(),
+              resource -> "b" + blankNodeLabels.size());
+        }
+      }
+      RDFNode entityNode = solution.get("entities");
+      if (entityNode == null) {
+        throw new IllegalArgumentException("Row without entities: " + solution);
+      }
+      String id = value(entityNode, blankNodeLabels).replace(DBR, "");
+      Entity entity = entities.computeIfAbsent(id, Entity::new);
+      if (propertiesAndValues) {
+        RDFNode property = solution.get("properties");
+        if (property == null) {
+          throw new IllegalArgumentException("Row without properties: " + solution);
+        }
+        String key = namespaces.shorten(value(property, blankNodeLabels), Style.NESTED);
+        add(entity, key, solution.get("values"), solution, resultVars, blankNodeLabels);
+      } else {
+        for (String var : properties) {
+          add(entity, var, solution.get(var), solution, resultVars, blankNodeLabels);
+        }
+      }
+    }
+
+    Printer printer = new Printer();
+    try (JsonGenerator generator = OrgJsonLayout.createGenerator(out, printer)) {
+      printer.expect(entities.size());
+      generator.writeStartArray();
+      for (Entity entity : entities.values()) {
+        writeEntity(entity, generator, printer);
+      }
+      generator.writeEndArray();
+    }
+  }
+
+  private void add(Entity entity, String key, RDFNode node, QuerySolution solution,
+      Set<String> resultVars, Map<Resource, String> blankNodeLabels) {
+    if (node == null) {
+      return;
+    }
+    String value = namespaces.shorten(value(node, blankNodeLabels), Style.NESTED);
+    String labelVar = key + "Label";
+    RDFNode label = resultVars.contains(labelVar) ? solution.get(labelVar) : null;
+    Values values = entity.properties.computeIfAbsent(key, k -> new Values());
+    if (label == null) {
+      values.add(value);
+    } else {
+      values.add(new Labelled(value, value(label, blankNodeLabels)));
+    }
+  }
+
+  private static String value(RDFNode node, Map<Resource, String> blankNodeLabels) {
+    if (node.isLiteral()) {
+      return node.asLiteral().getLexicalForm();
+    }
+    if (node.isAnon()) {
+      return blankNodeLabels.get(node.asResource());
+    }
+    return node.asResource().getURI();
+  }
+
+  private static void writeEntity(Entity entity, JsonGenerator generator, Printer printer)
+      throws IOException {
+    String[] keys = new String[entity.properties.size() + 1];
+    keys[0] = ID;
+    int i = 1;
+    for (String key : entity.properties.keySet()) {
+      keys[i++] = key;
+    }
+    keys = hashOrder(keys);
+    printer.expect(keys.length);
+    generator.writeStartObject();
+    for (String key : keys) {
+      generator.writeFieldName(key);
+      if (key.equals(ID)) {
+        writeString(generator, entity.id);
+        continue;
+      }
+      List<Object> values = entity.properties.get(key).values;
+      printer.expect(values.size());
+      generator.writeStartArray();
+      for (Object value : values) {
+        if (value instanceof Labelled) {
+          writeLabelled((Labelled) value, generator, printer);
+        } else {
+          writeString(generator, (String) value);
+        }
+      }
+      generator.writeEndArray();
+    }
+    generator.writeEndObject();
+  }
+
+  private static void writeLabelled(Labelled value, JsonGenerator generator, Printer printer)
+      throws IOException {
+    printer.expect(LABELLED_KEYS.length);
+    generator.writeStartObject();
+    for (String key : LABELLED_KEYS) {
+      generator.writeFieldName(key);
+      writeString(generator, key.equals(ID) ? value.id : value.label);
+    }
+    generator.writeEndObject();
+  }
+
+  private static final class Entity {
+
+    private final String id;
+    private final Map<String, Values> properties = new LinkedHashMap<>();
+
+    private Entity(String id) {
+      this.id = id;
+    }
+  }
+
+  /**
+   * The values of a property in the order they were found first
+   */
+  private static final class Values {
+
+    private final List<Object> values = new ArrayList<>();
+    private final Set<Object> distinct = new HashSet<>();
+
+    private void add(Object value) {
+      if (value instanceof String ? !contains((String) value) : !distinct.contains(value)) {
+        values.add(value);
+        distinct.add(value);
+      }
+    }
+
+    /**
+     * The former implementation compared a value to the array as JSON if it parsed as JSON, and
+     * as a string otherwise
+     */
+    private boolean contains(String value) {
+      if (!mightBeJson(value)) {
+        return distinct.contains(value);
+      }
+      JsonNode node;
+      try {
+        node = MAPPER.readTree(value);
+      } catch (IOException e) {
+        return distinct.contains(value);
+      }
+      if (node == null) {
+        return false;
+      }
+      if (node.isTextual()) {
+        return distinct.contains(node.textValue());
+      }
+      if (node.isObject() && node.size() == 2 && node.path(ID).isTextual()
+          && node.path(LABEL).isTextual()) {
+        return distinct.contains(new Labelled(node.get(ID).textValue(),
+            node.get(LABEL).textValue()));
+      }
+      // numbers, booleans, null and arrays never equal a string or a labelled value
+      return false;
+    }
+
+    /**
+     * @return false if the value cannot be parsed as JSON, which spares most values the parser
+     *     and its exception
+     */
+    private static boolean mightBeJson(String value) {
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+          return "{[\"-0123456789tfn\ufeff".indexOf(c) >= 0;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * A value with a label
+   */
+  private static final class Labelled {
+
+    private final String id;
+    private final String label;
+
+    private Labelled(String id, String label) {
+      this.id = id;
+      this.label = label;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Labelled)) {
+        return false;
+      }
+      Labelled other = (Labelled) o;
+      return id.equals(other.id) && label.equals(other.label);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * id.hashCode() + label.hashCode();
+    }
+  }
+}
@@ -0,0 +1,216 @@
+package dbpedia.api.controller;
+
+import dbpedia.api.model.ResultSetCodec;
+import dbpedia.api.model.ResultSetWrapper;
+import java.io.InvalidObjectException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Keeps results outside of the Java heap: every entry is encoded with {@link ResultSetCodec} into
+ * a direct ByteBuffer, so the garbage collector does not have to trace its rows. The store is
+ * limited in bytes; the least recently used entries are evicted first. Entries expire like the
+ * entries of ehcache after timeToLive and timeToIdle. Every hit decodes the entry again, so this
+ * tier is meant for large results which are requested less often.
+ * <p>
+ * The memory of an evicted entry is released when the garbage collector collects its ByteBuffer;
+ * the JVM limits all direct buffers to -XX:MaxDirectMemorySize.
+ */
+public class OffHeapStore {
+
+  private final long maxBytes;
+  private final long timeToLiveMillis;
+  private final long timeToIdleMillis;
+  /**
+   * in access order, the eldest entry is the least recently used one
+   */
+  private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long usedBytes;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * @param maxBytes size of all encoded entries
+   * @param timeToLiveMillis entries expire this time after they were put, 0 for never
+   * @param timeToIdleMillis entries expire this time after the last hit, 0 for never
+   */
+  public OffHeapStore(long maxBytes, long timeToLiveMillis, long timeToIdleMillis) {
+    this.maxBytes = maxBytes;
+    this.timeToLiveMillis = timeToLiveMillis;
+    this.timeToIdleMillis = timeToIdleMillis;
+  }
+
+  /**
+   * @return the decoded result, null if there is no entry or it expired
+   */
+  public ResultSetWrapper get(Object key) {
+    Entry entry;
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      entry = entries.get(key);
+      if (entry != null && entry.isExpired(now)) {
+        remove(key);
+        entry = null;
+      }
+      if (entry != null) {
+        entry.lastAccess = now;
+      }
+    }
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return entry.decode();
+  }
+
+  /**
+   * Stores the result, results larger than the store are not stored
+   *
+   * @return true if the result was stored
+   */
+  public boolean put(Object key, ResultSetWrapper result) {
+    return put(key, result, System.currentTimeMillis());
+  }
+
+  /**
+   * Stores the result as if it was put at the given time, so it expires timeToLive after that
+   *
+   * @param created when the entry counts as put, e.g. when a result of a snapshot was fetched
+   * @return true if the result was stored, false if it is too large or has already expired
+   */
+  public boolean put(Object key, ResultSetWrapper result, long created) {
+    long now = System.currentTimeMillis();
+    if (timeToLiveMillis > 0 && now - created >= timeToLiveMillis) {
+      evict(key);
+      return false;
+    }
+    byte[] data = ResultSetCodec.encode(result.getResultVars(), result.getRows());
+    if (data.length > maxBytes) {
+      evict(key);
+      return false;
+    }
+    ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+    buffer.put(data).flip();
+    Entry entry = new Entry(buffer, ResultSetWrapper.contentHash(data), result.getFetchedAt(),
+        result.getFetchMillis(), created, now);
+    synchronized (this) {
+      remove(key);
+      Iterator<Map.Entry<Object, Entry>> eldest = entries.entrySet().iterator();
+      while (usedBytes + data.length > maxBytes && eldest.hasNext()) {
+        usedBytes -= eldest.next().getValue().buffer.capacity();
+        eldest.remove();
+        evictions.incrementAndGet();
+      }
+      entries.put(key, entry);
+      usedBytes += data.length;
+    }
+    return true;
+  }
+
+  public synchronized void evict(Object key) {
+    remove(key);
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    usedBytes = 0;
+  }
+
+  /**
+   * Decodes every entry which is not expired, without counting it as a hit
+   */
+  public void forEach(BiConsumer<Object, ResultSetWrapper> consumer) {
+    List<Map.Entry<Object, Entry>> copy;
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      copy = new ArrayList<>(entries.entrySet());
+    }
+    for (Map.Entry<Object, Entry> entry : copy) {
+      if (!entry.getValue().isExpired(now)) {
+        consumer.accept(entry.getKey(), entry.getValue().decode());
+      }
+    }
+  }
+
+  private void remove(Object key) {
+    Entry removed = entries.remove(key);
+    if (removed != null) {
+      usedBytes -= removed.buffer.capacity();
+    }
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getUsedBytes() {
+    return usedBytes;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return number of entries which were removed to make room for others
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  private final class Entry {
+
+    private final ByteBuffer buffer;
+    /**
+     * content hash of the encoded rows, so a hit does not have to encode them again for its ETag
+     */
+    private final String contentHash;
+    private final long fetchedAt;
+    private final long fetchMillis;
+    private final long created;
+    private volatile long lastAccess;
+
+    private Entry(ByteBuffer buffer, String contentHash, long fetchedAt, long fetchMillis,
+        long created, long lastAccess) {
+      this.buffer = buffer;
+      this.contentHash = contentHash;
+      this.fetchedAt = fetchedAt;
+      this.fetchMillis = fetchMillis;
+      this.created = created;
+      this.lastAccess = lastAccess;
+    }
+
+    private boolean isExpired(long now) {
+      return (timeToLiveMillis > 0 && now - created >= timeToLiveMillis)
+          || (timeToIdleMillis > 0 && now - lastAccess >= timeToIdleMillis);
+    }
+
+    private ResultSetWrapper decode() {
+      byte[] data = new byte[buffer.capacity()];
+      // a duplicate has its own position, concurrent readers do not interfere
+      buffer.duplicate().get(data);
+      try {
+        return ResultSetCodec.decode(data).fetched(fetchedAt, fetchMillis)
+            .withContentHash(contentHash);
+      } catch (InvalidObjectException e) {
+        throw new IllegalStateException("Off-heap entry is corrupt", e);
+      }
+    }
+  }
+}
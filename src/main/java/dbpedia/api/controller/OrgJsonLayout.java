@@ -0,0 +1,210 @@
+package dbpedia.api.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.PrettyPrinter;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.CharacterEscapes;
+import com.fasterxml.jackson.core.io.SerializedString;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.json.JSONObject;
+
+/**
+ * Writes JSON with a Jackson generator the way org.json's toString(2) printed it, which the styled
+ * responses were formatted with before they were streamed: indented by 2, objects and arrays with
+ * a single entry on one line, the keys of an object in the order of org.json's HashMap and strings
+ * escaped like org.json does.
+ */
+final class OrgJsonLayout {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory()
+      .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+  private static final CharacterEscapes ESCAPES = new OrgJsonEscapes();
+
+  private OrgJsonLayout() {
+  }
+
+  /**
+   * @param out receives the UTF-8 encoded JSON, closing the generator flushes it but does not
+   *     close it
+   */
+  static JsonGenerator createGenerator(OutputStream out, Printer printer) throws IOException {
+    // Jackson's UTF-8 generator would escape characters outside the BMP, org.json does not
+    JsonGenerator generator = JSON_FACTORY
+        .createGenerator(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    generator.setPrettyPrinter(printer);
+    generator.setCharacterEscapes(ESCAPES);
+    return generator;
+  }
+
+  /**
+   * Writes a string value. Keys are written by the generator, they are variable names or IRIs,
+   * which cannot contain "</".
+   */
+  static void writeString(JsonGenerator generator, String value) throws IOException {
+    if (value.contains("</")) {
+      // org.json escapes the slash of "</", which cannot be expressed by CharacterEscapes
+      generator.writeRawValue(JSONObject.quote(value));
+    } else {
+      generator.writeString(value);
+    }
+  }
+
+  /**
+   * @return the keys in the iteration order of a HashMap they are put into in this order
+   */
+  static String[] hashOrder(String... keys) {
+    Map<String, Boolean> map = new HashMap<>();
+    for (String key : keys) {
+      map.put(key, Boolean.TRUE);
+    }
+    return map.keySet().toArray(new String[0]);
+  }
+
+  /**
+   * Layout of org.json's toString(2). Whether a container is written on several lines depends on
+   * its number of entries, so the writer announces it with expect() before each container.
+   */
+  static final class Printer implements PrettyPrinter {
+
+    private static final String NEWLINE = "\n" + new String(new char[64]).replace('\0', ' ');
+
+    private boolean[] multiLine = new boolean[8];
+    private int[] outerIndent = new int[8];
+    private int depth;
+    private int indent;
+    private int expected;
+
+    void expect(int entries) {
+      expected = entries;
+    }
+
+    private void open(JsonGenerator generator, char bracket) throws IOException {
+      if (depth == multiLine.length) {
+        multiLine = Arrays.copyOf(multiLine, depth * 2);
+        outerIndent = Arrays.copyOf(outerIndent, depth * 2);
+      }
+      multiLine[depth] = expected > 1;
+      outerIndent[depth] = indent;
+      if (multiLine[depth]) {
+        indent += 2;
+      }
+      depth++;
+      generator.writeRaw(bracket);
+    }
+
+    private void close(JsonGenerator generator, char bracket) throws IOException {
+      depth--;
+      indent = outerIndent[depth];
+      if (multiLine[depth]) {
+        newLine(generator);
+      }
+      generator.writeRaw(bracket);
+    }
+
+    private void separate(JsonGenerator generator, boolean first) throws IOException {
+      if (!first) {
+        generator.writeRaw(',');
+      }
+      if (multiLine[depth - 1]) {
+        newLine(generator);
+      }
+    }
+
+    private void newLine(JsonGenerator generator) throws IOException {
+      if (indent < NEWLINE.length()) {
+        generator.writeRaw(NEWLINE, 0, indent + 1);
+      } else {
+        generator.writeRaw('\n');
+        for (int i = 0; i < indent; i++) {
+          generator.writeRaw(' ');
+        }
+      }
+    }
+
+    @Override
+    public void writeRootValueSeparator(JsonGenerator generator) {
+    }
+
+    @Override
+    public void writeStartObject(JsonGenerator generator) throws IOException {
+      open(generator, '{');
+    }
+
+    @Override
+    public void writeEndObject(JsonGenerator generator, int entries) throws IOException {
+      close(generator, '}');
+    }
+
+    @Override
+    public void writeObjectEntrySeparator(JsonGenerator generator) throws IOException {
+      separate(generator, false);
+    }
+
+    @Override
+    public void writeObjectFieldValueSeparator(JsonGenerator generator) throws IOException {
+      generator.writeRaw(": ");
+    }
+
+    @Override
+    public void writeStartArray(JsonGenerator generator) throws IOException {
+      open(generator, '[');
+    }
+
+    @Override
+    public void writeEndArray(JsonGenerator generator, int values) throws IOException {
+      close(generator, ']');
+    }
+
+    @Override
+    public void writeArrayValueSeparator(JsonGenerator generator) throws IOException {
+      separate(generator, false);
+    }
+
+    @Override
+    public void beforeArrayValues(JsonGenerator generator) throws IOException {
+      separate(generator, true);
+    }
+
+    @Override
+    public void beforeObjectEntries(JsonGenerator generator) throws IOException {
+      separate(generator, true);
+    }
+  }
+
+  /**
+   * Escapes like org.json: control characters without a short escape, U+0080 to U+009F and
+   * U+2000 to U+20FF as lower case unicode escapes
+   */
+  private static final class OrgJsonEscapes extends CharacterEscapes {
+
+    private final int[] asciiEscapes = standardAsciiEscapesForJSON();
+
+    private OrgJsonEscapes() {
+      for (int c = 0; c < ' '; c++) {
+        if ("\b\t\n\f\r".indexOf(c) < 0) {
+          asciiEscapes[c] = ESCAPE_CUSTOM;
+        }
+      }
+    }
+
+    @Override
+    public int[] getEscapeCodesForAscii() {
+      return asciiEscapes;
+    }
+
+    @Override
+    public SerializableString getEscapeSequence(int c) {
+      if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+        return new SerializedString(String.format("\\u%04x", c));
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package dbpedia.api.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of the output buffers of streamed responses. A response writes through a buffer of the pool
+ * into the servlet output stream, so its memory does not grow with the size of the result. The
+ * pool keeps at most maxBuffers free buffers, if it is empty a new buffer is allocated.
+ */
+public class OutputBufferPool {
+
+  private final int bufferSize;
+  private final BlockingQueue<byte[]> buffers;
+  private final AtomicLong borrowed = new AtomicLong();
+  private final AtomicLong allocated = new AtomicLong();
+
+  /**
+   * @param maxBuffers number of free buffers which are kept
+   * @param bufferSize bytes of a buffer
+   */
+  public OutputBufferPool(int maxBuffers, int bufferSize) {
+    this.bufferSize = bufferSize;
+    this.buffers = new ArrayBlockingQueue<>(Math.max(1, maxBuffers));
+  }
+
+  /**
+   * Opens a buffered stream to the target. Closing the stream flushes it and returns the buffer,
+   * the target is not closed.
+   *
+   * @param maxCopyBytes the written bytes are also copied until they exceed this limit, 0 for no
+   *     copy
+   */
+  public PooledOutputStream open(OutputStream target, int maxCopyBytes) {
+    borrowed.incrementAndGet();
+    byte[] buffer = buffers.poll();
+    if (buffer == null) {
+      allocated.incrementAndGet();
+      buffer = new byte[bufferSize];
+    }
+    return new PooledOutputStream(target, buffer, maxCopyBytes);
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * @return number of free buffers in the pool
+   */
+  public int getFreeBuffers() {
+    return buffers.size();
+  }
+
+  /**
+   * @return number of streams which were opened
+   */
+  public long getBorrowed() {
+    return borrowed.get();
+  }
+
+  /**
+   * @return number of buffers which were allocated because the pool was empty
+   */
+  public long getAllocated() {
+    return allocated.get();
+  }
+
+  /**
+   * Buffered stream which counts the written bytes and optionally keeps a copy of them (e.g. for
+   * the response cache). Not thread-safe, like the servlet output stream.
+   */
+  public final class PooledOutputStream extends OutputStream {
+
+    private final OutputStream target;
+    private final int maxCopyBytes;
+    private byte[] buffer;
+    private int position;
+    private long count;
+    private ByteArrayOutputStream copy;
+
+    private PooledOutputStream(OutputStream target, byte[] buffer, int maxCopyBytes) {
+      this.target = target;
+      this.buffer = buffer;
+      this.maxCopyBytes = maxCopyBytes;
+      this.copy = maxCopyBytes > 0 ? new ByteArrayOutputStream() : null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      ensureOpen();
+      if (position == buffer.length) {
+        flushBuffer();
+      }
+      buffer[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      ensureOpen();
+      if (length >= buffer.length) {
+        // larger than the buffer, no need to copy it into the buffer first
+        flushBuffer();
+        writeThrough(bytes, offset, length);
+        return;
+      }
+      if (length > buffer.length - position) {
+        flushBuffer();
+      }
+      System.arraycopy(bytes, offset, buffer, position, length);
+      position += length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      ensureOpen();
+      flushBuffer();
+      target.flush();
+    }
+
+    /**
+     * Flushes the stream and returns the buffer to the pool
+     */
+    @Override
+    public void close() throws IOException {
+      if (buffer == null) {
+        return;
+      }
+      try {
+        flush();
+      } finally {
+        buffers.offer(buffer);
+        buffer = null;
+      }
+    }
+
+    /**
+     * @return number of bytes written to the stream
+     */
+    public long getCount() {
+      return count + position;
+    }
+
+    /**
+     * @return the written bytes after close(), null if they exceeded maxCopyBytes or no copy was
+     *     requested
+     */
+    public byte[] getCopy() {
+      return copy != null && buffer == null ? copy.toByteArray() : null;
+    }
+
+    /**
+     * @throws IOException after close(), the buffer may already be used by another stream
+     */
+    private void ensureOpen() throws IOException {
+      if (buffer == null) {
+        throw new IOException("stream closed");
+      }
+    }
+
+    private void flushBuffer() throws IOException {
+      if (position > 0) {
+        writeThrough(buffer, 0, position);
+        position = 0;
+      }
+    }
+
+    private void writeThrough(byte[] bytes, int offset, int length) throws IOException {
+      target.write(bytes, offset, length);
+      count += length;
+      if (copy != null) {
+        if (copy.size() + length > maxCopyBytes) {
+          copy = null;
+        } else {
+          copy.write(bytes, offset, length);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package dbpedia.api.controller;
+
+import static dbpedia.api.controller.OrgJsonLayout.hashOrder;
+import static dbpedia.api.controller.OrgJsonLayout.writeString;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import dbpedia.api.controller.OrgJsonLayout.Printer;
+import dbpedia.api.model.NamespaceTrie;
+import dbpedia.api.model.RequestModel.Style;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.impl.Util;
+
+/**
+ * Writes a result set as SPARQL-JSON in the PREFIXED or SHORT style in one pass over the rows,
+ * without building a document: the URIs and the datatypes of typed literals are shortened with the
+ * longest matching namespace while they are written.
+ * <p>
+ * The layout is the same as of the former formatting with org.json (Jena's SPARQL-JSON, parsed,
+ * shortened and printed with toString(2)), see OrgJsonLayout.
+ */
+public class PrefixedJsonWriter {
+
+  private static final String[] ROOT_KEYS = hashOrder("head", "results");
+  private static final String[] RESOURCE_KEYS = hashOrder("type", "value");
+  private static final String[] LANG_LITERAL_KEYS = hashOrder("type", "xml:lang", "value");
+  private static final String[] TYPED_LITERAL_KEYS = hashOrder("type", "datatype", "value");
+
+  private final NamespaceTrie namespaces;
+  private final Style style;
+
+  /**
+   * @param style PREFIXED or SHORT, SHORT drops the dbr: and dbo: prefixes
+   */
+  public PrefixedJsonWriter(NamespaceTrie namespaces, Style style) {
+    this.namespaces = namespaces;
+    this.style = style;
+  }
+
+  /**
+   * Writes the rows of the result set while it is iterated
+   *
+   * @param out receives the UTF-8 encoded JSON, it is flushed but not closed
+   */
+  public void write(ResultSet resultSet, OutputStream out) throws IOException {
+    List<String> vars = resultSet.getResultVars();
+    Printer printer = new Printer();
+    try (JsonGenerator generator = OrgJsonLayout.createGenerator(out, printer)) {
+      printer.expect(ROOT_KEYS.length);
+      generator.writeStartObject();
+      for (String key : ROOT_KEYS) {
+        generator.writeFieldName(key);
+        printer.expect(1);
+        generator.writeStartObject();
+        if (key.equals("head")) {
+          generator.writeFieldName("vars");
+          printer.expect(vars.size());
+          generator.writeStartArray();
+          for (String var : vars) {
+            writeString(generator, var);
+          }
+          generator.writeEndArray();
+        } else {
+          generator.writeFieldName("bindings");
+          writeBindings(resultSet, vars, generator, printer);
+        }
+        generator.writeEndObject();
+      }
+      generator.writeEndObject();
+    }
+  }
+
+  private void writeBindings(ResultSet resultSet, List<String> vars, JsonGenerator generator,
+      Printer printer) throws IOException {
+    // the layout of the array depends on whether there is more than one row
+    QuerySolution next = resultSet.hasNext() ? resultSet.next() : null;
+    printer.expect(next == null ? 0 : resultSet.hasNext() ? 2 : 1);
+    generator.writeStartArray();
+    // key order of the rows by their bound variables, the rows mostly bind the same ones
+    Map<Long, String[]> keyOrders = new HashMap<>();
+    Map<Resource, String> blankNodeLabels = new HashMap<>();
+    String[] bound = new String[vars.size()];
+    while (next != null) {
+      QuerySolution solution = next;
+      next = resultSet.hasNext() ? resultSet.next() : null;
+
+      int size = 0;
+      long mask = 0;
+      for (int i = 0; i < vars.size(); i++) {
+        RDFNode node = solution.get(vars.get(i));
+        if (node != null) {
+          bound[size++] = vars.get(i);
+          mask |= 1L << i;
+          if (node.isAnon()) {
+            // labelled like Jena's SPARQL-JSON output: b0, b1, ... in the order of the variables
+            blankNodeLabels.computeIfAbsent(node.asResource(),
+                resource -> "b" + blankNodeLabels.size());
+          }
+        }
+      }
+      String[] keys = vars.size() <= 64 ? keyOrders.get(mask) : null;
+      if (keys == null) {
+        keys = hashOrder(Arrays.copyOf(bound, size));
+        if (vars.size() <= 64) {
+          keyOrders.put(mask, keys);
+        }
+      }
+      printer.expect(keys.length);
+      generator.writeStartObject();
+      for (String var : keys) {
+        generator.writeFieldName(var);
+        writeNode(solution.get(var), generator, printer, blankNodeLabels);
+      }
+      generator.writeEndObject();
+    }
+    generator.writeEndArray();
+  }
+
+  private void writeNode(RDFNode node, JsonGenerator generator, Printer printer,
+      Map<Resource, String> blankNodeLabels) throws IOException {
+    String[] keys;
+    String type;
+    String value;
+    String extra = null;
+    if (node.isLiteral()) {
+      Literal literal = node.asLiteral();
+      type = "literal";
+      value = literal.getLexicalForm();
+      if (Util.isSimpleString(literal) || Util.isLangString(literal)) {
+        String lang = literal.getLanguage();
+        if (lang != null && !lang.isEmpty()) {
+          keys = LANG_LITERAL_KEYS;
+          extra = lang;
+        } else {
+          keys = RESOURCE_KEYS;
+        }
+      } else {
+        keys = TYPED_LITERAL_KEYS;
+        extra = namespaces.shorten(literal.getDatatypeURI(), style);
+      }
+    } else if (node.isAnon()) {
+      keys = RESOURCE_KEYS;
+      type = "bnode";
+      value = blankNodeLabels.get(node.asResource());
+    } else {
+      keys = RESOURCE_KEYS;
+      type = "uri";
+      value = namespaces.shorten(node.asResource().getURI(), style);
+    }
+    printer.expect(keys.length);
+    generator.writeStartObject();
+    for (String key : keys) {
+      generator.writeFieldName(key);
+      switch (key) {
+        case "type":
+          writeString(generator, type);
+          break;
+        case "value":
+          writeString(generator, value);
+          break;
+        default:
+          writeString(generator, extra);
+          break;
+      }
+    }
+    generator.writeEndObject();
+  }
+}
@@ -0,0 +1,125 @@
+package dbpedia.api.controller;
+
+import dbpedia.api.model.NamespaceTrie;
+import dbpedia.api.model.RequestModel.Style;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.impl.Util;
+
+/**
+ * Writes a result set as TSV in the PREFIXED or SHORT style while it is iterated: a header line of
+ * the variables, then one line per row with the shortened URIs, "value"^^datatype for typed
+ * literals, "value"@"lang" for literals with a language and "value" for plain literals. Blank
+ * nodes and unbound variables are empty.
+ * <p>
+ * Backslashes, quotes, tabs and line breaks of literals are escaped like in SPARQL TSV, so every
+ * row is a single line.
+ */
+public class PrefixedTsvWriter {
+
+  private final NamespaceTrie namespaces;
+  private final Style style;
+
+  /**
+   * @param style PREFIXED or SHORT, SHORT drops the dbr: and dbo: prefixes
+   */
+  public PrefixedTsvWriter(NamespaceTrie namespaces, Style style) {
+    this.namespaces = namespaces;
+    this.style = style;
+  }
+
+  /**
+   * @param out receives the UTF-8 encoded TSV, it is flushed but not closed
+   */
+  public void write(ResultSet resultSet, OutputStream out) throws IOException {
+    List<String> vars = resultSet.getResultVars();
+    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    for (int i = 0; i < vars.size(); i++) {
+      writer.write('?');
+      writer.write(vars.get(i));
+      writer.write(i == vars.size() - 1 ? '\n' : '\t');
+    }
+    while (resultSet.hasNext()) {
+      QuerySolution solution = resultSet.next();
+      for (int i = 0; i < vars.size(); i++) {
+        RDFNode node = solution.get(vars.get(i));
+        if (node != null) {
+          writeNode(node, writer);
+        }
+        writer.write(i == vars.size() - 1 ? '\n' : '\t');
+      }
+    }
+    writer.flush();
+  }
+
+  private void writeNode(RDFNode node, Writer writer) throws IOException {
+    if (node.isLiteral()) {
+      Literal literal = node.asLiteral();
+      writer.write('"');
+      writeEscaped(literal.getLexicalForm(), writer);
+      writer.write('"');
+      if (Util.isSimpleString(literal) || Util.isLangString(literal)) {
+        String lang = literal.getLanguage();
+        if (lang != null && !lang.isEmpty()) {
+          writer.write("@\"");
+          writer.write(lang);
+          writer.write('"');
+        }
+      } else {
+        writer.write("^^");
+        writeShortened(literal.getDatatypeURI(), writer);
+      }
+    } else if (node.isURIResource()) {
+      writeShortened(node.asResource().getURI(), writer);
+    }
+  }
+
+  private void writeShortened(String uri, Writer writer) throws IOException {
+    int namespace = namespaces.find(uri);
+    if (namespace < 0) {
+      writer.write(uri);
+    } else {
+      int length = namespaces.getNamespaceLength(namespace);
+      writer.write(namespaces.getReplacement(namespace, style));
+      writer.write(uri, length, uri.length() - length);
+    }
+  }
+
+  private static void writeEscaped(String value, Writer writer) throws IOException {
+    int start = 0;
+    for (int i = 0; i < value.length(); i++) {
+      String escape;
+      switch (value.charAt(i)) {
+        case '\\':
+          escape = "\\\\";
+          break;
+        case '"':
+          escape = "\\\"";
+          break;
+        case '\t':
+          escape = "\\t";
+          break;
+        case '\n':
+          escape = "\\n";
+          break;
+        case '\r':
+          escape = "\\r";
+          break;
+        default:
+          continue;
+      }
+      writer.write(value, start, i - start);
+      writer.write(escape);
+      start = i + 1;
+    }
+    writer.write(value, start, value.length() - start);
+  }
+}
@@ -0,0 +1,223 @@
+package dbpedia.api.controller;
+
+import dbpedia.api.model.RequestModel;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Warms the caches after a start by replaying the most requested API calls of the QueryLogger
+ * files (logfile.log and the archived rollingfile.log.*.gz). The calls are ranked by frequency,
+ * every call counts less the older it is: its weight halves every halfLifeHours. The top calls
+ * are sent to the running instance with a bounded number of concurrent requests.
+ * <p>
+ * The QueryLogger does not record the API version, so the calls are replayed with the latest
+ * version.
+ */
+public class QueryLogWarmer {
+
+  private static final Logger LOG = LogManager.getLogger(QueryLogWarmer.class.getName());
+
+  private static final DateTimeFormatter TIME = DateTimeFormatter
+      .ofPattern("yyyy-MM-dd HH:mm:ss");
+  private static final String QUERY = "query: ";
+
+  private final Path logDir;
+  private final int maxRequests;
+  private final int concurrency;
+  private final double halfLifeHours;
+  private final String key;
+  private final AtomicLong replayedRequests = new AtomicLong();
+  private final AtomicLong failedRequests = new AtomicLong();
+
+  /**
+   * @param logDir directory of the QueryLogger files
+   * @param maxRequests number of calls to replay
+   * @param concurrency number of concurrent requests
+   * @param halfLifeHours age after which a logged call counts half
+   * @param key API key of the replayed requests, empty for none
+   */
+  public QueryLogWarmer(Path logDir, int maxRequests, int concurrency, double halfLifeHours,
+      String key) {
+    this.logDir = logDir;
+    this.maxRequests = maxRequests;
+    this.concurrency = concurrency;
+    this.halfLifeHours = halfLifeHours;
+    this.key = key;
+  }
+
+  /**
+   * Replays the top calls and returns when all of them are answered
+   *
+   * @param baseUrl URL of the API including the version, e.g. http://localhost:8080/api/1.0.0
+   */
+  public void warm(String baseUrl) {
+    long now = System.currentTimeMillis();
+    List<String> calls = rank(readLogs(now), now, maxRequests, halfLifeHours);
+    LOG.info("Replaying " + calls.size() + " logged requests to warm the cache.");
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrency));
+    try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+      for (String call : calls) {
+        executor.execute(() -> replay(httpClient, baseUrl + withKey(call)));
+      }
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.HOURS);
+    } catch (IOException e) {
+      LOG.warn("Warming the cache failed: " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executor.shutdownNow();
+    }
+    LOG.info("Cache warmed with " + replayedRequests.get() + " requests, "
+        + failedRequests.get() + " failed.");
+  }
+
+  private void replay(CloseableHttpClient httpClient, String url) {
+    HttpGet request = new HttpGet(url);
+    // the API requires an Accept header, the format parameter of the call overrides it
+    request.setHeader(HttpHeaders.ACCEPT, "application/json");
+    try (CloseableHttpResponse response = httpClient.execute(request)) {
+      EntityUtils.consume(response.getEntity());
+      if (response.getStatusLine().getStatusCode() == 200) {
+        replayedRequests.incrementAndGet();
+      } else {
+        failedRequests.incrementAndGet();
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      failedRequests.incrementAndGet();
+    }
+  }
+
+  /**
+   * @return the call with the key parameter replaced by the key of the warmer
+   */
+  private String withKey(String call) {
+    int start = call.indexOf('?');
+    String path = start < 0 ? call : call.substring(0, start);
+    List<String> parameters = new ArrayList<>();
+    if (start >= 0) {
+      for (String parameter : call.substring(start + 1).split("&")) {
+        if (!parameter.isEmpty() && !parameter.equals("null")
+            && !parameter.startsWith(RequestModel.URI_KEY + "=")) {
+          parameters.add(parameter);
+        }
+      }
+    }
+    if (!key.isEmpty()) {
+      try {
+        parameters.add(RequestModel.URI_KEY + "=" + URLEncoder.encode(key, "UTF-8"));
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return parameters.isEmpty() ? path : path + "?" + String.join("&", parameters);
+  }
+
+  /**
+   * @return lines of the log files which are not too old to count
+   */
+  private List<String> readLogs(long now) {
+    List<String> lines = new ArrayList<>();
+    long oldest = now - (long) (10 * halfLifeHours * TimeUnit.HOURS.toMillis(1));
+    for (Path dir : new Path[]{logDir, logDir.resolve("archive")}) {
+      if (!Files.isDirectory(dir)) {
+        continue;
+      }
+      try (Stream<Path> files = Files.list(dir)) {
+        for (Path file : files.collect(Collectors.toList())) {
+          String name = file.getFileName().toString();
+          if ((name.startsWith("logfile.log") || name.startsWith("rollingfile.log"))
+              && Files.getLastModifiedTime(file).toMillis() >= oldest) {
+            read(file, lines);
+          }
+        }
+      } catch (IOException e) {
+        LOG.warn("Could not read the query logs in " + dir + ": " + e.getMessage());
+      }
+    }
+    return lines;
+  }
+
+  private static void read(Path file, List<String> lines) throws IOException {
+    try (InputStream in = file.toString().endsWith(".gz")
+        ? new GZIPInputStream(Files.newInputStream(file)) : Files.newInputStream(file);
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+  }
+
+  /**
+   * Ranks the successful calls of QueryLogger lines, e.g.
+   * {@code [INFO ]\t2018-01-01 12:00:00\t\tquery: /values?entities=Leipzig\tkey: ... Duration(ms): 5}
+   *
+   * @param now current time in epoch millis
+   * @return the calls with the highest weight, best first
+   */
+  public static List<String> rank(List<String> lines, long now, int maxRequests,
+      double halfLifeHours) {
+    Map<String, Double> weights = new HashMap<>();
+    double halfLifeMillis = halfLifeHours * TimeUnit.HOURS.toMillis(1);
+    for (String line : lines) {
+      String[] fields = line.split("\t");
+      if (fields.length < 4 || !fields[0].startsWith("[INFO") || !line.contains("Duration(ms)")
+          || !fields[3].startsWith(QUERY)) {
+        continue;
+      }
+      try {
+        long time = LocalDateTime.parse(fields[1], TIME).atZone(ZoneId.systemDefault())
+            .toInstant().toEpochMilli();
+        double weight = Math.pow(0.5, Math.max(0, now - time) / halfLifeMillis);
+        weights.merge(fields[3].substring(QUERY.length()), weight, Double::sum);
+      } catch (DateTimeParseException e) {
+        // not a line of the QueryLogger
+      }
+    }
+    return weights.entrySet().stream()
+        .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+        .limit(maxRequests)
+        .map(Map.Entry::getKey)
+        .collect(Collectors.toList());
+  }
+
+  public long getReplayedRequests() {
+    return replayedRequests.get();
+  }
+
+  public long getFailedRequests() {
+    return failedRequests.get();
+  }
+}
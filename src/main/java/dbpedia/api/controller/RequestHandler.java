@@ -2,6 +2,7 @@ package dbpedia.api.controller;
 
 import dbpedia.api.model.LogDataModel;
 import dbpedia.api.model.RequestModel;
+import java.util.concurrent.CompletableFuture;
 import org.springframework.http.ResponseEntity;
 
 /**
@@ -12,4 +13,13 @@ import org.springframework.http.ResponseEntity;
 public interface RequestHandler {
 
   ResponseEntity handle(RequestModel request, LogDataModel logDataModel);
+
+  /**
+   * Handles the request without blocking the calling thread until the SPARQL endpoint answers.
+   * The default implementation simply completes with the result of handle().
+   */
+  default CompletableFuture<ResponseEntity> handleAsync(RequestModel request,
+      LogDataModel logDataModel) {
+    return CompletableFuture.completedFuture(handle(request, logDataModel));
+  }
 }
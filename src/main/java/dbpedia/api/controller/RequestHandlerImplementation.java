@@ -1,65 +1,86 @@
 package dbpedia.api.controller;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import dbpedia.api.configuration.SwaggerConf;
+import dbpedia.api.client.CircuitOpenException;
+import dbpedia.api.client.Deadline;
+import dbpedia.api.client.DeadlineExceededException;
+import dbpedia.api.client.KeyedQuery;
 import dbpedia.api.factory.DBpediaQueryFactory;
 import dbpedia.api.model.EntityRequestModel;
+import dbpedia.api.model.FormattedResponse;
 import dbpedia.api.model.LogDataModel;
+import dbpedia.api.model.NamespaceTrie;
 import dbpedia.api.model.RequestModel;
 import dbpedia.api.model.RequestModel.ReturnFormat;
 import dbpedia.api.model.RequestModel.Style;
+import dbpedia.api.model.ResultSetWrapper;
 import dbpedia.api.model.UserModel.userType;
 import dbpedia.api.model.ValueRequestModel;
 import dbpedia.api.model.Window;
 import dbpedia.api.versioning.VersionHandler;
 import dbpedia.api.versioning.VersionNotFoundException;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.OutputStream;
 import java.util.Map;
-import org.apache.jena.atlas.json.JSON;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryException;
 import org.apache.jena.query.ResultSet;
-import org.apache.jena.query.ResultSetFactory;
 import org.apache.jena.query.ResultSetFormatter;
-import org.apache.jena.shared.impl.PrefixMappingImpl;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
 import org.apache.jena.sparql.resultset.RDFOutput;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Component
 public class RequestHandlerImplementation implements RequestHandler {
 
-  private DBpediaClient client;
   private Map<Class<? extends RequestModel>, DBpediaQueryFactory> factories;
   private static final Logger LOG =
       LogManager.getLogger(RequestHandlerImplementation.class.getName());
 
   private static final Logger QLOG = LogManager.getLogger("QueryLogger");
+  /**
+   * Warning header of responses with an expired cached result (RFC 7234)
+   */
+  static final String STALE_WARNING = "110 - \"Response is Stale\"";
   private APIKeyHandler apiKeyHandler;
   private VersionHandler versionHandler;
   private boolean usingAPIKeys;
-
+  private Executor sparqlExecutor;
+  private DeadlinePolicy deadlinePolicy;
+  private ResponseCache responseCache;
+  private AlignedWindowFetcher windowFetcher;
+  private HttpCachePolicy httpCachePolicy;
+  private OutputBufferPool outputBuffers;
 
   public RequestHandlerImplementation(
-      Map<Class<? extends RequestModel>, DBpediaQueryFactory> factories, DBpediaClient client,
-      APIKeyHandler apiKeyHandler, VersionHandler versionHandler, boolean usingAPIKeys) {
+      Map<Class<? extends RequestModel>, DBpediaQueryFactory> factories,
+      APIKeyHandler apiKeyHandler, VersionHandler versionHandler, boolean usingAPIKeys,
+      @Qualifier("sparqlExecutor") Executor sparqlExecutor, DeadlinePolicy deadlinePolicy,
+      ResponseCache responseCache, AlignedWindowFetcher windowFetcher,
+      HttpCachePolicy httpCachePolicy, OutputBufferPool outputBuffers) {
     this.factories = factories;
-    this.client = client;
     this.apiKeyHandler = apiKeyHandler;
     this.versionHandler = versionHandler;
     this.usingAPIKeys = usingAPIKeys;
+    this.sparqlExecutor = sparqlExecutor;
+    this.deadlinePolicy = deadlinePolicy;
+    this.responseCache = responseCache;
+    this.windowFetcher = windowFetcher;
+    this.httpCachePolicy = httpCachePolicy;
+    this.outputBuffers = outputBuffers;
   }
 
   /**
@@ -71,8 +92,49 @@ public class RequestHandlerImplementation implements RequestHandler {
    * @return the http-Response containing the response from DBpedia and statuscode
    */
   public ResponseEntity handle(RequestModel request, LogDataModel logDataModel) {
+    PreparedRequest prepared = prepare(request, logDataModel);
+    if (prepared.rejection != null) {
+      return prepared.rejection;
+    }
+    // do stuff with the returned String according to transformation information in the map
+    return send(prepared.query, prepared.model, prepared.namespaces, prepared.deadline,
+        logDataModel);
+  }
 
-    ResponseEntity result = null;
+  /**
+   * Handles an Request like handle(), but the query is sent to DBpedia on the sparqlExecutor and
+   * the response is formatted when the result arrives. So the calling servlet thread is not
+   * blocked while waiting for the SPARQL endpoint. Cancelling the returned future (e.g. because
+   * the client went away) aborts the query.
+   *
+   * @param request contains all information from URI
+   * @return the future http-Response containing the response from DBpedia and statuscode
+   */
+  @Override
+  public CompletableFuture<ResponseEntity> handleAsync(RequestModel request,
+      LogDataModel logDataModel) {
+    PreparedRequest prepared = prepare(request, logDataModel);
+    if (prepared.rejection != null) {
+      return CompletableFuture.completedFuture(prepared.rejection);
+    }
+    CompletableFuture<ResponseEntity> response = sendAsync(prepared.query, prepared.model,
+        prepared.namespaces, prepared.deadline, logDataModel);
+    response.whenComplete((result, e) -> {
+      if (response.isCancelled()) {
+        prepared.deadline.cancel();
+      }
+    });
+    return response;
+  }
+
+  /**
+   * Checks key and quotas, patches the version, generates the query of a request and starts its
+   * deadline
+   *
+   * @param request contains all information from URI
+   * @return the query to send, or the response if the request is rejected
+   */
+  private PreparedRequest prepare(RequestModel request, LogDataModel logDataModel) {
 
     try {
 
@@ -96,28 +158,30 @@ public class RequestHandlerImplementation implements RequestHandler {
             request = versionHandler.patchEntityRequestModel((EntityRequestModel) request);
           }
         } else {
-          return new ResponseEntity<>(
+          return PreparedRequest.rejected(new ResponseEntity<>(
               "Version " + request.getVersion() + " is not compatible "
                   + "with the current version of the api. The result could be incorrect. "
                   + "Use &oldVersion=true if you want to access an incompatible version.",
-              HttpStatus.BAD_REQUEST);
+              HttpStatus.BAD_REQUEST));
         }
       }
     } catch (VersionNotFoundException e) {
       logDataModel.setException("Version" + request.getVersion() + " not found");
       QLOG.error(logDataModel.toString());
-      return new ResponseEntity<>("Version " + request.getVersion() + " not found",
-          HttpStatus.BAD_REQUEST);
+      return PreparedRequest.rejected(new ResponseEntity<>(
+          "Version " + request.getVersion() + " not found", HttpStatus.BAD_REQUEST));
 
     } catch (LimitExceededException e) {
       logDataModel.setException(e.getMessage());
       QLOG.error(logDataModel.toString());
-      return new ResponseEntity<>(e.getMessage(), HttpStatus.UNAUTHORIZED);
+      return PreparedRequest
+          .rejected(new ResponseEntity<>(e.getMessage(), HttpStatus.UNAUTHORIZED));
 
     } catch (InvalidUserkeyException e) {
       logDataModel.setException("Invalid userkey");
       QLOG.error(logDataModel.toString());
-      return new ResponseEntity<>("Invalid userkey", HttpStatus.UNAUTHORIZED);
+      return PreparedRequest
+          .rejected(new ResponseEntity<>("Invalid userkey", HttpStatus.UNAUTHORIZED));
     }
 
     // find the factory for the request and make the query
@@ -133,8 +197,11 @@ public class RequestHandlerImplementation implements RequestHandler {
     // setting windowing
     addWindowingToQuery(query, request.getWindow());
 
-        // do stuff with the returned String according to transformation information in the map
-    return send(query, request, f.getPrefixMap(), logDataModel);
+    userType type = usingAPIKeys && apiKeyHandler.getMap().containsKey(request.getKey())
+        ? apiKeyHandler.getMap().get(request.getKey()).getUserType() : userType.USER;
+    // the canonical key is computed once, the caches and shared executions get it with the query
+    return new PreparedRequest(request, new KeyedQuery(query), f.getNamespaces(),
+        deadlinePolicy.start(request, type));
   }
 
   /**
@@ -144,99 +211,232 @@ public class RequestHandlerImplementation implements RequestHandler {
    * @return response containing dbpedia-response-String and http-statuscode
    */
 
-  private ResponseEntity send(Query query, RequestModel model, PrefixMappingImpl prefixMapping,
-      LogDataModel logDataModel) {
+  private ResponseEntity send(KeyedQuery query, RequestModel model, NamespaceTrie namespaces,
+      Deadline deadline, LogDataModel logDataModel) {
+    String cacheKey = cacheKey(query, model);
+    FormattedResponse cached = responseCache.get(cacheKey);
+    if (cached != null) {
+      return logResponse(respond(cached, model, logDataModel), model, logDataModel);
+    }
     ResponseEntity result;
     try {
-      String dBpediaResponse = styleSwitch(query, model, prefixMapping, logDataModel);
-      ResponseEntity.BodyBuilder bb = ResponseEntity.ok();
-      bb.contentType(MediaType.valueOf("application/"+model.getFormat()));
-      result= bb.body(dBpediaResponse);
-    } catch (QueryException e) {
-      result = new ResponseEntity(HttpStatus.BAD_REQUEST);
-      LOG.error(e);
-      logDataModel.setException(e.toString());
-      QLOG.error(logDataModel.toString());
+      result = respond(windowFetcher.fetch(query, deadline), model, namespaces, cacheKey,
+          logDataModel);
     } catch (Exception e) {
-      result = new ResponseEntity(HttpStatus.INTERNAL_SERVER_ERROR);
-      LOG.error(e);
+      result = error(e, logDataModel);
+    }
+    return logResponse(result, model, logDataModel);
+  }
+
+  /**
+   * send query to DBpedia-Endpoint on the sparqlExecutor, the response is created on completion
+   *
+   * @param query Query from DBpediaQueryFactory
+   * @return future response containing dbpedia-response-String and http-statuscode
+   */
+  private CompletableFuture<ResponseEntity> sendAsync(KeyedQuery query, RequestModel model,
+      NamespaceTrie namespaces, Deadline deadline, LogDataModel logDataModel) {
+    String cacheKey = cacheKey(query, model);
+    FormattedResponse cached = responseCache.get(cacheKey);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(
+          logResponse(respond(cached, model, logDataModel), model, logDataModel));
+    }
+    CompletableFuture<ResultSetWrapper> resultSet;
+    try {
+      resultSet = CompletableFuture
+          .supplyAsync(() -> windowFetcher.fetch(query, deadline), sparqlExecutor);
+    } catch (RejectedExecutionException e) {
+      // all sparql threads are busy and the queue is full
+      return CompletableFuture.completedFuture(
+          logResponse(error(e, logDataModel), model, logDataModel));
+    }
+    return resultSet
+        .thenApply(result -> respond(result, model, namespaces, cacheKey, logDataModel))
+        .exceptionally(e -> error(e instanceof CompletionException ? e.getCause() : e,
+            logDataModel))
+        .thenApply(result -> logResponse(result, model, logDataModel));
+  }
+
+  /**
+   * @return key of the response in the responseCache, null if it is switched off
+   */
+  private String cacheKey(KeyedQuery query, RequestModel model) {
+    return responseCache.isEnabled()
+        ? ResponseCache.key(query, model.getFormat(), model.getStyle()) : null;
+  }
+
+  /**
+   * Creates the successful response from the result of DBpedia. Its body is formatted while it is
+   * streamed to the client and cached if it is small enough. If the client already has the
+   * response (If-None-Match), the result is not formatted.
+   */
+  private ResponseEntity respond(ResultSetWrapper resultSet, RequestModel model,
+      NamespaceTrie namespaces, String cacheKey, LogDataModel logDataModel) {
+    String etag = httpCachePolicy.etag(resultSet, model.getFormat(), model.getStyle());
+    if (!resultSet.isStale() && httpCachePolicy.isNotModified(model.getIfNoneMatch(), etag)) {
+      return httpCachePolicy.notModified(etag, resultSet.getFetchedAt());
+    }
+    // the body is written as UTF-8 bytes, not as a String the converter would encode
+    String contentType = "application/" + model.getFormat() + ";charset=UTF-8";
+    StreamingResponseBody body = out -> stream(resultSet, model, namespaces,
+        resultSet.isStale() ? null : cacheKey, contentType, etag, out, logDataModel);
+    return ok(contentType, etag, resultSet.getFetchedAt(), resultSet.isStale()).body(body);
+  }
+
+  /**
+   * Creates the response from a cached body. Bodies of stale results are never cached, so it is
+   * always fresh.
+   */
+  private ResponseEntity respond(FormattedResponse response, RequestModel model,
+      LogDataModel logDataModel) {
+    if (httpCachePolicy.isNotModified(model.getIfNoneMatch(), response.getEtag())) {
+      return httpCachePolicy.notModified(response.getEtag(), response.getFetchedAt());
+    }
+    logDataModel.setAnswerLength(response.getAnswerLength());
+    return ok(response.getContentType(), response.getEtag(), response.getFetchedAt(), false)
+        .body(response.getBody());
+  }
+
+  private ResponseEntity.BodyBuilder ok(String contentType, String etag, long fetchedAt,
+      boolean stale) {
+    ResponseEntity.BodyBuilder bb = ResponseEntity.ok();
+    bb.contentType(MediaType.valueOf(contentType));
+    if (etag != null) {
+      bb.eTag(etag);
+    }
+    CacheControl cacheControl = httpCachePolicy.cacheControl(fetchedAt, stale);
+    if (cacheControl != null) {
+      bb.cacheControl(cacheControl);
+    }
+    if (stale) {
+      bb.header(HttpHeaders.WARNING, STALE_WARNING);
+    }
+    return bb;
+  }
+
+  /**
+   * Formats and styles the result into the response through a pooled buffer. A copy of the body
+   * is put into the responseCache unless it exceeds its maxEntryBytes. The status was already sent,
+   * so an error aborts the response.
+   *
+   * @param cacheKey key of the body in the responseCache, null if it is not cached
+   */
+  private void stream(ResultSetWrapper resultSet, RequestModel model,
+      NamespaceTrie namespaces, String cacheKey, String contentType, String etag,
+      OutputStream out, LogDataModel logDataModel) throws IOException {
+    int maxCopyBytes = cacheKey != null ? responseCache.getMaxEntryBytes() : 0;
+    byte[] copy;
+    try (OutputBufferPool.PooledOutputStream os = outputBuffers.open(out, maxCopyBytes)) {
+      styleSwitch(resultSet, model, namespaces, os, logDataModel);
+      os.close();
+      copy = os.getCopy();
+    } catch (IOException | RuntimeException e) {
+      LOG.error("Error when streaming the response! " + e);
       logDataModel.setException(e.toString());
       QLOG.error(logDataModel.toString());
+      throw e;
+    }
+    if (cacheKey != null) {
+      if (copy != null) {
+        responseCache.put(cacheKey, new FormattedResponse(copy, contentType,
+            logDataModel.getAnswerLength(), etag, resultSet.getFetchedAt()));
+      } else {
+        responseCache.skip();
+      }
     }
+    logServed(logDataModel);
+  }
+
+  /**
+   * Creates the error response for an exception which occurred while sending the query or
+   * formatting the result
+   */
+  private ResponseEntity error(Throwable e, LogDataModel logDataModel) {
+    ResponseEntity result;
+    if (e instanceof QueryExceptionHTTP && !isClientError((QueryExceptionHTTP) e)) {
+      // the endpoint is down or failed, not the query
+      result = new ResponseEntity(HttpStatus.BAD_GATEWAY);
+    } else if (e instanceof QueryException) {
+      result = new ResponseEntity(HttpStatus.BAD_REQUEST);
+    } else if (e instanceof CircuitOpenException || e instanceof RejectedExecutionException) {
+      result = new ResponseEntity(HttpStatus.SERVICE_UNAVAILABLE);
+    } else if (e instanceof DeadlineExceededException) {
+      result = new ResponseEntity(HttpStatus.GATEWAY_TIMEOUT);
+    } else {
+      result = new ResponseEntity(HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+    LOG.error(e);
+    logDataModel.setException(e.toString());
+    QLOG.error(logDataModel.toString());
+    return result;
+  }
+
+  private static boolean isClientError(QueryExceptionHTTP e) {
+    return e.getResponseCode() >= 400 && e.getResponseCode() < 500;
+  }
 
+  private ResponseEntity logResponse(ResponseEntity result, RequestModel model,
+      LogDataModel logDataModel) {
     LOG.info("key: " + model.getKey() + " version: " + model.getVersion() + " format: "
         + model.getFormat() + " style: " + model.getStyle() + " window limit/offset: "
         + model.getWindow().getLimit() + "/" + model.getWindow().getOffset() + " statuscode: "
         + result.getStatusCodeValue());
 
-    if (result.getStatusCode() == HttpStatus.OK) {
-      QLOG.info(
-          logDataModel.toString() + " Duration(ms): " + ((System.currentTimeMillis()) - logDataModel
-              .getStartTime()));
+    // a streamed body is logged when it was written
+    if ((result.getStatusCode() == HttpStatus.OK
+        || result.getStatusCode() == HttpStatus.NOT_MODIFIED)
+        && !(result.getBody() instanceof StreamingResponseBody)) {
+      logServed(logDataModel);
     }
-  return result;
+    return result;
+  }
+
+  private static void logServed(LogDataModel logDataModel) {
+    QLOG.info(
+        logDataModel.toString() + " Duration(ms): " + ((System.currentTimeMillis()) - logDataModel
+            .getStartTime()));
   }
 
   /**
    * Method for changing the outputsytle
    *
-   * @param query the query to change
+   * @param result the result of the query from DBpedia
    * @param model the requestmodel containing the sytle
-   * @param prefixMapping necessary for the getting prefixes
-   * @return the changed Query-String
+   * @param namespaces necessary for shortening the URIs
+   * @param out receives the styled result
    */
-  public String styleSwitch(Query query, RequestModel model,
-      PrefixMappingImpl prefixMapping, LogDataModel logDataModel) {
-
-    Map<String, String> prefixes = prefixMapping.getNsPrefixMap();
-    if (prefixes.containsValue(null)) {
-      throw new IllegalArgumentException("Prefix  not found!");
-    }
-    ResultSet resultSet = client.sendQuery(query).getResultSet();
-    String dBpediaResponse = format(ResultSetFactory.copyResults(resultSet), model.getFormat(), model.getStyle());
-    logDataModel.setAnswerLength(dBpediaResponse.length());
-    switch (model.getStyle()) {
-      case SHORT:
-        dBpediaResponse = prettyJsonParser(dBpediaResponse, prefixMapping, Style.SHORT);
-        if (model.getFormat() == ReturnFormat.TSV) {
-          dBpediaResponse = prettyTSVParser(dBpediaResponse, Style.SHORT);
-        }
-        break;
-      case PREFIXED:
-        dBpediaResponse = prettyJsonParser(dBpediaResponse, prefixMapping, Style.PREFIXED);
-        if (model.getFormat() == ReturnFormat.TSV) {
-          dBpediaResponse = prettyTSVParser(dBpediaResponse, Style.PREFIXED);
-        }
-        break;
-      case NESTED:
-        dBpediaResponse = allMightyNested(new JSONObject(dBpediaResponse), prefixMapping);
-        break;
-      default:
-        break;
+  public void styleSwitch(ResultSetWrapper result, RequestModel model,
+      NamespaceTrie namespaces, OutputStream out, LogDataModel logDataModel)
+      throws IOException {
+
+    // every call of getResultSet() reads the shared rows without copying them
+    boolean prefixed = model.getStyle() == Style.SHORT || model.getStyle() == Style.PREFIXED;
+    CountingOutputStream counter = new CountingOutputStream(out);
+    if (model.getStyle() == Style.NESTED) {
+      new NestedJsonWriter(namespaces).write(result.getResultSet(), counter);
+    } else if (prefixed && model.getFormat() == ReturnFormat.TSV) {
+      new PrefixedTsvWriter(namespaces, model.getStyle()).write(result.getResultSet(), counter);
+    } else if (prefixed) {
+      new PrefixedJsonWriter(namespaces, model.getStyle()).write(result.getResultSet(), counter);
+    } else {
+      format(result.getResultSet(), model.getFormat(), counter);
     }
-
-    return dBpediaResponse;
+    logDataModel.setAnswerLength((int) Math.min(Integer.MAX_VALUE, counter.getByteCount()));
   }
 
   /**
-   * Handle the output format of the resultset from DBpedia.
+   * Writes the resultset in the output format into the stream while it is iterated. The RDF
+   * formats (JSONLD, RDF, TURTLE, NTRIPLES, RDFXML, RDFJSON) are the exception: RDFOutput builds
+   * the model of the whole result before it is written, so their memory grows with the result.
    *
-   * @param resultSet The response from DBpedia. Its an iterable resultset that can be iterated with
-   * a ResultSetFormatter or RDFOutput.
-   * @param format Possible formats are given in the enum RequestModel.ReturnFormat. Default is
-   * JSON.
-   * @return the formatted result as String
+   * @param os receives the formatted result, it is not flushed
    */
-  public String format(ResultSet resultSet, ReturnFormat format, Style style) {
-    ByteArrayOutputStream os = new ByteArrayOutputStream();
+  public void format(ResultSet resultSet, ReturnFormat format, OutputStream os) {
     try {
       switch (format) {
         case TSV:
-          if (style == Style.NONE) {
-            ResultSetFormatter.outputAsTSV(os, resultSet);
-          } else {
-            ResultSetFormatter.outputAsJSON(os, resultSet);
-          }
+          ResultSetFormatter.outputAsTSV(os, resultSet);
           break;
         case JSON:
           ResultSetFormatter.outputAsJSON(os, resultSet);
@@ -264,7 +464,6 @@ public class RequestHandlerImplementation implements RequestHandler {
       LOG.error("Error when trying to format the resultset! " + e);
       throw e;
     }
-    return new String(os.toByteArray());
   }
 
   /**
@@ -306,357 +505,29 @@ public class RequestHandlerImplementation implements RequestHandler {
 
 
   /**
-   * Generates a pretty JSon-String from the DBpedia-result
-   * @param jsonString the DBpedia-response as JSON
-   * @param prefixes the prefix-map
-   * @param style the Style to be in
-   * @return a pretty JSON-String
-   */
-
-
-  public static String prettyJsonParser (String jsonString, PrefixMappingImpl prefixes, Style style) {
-    JSONObject jsonObject = new JSONObject(jsonString);
-    JSONArray results = jsonObject.getJSONObject("results").getJSONArray("bindings");
-    JSONArray vars = jsonObject.getJSONObject("head").getJSONArray("vars");
-
-    for (int i=0;i<results.length(); i++) {
-      for (int j=0;j<vars.length();j++) {
-        try {
-          JSONObject obj = results.getJSONObject(i).getJSONObject(vars.getString(j));
-          String target = "";
-          if (obj.get("type").equals("uri")) {
-            target = "value";
-          } else if (obj.get("type").equals("literal")) {
-            target = "datatype";
-          }
-
-          for (Map.Entry<String, String> entry : prefixes.getNsPrefixMap().entrySet()) {
-            String value = entry.getValue();
-            if (obj.getString(target).contains(value)) {
-
-              String replaceString;
-              if(style == Style.SHORT && dbrOrdbo(value)) {
-                replaceString = "";
-              } else {
-                replaceString = entry.getKey() + ":";
-              }
-              String newString = obj.getString(target).replace(value, replaceString);
-              obj.put(target, newString);
-              break;
-            }
-          }
-        } catch (JSONException jsonEx) {
-
-        }
-      }
-    }
-    return jsonObject.toString(2);
-  }
-
-  /**
-   * Generates a prettier TSV-String from a already pretty JSON-Object
-   * @param jsonString String of a pretty JSON-Object
-   * @param style the Style to be in
-   * @return a pretty TSV-String
-   */
-
-  private static String prettyTSVParser (String jsonString, Style style) {
-    JSONObject jsonObject = new JSONObject(jsonString);
-    JSONArray results = jsonObject.getJSONObject("results").getJSONArray("bindings");
-    JSONArray vars = jsonObject.getJSONObject("head").getJSONArray("vars");
-    StringBuilder stringBuilder = new StringBuilder();
-
-
-
-    for (int i=0;i<vars.length();i++) {
-      stringBuilder.append("?"+vars.get(i));
-      if (i == vars.length()-1) {
-        stringBuilder.append("\n");
-      } else {
-        stringBuilder.append("\t");
-      }
-    }
-
-    for (int i=0;i<results.length();i++) {
-      for (int j=0;j<vars.length();j++) {
-        String entry = "";
-        try {
-          JSONObject obj = results.getJSONObject(i).getJSONObject(vars.getString(j));
-
-          if (obj.get("type").equals("uri")) {
-            if (style == Style.NONE) {
-              entry = "<" + obj.getString("value") + ">";
-            } else {
-              entry =  obj.getString("value");
-            }
-          } else if (obj.get("type").equals("literal")) {
-            try {
-              if (style == Style.NONE) {
-                entry = "\"" + obj.getString("value") + "\"^^<" + obj.getString("datatype") + ">";
-              } else {
-                entry = "\"" + obj.getString("value") + "\"^^" + obj.getString("datatype");
-              }
-            } catch (JSONException jsonEx) {
-              try {
-                entry = "\"" + obj.getString("value") + "\""+"@\""+obj.getString("xml:lang")+"\"";
-              } catch (JSONException jsException) {
-                entry = "\"" + obj.getString("value") + "\"";
-              }
-            }
-          }
-        } catch (JSONException jEx) {
-
-        }
-          stringBuilder.append(entry);
-          if (j == vars.length() - 1) {
-            stringBuilder.append("\n");
-          } else {
-            stringBuilder.append("\t");
-          }
-      }
-    }
-
-    return stringBuilder.toString();
-  }
-
-  /**
-   * Determines if the JSONArray contains the Object with the id already
-   * @param jarray Array to search in
-   * @param id id to look for
-   * @return
-   */
-
-  private static int jsonArrayContains (JSONArray jarray, String id) {
-
-    for (int i=0; i<jarray.length(); i++) {
-      JSONObject obj = jarray.getJSONObject(i);
-      try {
-        if (obj.getString("@id").equals(id)) {
-          return i;
-        }
-      } catch (JSONException jEx) {
-
-      }
-    }
-    return -1;
-  }
-
-  /**
-   * Determines if the URI is either http://dbpedia.org/ontology/ or http://dbpedia.org/resource/
-   * @param uri
-   * @return
-   */
-  private static boolean dbrOrdbo (String uri) {
-    if (uri.equals("http://dbpedia.org/ontology/") || uri.equals("http://dbpedia.org/resource/")) {
-      return true;
-    } else {
-      return false;
-    }
-  }
-
-  /**
-   * Generates all the nestedJSON results for any query
-   * @param object The result from DBpedia SPARQL-Endpoint as JSON
-   * @param prefixes the prefix-map for the pretty Strings.
-   * @return pretty nestedJSON String
-   */
-
-  public static String allMightyNested (JSONObject object, PrefixMappingImpl prefixes) {
-    JSONArray result = new JSONArray();
-    JSONArray sparqlresults = object.getJSONObject("results").getJSONArray("bindings");
-    JSONArray vars = object.getJSONObject("head").getJSONArray("vars");
-    ArrayList<String> realVars = new ArrayList<>();
-    boolean propVal = false;
-
-    for (int j=0; j<vars.length(); j++) {
-      String var = vars.getString(j);
-
-      if (!var.contains("Label") && !var.equals("entities")) {
-        realVars.add(var);
-      }
-    }
-    if (realVars.contains("properties") && realVars.contains("values")) {
-      propVal = true;
-    }
-
-    for (int i=0; i<sparqlresults.length(); i++) {
-
-      JSONObject resultline = sparqlresults.getJSONObject(i);
-      String entString = resultline.getJSONObject("entities").getString("value");
-      if (entString.contains("http://dbpedia.org/resource/")) {
-        entString = entString.replace("http://dbpedia.org/resource/", "");
-      }
-
-      int index = jsonArrayContains(result, entString);
-
-      if (index < 0) {
-        result.put(new JSONObject().put("@id", entString));
-        index = result.length()-1;
-      }
-      if (propVal) {
-        String var = prettyString(resultline.getJSONObject("properties").getString("value"), prefixes);
-        if (gotLabel(resultline, var)) {
-          try {
-            JSONObject obj = new JSONObject().put("@id",
-                prettyString(resultline.getJSONObject("values").getString("value"), prefixes))
-                .put("label", resultline.getJSONObject(var + "Label").getString("value"));
-            try {
-              if (!arrayContainsValue(result.getJSONObject(index).getJSONArray(var),
-                  obj.toString())) {
-                result.getJSONObject(index).append(var, obj);
-              }
-
-            } catch (JSONException jEx) {
-              result.getJSONObject(index).append(var, obj);
-            }
-          } catch (JSONException jEx1) {
-
-          }
-        } else {
-          try {
-            String val = prettyString(resultline.getJSONObject("values").getString("value"), prefixes);
-            try {
-              if (!arrayContainsValue(result.getJSONObject(index).getJSONArray(var), val)) {
-                result.getJSONObject(index).append(var, val);
-              }
-            } catch (JSONException jEx) {
-              result.getJSONObject(index).append(var, val);
-            }
-          } catch (JSONException jEx2) {
-
-          }
-        }
-      } else {
-        for (String var : realVars) {
-          if (gotLabel(resultline, var)) {
-            try {
-              JSONObject obj = new JSONObject().put("@id",
-                  prettyString(resultline.getJSONObject(var).getString("value"), prefixes))
-                  .put("label", resultline.getJSONObject(var + "Label").getString("value"));
-              try {
-                if (!arrayContainsValue(result.getJSONObject(index).getJSONArray(var),
-                    obj.toString())) {
-                  result.getJSONObject(index).append(var, obj);
-                }
-
-              } catch (JSONException jEx) {
-                result.getJSONObject(index).append(var, obj);
-              }
-            } catch (JSONException jEx1) {
-
-            }
-          } else {
-            try {
-              String val = prettyString(resultline.getJSONObject(var).getString("value"), prefixes);
-              try {
-                if (!arrayContainsValue(result.getJSONObject(index).getJSONArray(var), val)) {
-                  result.getJSONObject(index).append(var, val);
-                }
-              } catch (JSONException jEx) {
-                result.getJSONObject(index).append(var, val);
-              }
-            } catch (JSONException jEx2) {
-
-            }
-          }
-        }
-      }
-    }
-    return result.toString(2);
-  }
-
-  /**
-   * Determines if the Object got a Label in the SPARQL-Result from DBpedia
-   * @param obj the Object to look in
-   * @param var the variable to check for the label
-   * @return true or false
-   */
-
-  public static boolean gotLabel (JSONObject obj, String var) {
-
-    try {
-      obj.get(var+"Label");
-      return true;
-    } catch (JSONException jEx) {
-      return false;
-    }
-  }
-
-  /**
-   * Gets the pretty String
-   * @param var the String to be pretty
-   * @param prefixes the prefix-map
-   * @return the pretty String
-   */
-
-  public static String prettyString (String var, PrefixMappingImpl prefixes) {
-    String result = var;
-
-    if (var.contains("http://dbpedia.org/ontology/")) {
-      result = var.replace("http://dbpedia.org/ontology/","");
-    } else if (var.contains("http://dbpedia.org/resource/")) {
-      result = var.replace("http://dbpedia.org/resource/","");
-    } else if (var.contains("http://www.w3.org/2001/XMLSchema#")) {
-      result = var.replace("http://www.w3.org/2001/XMLSchema#", "xsd:");
-    } else {
-
-      for (Map.Entry<String, String> entry : prefixes.getNsPrefixMap().entrySet()) {
-        String value = entry.getValue();
-        if (var.contains(value)) {
-
-          String replaceString = entry.getKey() + ":";
-          result = var.replace(value, replaceString);
-          break;
-        }
-      }
-    }
-
-    return result;
-  }
-
-  /**
-   * Checks if a JSON-Array already contains value (can be String or a JSONObject)
-   * @param jsonArray the JSON-Array to search in
-   * @param value the value to search for
-   * @return
+   * The result of prepare(): either the (patched) request with its query or the response that
+   * rejects the request
    */
-
-  public static boolean  arrayContainsValue (JSONArray jsonArray, String value) {
-
-    ObjectMapper mapper = new ObjectMapper();
-    boolean result = false;
-
-    JsonNode node;
-
-    try {
-      node = mapper.readTree(jsonArray.toString());
-
-    } catch (IOException ioEx) {
-      node = null;
+  private static final class PreparedRequest {
+
+    private RequestModel model;
+    private KeyedQuery query;
+    private NamespaceTrie namespaces;
+    private Deadline deadline;
+    private ResponseEntity rejection;
+
+    private PreparedRequest(RequestModel model, KeyedQuery query, NamespaceTrie namespaces,
+        Deadline deadline) {
+      this.model = model;
+      this.query = query;
+      this.namespaces = namespaces;
+      this.deadline = deadline;
     }
 
-    if (node.isArray()) {
-      try {
-        JsonNode object = mapper.readTree(value);
-
-        for (int i = 0; i < node.size(); i++) {
-          if (node.get(i).equals(object)) {
-            result = true;
-            break;
-          }
-        }
-      } catch (IOException ioEx) {
-        for (int i = 0; i < node.size(); i++) {
-          String jsonValue = node.get(i).textValue();
-          if (jsonValue != null && jsonValue.equals(value)) {
-            result = true;
-            break;
-          }
-        }
-      }
+    private static PreparedRequest rejected(ResponseEntity rejection) {
+      PreparedRequest prepared = new PreparedRequest(null, null, null, null);
+      prepared.rejection = rejection;
+      return prepared;
     }
-
-    return result;
   }
 }
-
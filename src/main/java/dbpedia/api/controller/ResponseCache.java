@@ -0,0 +1,112 @@
+package dbpedia.api.controller;
+
+import dbpedia.api.client.KeyedQuery;
+import dbpedia.api.model.FormattedResponse;
+import dbpedia.api.model.RequestModel.ReturnFormat;
+import dbpedia.api.model.RequestModel.Style;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.cache.Cache;
+
+/**
+ * Caches the formatted and styled bodies of responses, so a repeated request skips formatting. The
+ * entries are keyed by the canonical query, the format and the style; the prefixes which are used
+ * by the styles are the same for all requests. The size of the cache is limited in bytes by its
+ * configuration in ehcache.xml. Stale results are never stored.
+ */
+public class ResponseCache {
+
+  public static final String CACHE = "RequestHandler.responses";
+
+  private final Cache cache;
+  private final boolean enabled;
+  private final int maxEntryBytes;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong storedResponses = new AtomicLong();
+  private final AtomicLong skippedResponses = new AtomicLong();
+
+  /**
+   * @param cache stores the responses, null if caching is switched off
+   * @param maxEntryBytes larger bodies are not stored
+   */
+  public ResponseCache(Cache cache, boolean enabled, int maxEntryBytes) {
+    this.cache = cache;
+    this.enabled = enabled && cache != null;
+    this.maxEntryBytes = maxEntryBytes;
+  }
+
+  /**
+   * @param query the query with the canonical key it got for the request, it is not
+   *     canonicalized again
+   */
+  public static String key(KeyedQuery query, ReturnFormat format, Style style) {
+    return format + " " + style + "\n" + query.getKey();
+  }
+
+  /**
+   * @return the cached response, null if there is none
+   */
+  public FormattedResponse get(String key) {
+    if (!enabled) {
+      return null;
+    }
+    FormattedResponse response = cache.get(key, FormattedResponse.class);
+    (response != null ? hits : misses).incrementAndGet();
+    return response;
+  }
+
+  public void put(String key, FormattedResponse response) {
+    if (!enabled) {
+      return;
+    }
+    if (response.getBody().length > maxEntryBytes) {
+      skippedResponses.incrementAndGet();
+      return;
+    }
+    cache.put(key, response);
+    storedResponses.incrementAndGet();
+  }
+
+  /**
+   * Counts a response which was not stored because it exceeded maxEntryBytes while it was
+   * streamed
+   */
+  public void skip() {
+    if (enabled) {
+      skippedResponses.incrementAndGet();
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return size limit of a cached body in bytes
+   */
+  public int getMaxEntryBytes() {
+    return maxEntryBytes;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return number of responses which were put into the cache
+   */
+  public long getStoredResponses() {
+    return storedResponses.get();
+  }
+
+  /**
+   * @return number of responses which were too large for the cache
+   */
+  public long getSkippedResponses() {
+    return skippedResponses.get();
+  }
+}
@@ -0,0 +1,201 @@
+package dbpedia.api.controller;
+
+import dbpedia.api.model.ResultSetWrapper;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.cache.Cache;
+
+/**
+ * Saves the result cache of the DBpediaClient to a file on shutdown and loads it on startup, so a
+ * restarted instance does not start with a cold cache. The entries keep the time they were fetched,
+ * so the ResultRefresher renews old ones on their first hit. Entries older than maxAgeMillis are
+ * not loaded. Loaded entries of ehcache and of the off-heap tier expire when the saved entries
+ * would have expired: their time to live counts from the time the result was fetched, entries
+ * which are older than it are not loaded.
+ */
+public class ResultCacheSnapshot {
+
+  private static final Logger LOG = LogManager.getLogger(ResultCacheSnapshot.class.getName());
+
+  private static final int VERSION = 1;
+
+  private final Cache cache;
+  private final Path file;
+  private final long maxAgeMillis;
+
+  /**
+   * @param cache the cache DBpediaClient.sendQuery, both tiers of a TieredCache are saved
+   * @param file the snapshot, null to switch snapshots off
+   * @param maxAgeMillis older results are not loaded
+   */
+  public ResultCacheSnapshot(Cache cache, Path file, long maxAgeMillis) {
+    this.cache = cache;
+    this.file = file;
+    this.maxAgeMillis = maxAgeMillis;
+  }
+
+  public boolean isEnabled() {
+    return file != null && cache != null;
+  }
+
+  /**
+   * Writes all entries of the cache to the snapshot file, the old file is replaced when the new
+   * one is complete
+   *
+   * @return number of saved entries
+   */
+  public int save() {
+    if (!isEnabled()) {
+      return 0;
+    }
+    int[] saved = {0};
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+      try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temp))))) {
+        out.writeInt(VERSION);
+        boolean supported = forEachEntry((key, value) -> {
+          try {
+            out.writeObject(key);
+            out.writeObject(value);
+            saved[0]++;
+          } catch (IOException e) {
+            throw new SnapshotException(e);
+          }
+        });
+        out.writeObject(null);
+        if (!supported) {
+          LOG.warn("Cache " + cache.getName() + " of type "
+              + cache.getNativeCache().getClass().getName() + " cannot be saved.");
+        }
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      LOG.info("Saved " + saved[0] + " cached results to " + file + ".");
+    } catch (IOException | SnapshotException e) {
+      LOG.error("Could not save the cache snapshot " + file + ": " + e.getMessage());
+    }
+    return saved[0];
+  }
+
+  /**
+   * Puts the entries of the snapshot file into the cache
+   *
+   * @return number of loaded entries
+   */
+  public int load() {
+    if (!isEnabled() || !Files.exists(file)) {
+      return 0;
+    }
+    int loaded = 0;
+    long now = System.currentTimeMillis();
+    try (ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(
+        new BufferedInputStream(Files.newInputStream(file))))) {
+      if (in.readInt() != VERSION) {
+        LOG.warn("Ignoring the cache snapshot " + file + " of another version.");
+        return 0;
+      }
+      Object key;
+      while ((key = in.readObject()) != null) {
+        ResultSetWrapper result = (ResultSetWrapper) in.readObject();
+        if (result.getFetchedAt() >= now - maxAgeMillis && restore(key, result, now)) {
+          loaded++;
+        }
+      }
+      LOG.info("Loaded " + loaded + " cached results from " + file + ".");
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      LOG.error("Could not load the cache snapshot " + file + " completely: " + e.getMessage());
+    }
+    return loaded;
+  }
+
+  /**
+   * Puts a loaded result with the time to live it had left when it was saved. A put into the
+   * cache would start its time to live again. Entries of other caches than ehcache and the
+   * off-heap tier are put with the full time to live.
+   *
+   * @return false if the entry has already expired
+   */
+  private boolean restore(Object key, ResultSetWrapper result, long now) {
+    Cache heap = cache;
+    if (cache instanceof TieredCache) {
+      TieredCache tiered = (TieredCache) cache;
+      if (tiered.isLarge(result)) {
+        return tiered.getOffHeap().put(key, result, result.getFetchedAt());
+      }
+      heap = tiered.getHeap();
+    }
+    if (heap.getNativeCache() instanceof Ehcache) {
+      Ehcache ehcache = (Ehcache) heap.getNativeCache();
+      CacheConfiguration configuration = ehcache.getCacheConfiguration();
+      if (!configuration.isEternal() && configuration.getTimeToLiveSeconds() > 0) {
+        long remaining = TimeUnit.SECONDS.toMillis(configuration.getTimeToLiveSeconds())
+            - (now - result.getFetchedAt());
+        if (remaining <= 0) {
+          return false;
+        }
+        Element element = new Element(key, result);
+        // rounded up, a time to live of 0 would never expire
+        element.setTimeToLive((int) ((remaining + 999) / 1000));
+        element.setTimeToIdle((int) configuration.getTimeToIdleSeconds());
+        ehcache.put(element);
+        return true;
+      }
+    }
+    cache.put(key, result);
+    return true;
+  }
+
+  /**
+   * @return false if the native cache cannot be iterated
+   */
+  private boolean forEachEntry(BiConsumer<Object, Object> consumer) {
+    if (cache instanceof TieredCache && ((TieredCache) cache).getOffHeap() != null) {
+      ((TieredCache) cache).getOffHeap().forEach(consumer::accept);
+    }
+    Object nativeCache = cache.getNativeCache();
+    if (nativeCache instanceof Ehcache) {
+      Ehcache ehcache = (Ehcache) nativeCache;
+      for (Object key : ehcache.getKeys()) {
+        Element element = ehcache.getQuiet(key);
+        if (element != null && !element.isExpired()) {
+          consumer.accept(key, element.getObjectValue());
+        }
+      }
+      return true;
+    }
+    if (nativeCache instanceof TinyLfuCache) {
+      ((TinyLfuCache) nativeCache).forEach(consumer);
+      return true;
+    }
+    if (nativeCache instanceof Map) {
+      ((Map<?, ?>) nativeCache).forEach(consumer);
+      return true;
+    }
+    return false;
+  }
+
+  private static final class SnapshotException extends RuntimeException {
+
+    private SnapshotException(IOException cause) {
+      super(cause.getMessage(), cause);
+    }
+  }
+}
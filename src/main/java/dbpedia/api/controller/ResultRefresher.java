@@ -0,0 +1,117 @@
+package dbpedia.api.controller;
+
+import dbpedia.api.client.Deadline;
+import dbpedia.api.client.KeyedQuery;
+import dbpedia.api.model.ResultSetWrapper;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Stale-while-revalidate for the result cache of the DBpediaClient. The cache entries expire hard
+ * after the timeToLiveSeconds of ehcache.xml; after the shorter soft TTL a cached result is still
+ * returned at once, but the query is refreshed in the background, at most once per query at a
+ * time.
+ * <p>
+ * The refresh starts early with a random probability (probabilistic early expiration, "XFetch"): a
+ * result counts as expired if {@code now - beta * fetchMillis * ln(random) >= fetchedAt + softTtl}.
+ * Results which took long to fetch are refreshed earlier, and results which were cached together
+ * are not refreshed at the same moment.
+ */
+public class ResultRefresher {
+
+  private static final Logger LOG = LogManager.getLogger(ResultRefresher.class.getName());
+
+  private final DBpediaClient client;
+  private final Executor executor;
+  private final boolean enabled;
+  private final long softTtlMillis;
+  private final double beta;
+  private final long timeoutMillis;
+  private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+  private final AtomicLong startedRefreshes = new AtomicLong();
+  private final AtomicLong failedRefreshes = new AtomicLong();
+
+  /**
+   * @param executor runs the refreshes
+   * @param softTtlMillis age of a result after which it is refreshed
+   * @param beta scales how early a refresh may start, 0 for no early refresh
+   * @param timeoutMillis time budget of a refresh
+   */
+  public ResultRefresher(DBpediaClient client, Executor executor, boolean enabled,
+      long softTtlMillis, double beta, long timeoutMillis) {
+    this.client = client;
+    this.executor = executor;
+    this.enabled = enabled;
+    this.softTtlMillis = softTtlMillis;
+    this.beta = beta;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Gets the result from the client and starts a refresh if it is due
+   */
+  public ResultSetWrapper sendQuery(KeyedQuery query, Deadline deadline) {
+    ResultSetWrapper result = client.sendQuery(query, deadline);
+    if (enabled && !result.isStale() && isExpired(result, System.currentTimeMillis())) {
+      refresh(query);
+    }
+    return result;
+  }
+
+  private boolean isExpired(ResultSetWrapper result, long now) {
+    if (result.getFetchedAt() == 0) {
+      return false;
+    }
+    // 1 - random is in (0, 1], so the logarithm is finite
+    double early = -beta * result.getFetchMillis()
+        * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+    return now + early >= result.getFetchedAt() + softTtlMillis;
+  }
+
+  private void refresh(KeyedQuery query) {
+    String key = query.getKey();
+    if (!refreshing.add(key)) {
+      return;
+    }
+    startedRefreshes.incrementAndGet();
+    try {
+      executor.execute(() -> {
+        try {
+          client.refreshQuery(query, Deadline.after(timeoutMillis));
+        } catch (RuntimeException e) {
+          failedRefreshes.incrementAndGet();
+          LOG.warn("Refreshing a cached result failed: " + e.getMessage());
+        } finally {
+          refreshing.remove(key);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      refreshing.remove(key);
+      failedRefreshes.incrementAndGet();
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return number of refreshes which were started
+   */
+  public long getStartedRefreshes() {
+    return startedRefreshes.get();
+  }
+
+  /**
+   * @return number of refreshes which failed, the old entry stays until it expires
+   */
+  public long getFailedRefreshes() {
+    return failedRefreshes.get();
+  }
+}
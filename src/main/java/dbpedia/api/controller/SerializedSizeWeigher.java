@@ -0,0 +1,45 @@
+package dbpedia.api.controller;
+
+import dbpedia.api.model.FormattedResponse;
+import dbpedia.api.model.ResultSetCodec;
+import dbpedia.api.model.ResultSetWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.function.ToIntFunction;
+
+/**
+ * Weighs cache values by their serialized size in bytes: results by an estimate of their
+ * {@link ResultSetCodec} encoding, which does not encode them on every put, responses by their
+ * body and other values by their Java serialization.
+ */
+public class SerializedSizeWeigher implements ToIntFunction<Object> {
+
+  /**
+   * weight of values which cannot be serialized
+   */
+  private static final int UNKNOWN = 1024;
+
+  @Override
+  public int applyAsInt(Object value) {
+    if (value instanceof ResultSetWrapper) {
+      ResultSetWrapper result = (ResultSetWrapper) value;
+      return ResultSetCodec.estimateSize(result.getResultVars(), result.getRows());
+    }
+    if (value instanceof FormattedResponse) {
+      FormattedResponse response = (FormattedResponse) value;
+      return response.getBody().length + response.getContentType().length();
+    }
+    if (value instanceof Serializable) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+        out.writeObject(value);
+      } catch (IOException e) {
+        return UNKNOWN;
+      }
+      return bytes.size();
+    }
+    return UNKNOWN;
+  }
+}
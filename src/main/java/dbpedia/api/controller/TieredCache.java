@@ -0,0 +1,161 @@
+package dbpedia.api.controller;
+
+import dbpedia.api.model.ResultSetWrapper;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+/**
+ * The result cache of the DBpediaClient in two tiers: results with at most minRows rows stay on
+ * the heap in the cache of the CacheManager, larger results are moved into an {@link
+ * OffHeapStore}. An entry is in only one of the tiers; a lookup asks the heap tier first.
+ */
+public class TieredCache implements Cache {
+
+  private final Cache heap;
+  private final OffHeapStore offHeap;
+  private final int minRows;
+  private final AtomicLong heapHits = new AtomicLong();
+  private final AtomicLong offHeapHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param heap the cache DBpediaClient.sendQuery of the CacheManager
+   * @param offHeap the store of large results, null to keep all results on the heap
+   * @param minRows results with more rows are stored off-heap
+   */
+  public TieredCache(Cache heap, OffHeapStore offHeap, int minRows) {
+    this.heap = heap;
+    this.offHeap = offHeap;
+    this.minRows = minRows;
+  }
+
+  @Override
+  public String getName() {
+    return heap.getName();
+  }
+
+  /**
+   * @return the native cache of the heap tier
+   */
+  @Override
+  public Object getNativeCache() {
+    return heap.getNativeCache();
+  }
+
+  @Override
+  public ValueWrapper get(Object key) {
+    ValueWrapper value = heap.get(key);
+    if (value != null) {
+      heapHits.incrementAndGet();
+      return value;
+    }
+    if (offHeap != null) {
+      ResultSetWrapper result = offHeap.get(key);
+      if (result != null) {
+        offHeapHits.incrementAndGet();
+        return new SimpleValueWrapper(result);
+      }
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T get(Object key, Class<T> type) {
+    ValueWrapper value = get(key);
+    Object object = value != null ? value.get() : null;
+    if (object != null && type != null && !type.isInstance(object)) {
+      throw new IllegalStateException(
+          "Cached value is not of required type [" + type.getName() + "]: " + object);
+    }
+    return (T) object;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T get(Object key, Callable<T> valueLoader) {
+    ValueWrapper value = get(key);
+    if (value != null) {
+      return (T) value.get();
+    }
+    T loaded;
+    try {
+      loaded = valueLoader.call();
+    } catch (Exception e) {
+      throw new ValueRetrievalException(key, valueLoader, e);
+    }
+    put(key, loaded);
+    return loaded;
+  }
+
+  @Override
+  public void put(Object key, Object value) {
+    if (isLarge(value) && offHeap.put(key, (ResultSetWrapper) value)) {
+      heap.evict(key);
+      return;
+    }
+    heap.put(key, value);
+    if (offHeap != null) {
+      offHeap.evict(key);
+    }
+  }
+
+  @Override
+  public ValueWrapper putIfAbsent(Object key, Object value) {
+    ValueWrapper existing = get(key);
+    if (existing == null) {
+      put(key, value);
+    }
+    return existing;
+  }
+
+  @Override
+  public void evict(Object key) {
+    heap.evict(key);
+    if (offHeap != null) {
+      offHeap.evict(key);
+    }
+  }
+
+  @Override
+  public void clear() {
+    heap.clear();
+    if (offHeap != null) {
+      offHeap.clear();
+    }
+  }
+
+  /**
+   * @return true if the value is stored in the off-heap tier
+   */
+  public boolean isLarge(Object value) {
+    return offHeap != null && value instanceof ResultSetWrapper
+        && ((ResultSetWrapper) value).size() > minRows;
+  }
+
+  public Cache getHeap() {
+    return heap;
+  }
+
+  /**
+   * @return the off-heap tier, null if it is switched off
+   */
+  public OffHeapStore getOffHeap() {
+    return offHeap;
+  }
+
+  public long getHeapHits() {
+    return heapHits.get();
+  }
+
+  public long getOffHeapHits() {
+    return offHeapHits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+}
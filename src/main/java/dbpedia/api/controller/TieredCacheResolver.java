@@ -0,0 +1,30 @@
+package dbpedia.api.controller;
+
+import java.util.Collection;
+import java.util.Collections;
+import org.springframework.cache.Cache;
+import org.springframework.cache.interceptor.CacheOperationInvocationContext;
+import org.springframework.cache.interceptor.CacheResolver;
+
+/**
+ * Resolves the cache operations of the DBpediaClient to the {@link TieredCache}. The tiered cache
+ * is not a bean of its own: Spring Boot would configure a cache manager of all Cache beans instead
+ * of the one of ehcache.xml.
+ */
+public class TieredCacheResolver implements CacheResolver {
+
+  private final TieredCache cache;
+
+  public TieredCacheResolver(TieredCache cache) {
+    this.cache = cache;
+  }
+
+  @Override
+  public Collection<? extends Cache> resolveCaches(CacheOperationInvocationContext<?> context) {
+    return Collections.singletonList(cache);
+  }
+
+  public TieredCache getCache() {
+    return cache;
+  }
+}
@@ -0,0 +1,435 @@
+package dbpedia.api.controller;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+/**
+ * In-process cache with W-TinyLFU eviction, limited by the weight (serialized size) of its entries
+ * instead of their number.
+ * <p>
+ * New entries enter a small LRU window (1% of the weight). Entries leaving the window compete
+ * with the least recently used entry of the main area for admission: the one which was requested
+ * less often according to a count-min sketch of recent requests is evicted. So a scan (e.g. a
+ * crawler) cannot flush entries which are requested often. The main area is a segmented LRU,
+ * entries requested again move from its probation segment to the protected one (80%).
+ * <p>
+ * Reads do not lock: the entries are in a ConcurrentHashMap, and a hit only updates the eviction
+ * order if the lock is free. The order is approximate under contention, like in other caches
+ * with lossy read buffers.
+ */
+public class TinyLfuCache implements Cache {
+
+  private static final int WINDOW = 0;
+  private static final int PROBATION = 1;
+  private static final int PROTECTED = 2;
+
+  private final String name;
+  private final long maxWeight;
+  private final long maxWindowWeight;
+  private final long maxProtectedWeight;
+  private final long timeToLiveMillis;
+  private final long timeToIdleMillis;
+  private final ToIntFunction<Object> weigher;
+  private final ConcurrentHashMap<Object, Node> data = new ConcurrentHashMap<>();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final FrequencySketch sketch;
+  /**
+   * LRU queues of the segments, the head is the least recently used entry, guarded by the lock
+   */
+  private final Node[] heads = {new Node(), new Node(), new Node()};
+  private final long[] weights = new long[3];
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong rejections = new AtomicLong();
+
+  /**
+   * @param maxWeight sum of the weights of all entries
+   * @param timeToLiveMillis entries expire this time after they were put, 0 for never
+   * @param timeToIdleMillis entries expire this time after the last hit, 0 for never
+   * @param weigher weight of a value, e.g. its serialized size in bytes
+   */
+  public TinyLfuCache(String name, long maxWeight, long timeToLiveMillis, long timeToIdleMillis,
+      ToIntFunction<Object> weigher) {
+    this.name = name;
+    this.maxWeight = maxWeight;
+    this.maxWindowWeight = Math.max(1, maxWeight / 100);
+    this.maxProtectedWeight = (maxWeight - maxWindowWeight) * 8 / 10;
+    this.timeToLiveMillis = timeToLiveMillis;
+    this.timeToIdleMillis = timeToIdleMillis;
+    this.weigher = weigher;
+    // assumes entries of about 1 KB, the sketch only has to tell often from rarely used keys
+    this.sketch = new FrequencySketch(
+        (int) Math.min(1 << 22, Math.max(1 << 10, maxWeight >> 10)));
+    for (Node head : heads) {
+      head.prev = head;
+      head.next = head;
+    }
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public Object getNativeCache() {
+    return this;
+  }
+
+  @Override
+  public ValueWrapper get(Object key) {
+    Node node = data.get(key);
+    long now = System.currentTimeMillis();
+    if (node != null && node.isExpired(now)) {
+      remove(node);
+      node = null;
+    }
+    if (node == null) {
+      misses.incrementAndGet();
+      if (evictionLock.tryLock()) {
+        try {
+          sketch.increment(key);
+        } finally {
+          evictionLock.unlock();
+        }
+      }
+      return null;
+    }
+    hits.incrementAndGet();
+    node.accessedAt = now;
+    if (evictionLock.tryLock()) {
+      try {
+        onAccess(node);
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+    return new SimpleValueWrapper(node.value);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T get(Object key, Class<T> type) {
+    ValueWrapper value = get(key);
+    Object object = value != null ? value.get() : null;
+    if (object != null && type != null && !type.isInstance(object)) {
+      throw new IllegalStateException(
+          "Cached value is not of required type [" + type.getName() + "]: " + object);
+    }
+    return (T) object;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T get(Object key, Callable<T> valueLoader) {
+    ValueWrapper value = get(key);
+    if (value != null) {
+      return (T) value.get();
+    }
+    T loaded;
+    try {
+      loaded = valueLoader.call();
+    } catch (Exception e) {
+      throw new ValueRetrievalException(key, valueLoader, e);
+    }
+    put(key, loaded);
+    return loaded;
+  }
+
+  /**
+   * Stores the value, a value heavier than the whole cache is not stored
+   */
+  @Override
+  public void put(Object key, Object value) {
+    int weight = Math.max(1, weigher.applyAsInt(value));
+    if (weight > maxWeight) {
+      rejections.incrementAndGet();
+      evict(key);
+      return;
+    }
+    Node node = new Node(key, value, weight, System.currentTimeMillis());
+    Node old = data.put(key, node);
+    evictionLock.lock();
+    try {
+      if (old != null) {
+        retire(old);
+      }
+      if (!node.removed) {
+        sketch.increment(key);
+        link(WINDOW, node);
+        evictEntries();
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public ValueWrapper putIfAbsent(Object key, Object value) {
+    ValueWrapper existing = get(key);
+    if (existing == null) {
+      put(key, value);
+    }
+    return existing;
+  }
+
+  @Override
+  public void evict(Object key) {
+    Node node = data.get(key);
+    if (node != null) {
+      remove(node);
+    }
+  }
+
+  @Override
+  public void clear() {
+    evictionLock.lock();
+    try {
+      for (Node node : data.values()) {
+        retire(node);
+      }
+      data.clear();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /**
+   * Passes every entry which is not expired to the consumer, without counting it as a hit
+   */
+  public void forEach(BiConsumer<Object, Object> consumer) {
+    long now = System.currentTimeMillis();
+    data.forEach((key, node) -> {
+      if (!node.isExpired(now)) {
+        consumer.accept(key, node.value);
+      }
+    });
+  }
+
+  private void remove(Node node) {
+    if (data.remove(node.key, node)) {
+      evictionLock.lock();
+      try {
+        retire(node);
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  private void onAccess(Node node) {
+    sketch.increment(node.key);
+    if (node.removed || node.queue < 0) {
+      return;
+    }
+    if (node.queue == PROBATION) {
+      unlink(node);
+      link(PROTECTED, node);
+      // the least recently used protected entries make room
+      while (weights[PROTECTED] > maxProtectedWeight) {
+        Node demoted = heads[PROTECTED].next;
+        unlink(demoted);
+        link(PROBATION, demoted);
+      }
+    } else {
+      int queue = node.queue;
+      unlink(node);
+      link(queue, node);
+    }
+  }
+
+  /**
+   * Moves the overflow of the window to the main area and evicts until the weight fits, the
+   * entries from the window are admitted only if they are used more often than the victims
+   */
+  private void evictEntries() {
+    while (weights[WINDOW] > maxWindowWeight) {
+      Node candidate = heads[WINDOW].next;
+      unlink(candidate);
+      link(PROBATION, candidate);
+    }
+    while (weights[WINDOW] + weights[PROBATION] + weights[PROTECTED] > maxWeight) {
+      Node victim = heads[PROBATION].next;
+      Node candidate = heads[PROBATION].prev;
+      if (victim == heads[PROBATION]) {
+        // no entries on probation, evict the least recently used protected or window entry
+        victim = heads[PROTECTED].next != heads[PROTECTED]
+            ? heads[PROTECTED].next : heads[WINDOW].next;
+      } else if (candidate != victim
+          && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+        victim = candidate;
+      }
+      retire(victim);
+      data.remove(victim.key, victim);
+      evictions.incrementAndGet();
+    }
+  }
+
+  private void link(int queue, Node node) {
+    Node head = heads[queue];
+    node.prev = head.prev;
+    node.next = head;
+    head.prev.next = node;
+    head.prev = node;
+    node.queue = queue;
+    weights[queue] += node.weight;
+  }
+
+  /**
+   * Removes the node from the cache order, a node which is not linked yet will not be linked
+   */
+  private void retire(Node node) {
+    node.removed = true;
+    unlink(node);
+  }
+
+  private void unlink(Node node) {
+    if (node.queue < 0) {
+      return;
+    }
+    node.prev.next = node.next;
+    node.next.prev = node.prev;
+    node.prev = null;
+    node.next = null;
+    weights[node.queue] -= node.weight;
+    node.queue = -1;
+  }
+
+  public int size() {
+    return data.size();
+  }
+
+  public long getWeight() {
+    evictionLock.lock();
+    try {
+      return weights[WINDOW] + weights[PROBATION] + weights[PROTECTED];
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * @return number of values which were not stored because they are heavier than the cache
+   */
+  public long getRejections() {
+    return rejections.get();
+  }
+
+  private final class Node {
+
+    private final Object key;
+    private final Object value;
+    private final int weight;
+    private final long createdAt;
+    private volatile long accessedAt;
+    private Node prev;
+    private Node next;
+    private int queue = -1;
+    /**
+     * set when the node is evicted or replaced, it is not linked again
+     */
+    private boolean removed;
+
+    private Node() {
+      this(null, null, 0, 0);
+    }
+
+    private Node(Object key, Object value, int weight, long createdAt) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+      this.createdAt = createdAt;
+      this.accessedAt = createdAt;
+    }
+
+    private boolean isExpired(long now) {
+      return (timeToLiveMillis > 0 && now - createdAt >= timeToLiveMillis)
+          || (timeToIdleMillis > 0 && now - accessedAt >= timeToIdleMillis);
+    }
+  }
+
+  /**
+   * Count-min sketch of 4 rows with counters up to 15. After 10 increments per counter of a row
+   * all counters are halved, so old popularity fades.
+   */
+  private static final class FrequencySketch {
+
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final byte[][] rows = new byte[SEEDS.length][];
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    private FrequencySketch(int width) {
+      int size = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+      for (int i = 0; i < rows.length; i++) {
+        rows[i] = new byte[size];
+      }
+      mask = size - 1;
+      sampleSize = 10 * size;
+    }
+
+    private void increment(Object key) {
+      int hash = spread(key.hashCode());
+      boolean added = false;
+      for (int i = 0; i < rows.length; i++) {
+        int index = index(hash, i);
+        if (rows[i][index] < 15) {
+          rows[i][index]++;
+          added = true;
+        }
+      }
+      if (added && ++additions >= sampleSize) {
+        for (byte[] row : rows) {
+          for (int i = 0; i < row.length; i++) {
+            row[i] >>= 1;
+          }
+        }
+        additions /= 2;
+      }
+    }
+
+    private int frequency(Object key) {
+      int hash = spread(key.hashCode());
+      int frequency = 15;
+      for (int i = 0; i < rows.length; i++) {
+        frequency = Math.min(frequency, rows[i][index(hash, i)]);
+      }
+      return frequency;
+    }
+
+    private int index(int hash, int row) {
+      int h = (hash ^ SEEDS[row]) * SEEDS[row];
+      return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int spread(int hash) {
+      int h = hash * 0x9E3779B9;
+      return h ^ (h >>> 16);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package dbpedia.api.controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+/**
+ * CacheManager of {@link TinyLfuCache}s. Caches are created on first use, with the spec of their
+ * name or the default spec.
+ */
+public class TinyLfuCacheManager implements CacheManager {
+
+  private final Map<String, Spec> specs;
+  private final Spec defaultSpec;
+  private final ToIntFunction<Object> weigher;
+  private final Map<String, TinyLfuCache> caches = new ConcurrentHashMap<>();
+
+  /**
+   * @param specs size and expiry of the caches by name
+   * @param defaultSpec spec of the other caches
+   * @param weigher weight of a value, e.g. a {@link SerializedSizeWeigher}
+   */
+  public TinyLfuCacheManager(Map<String, Spec> specs, Spec defaultSpec,
+      ToIntFunction<Object> weigher) {
+    this.specs = specs;
+    this.defaultSpec = defaultSpec;
+    this.weigher = weigher;
+  }
+
+  @Override
+  public Cache getCache(String name) {
+    return caches.computeIfAbsent(name, cacheName -> {
+      Spec spec = specs.getOrDefault(cacheName, defaultSpec);
+      return new TinyLfuCache(cacheName, spec.maxWeight, spec.timeToLiveMillis,
+          spec.timeToIdleMillis, weigher);
+    });
+  }
+
+  @Override
+  public Collection<String> getCacheNames() {
+    return Collections.unmodifiableSet(caches.keySet());
+  }
+
+  /**
+   * @return the caches which were created so far
+   */
+  public Collection<TinyLfuCache> getCaches() {
+    return new ArrayList<>(caches.values());
+  }
+
+  /**
+   * Size and expiry of a cache
+   */
+  public static final class Spec {
+
+    private final long maxWeight;
+    private final long timeToLiveMillis;
+    private final long timeToIdleMillis;
+
+    /**
+     * @param maxWeight sum of the weights (bytes) of all entries
+     * @param timeToLiveMillis 0 for never
+     * @param timeToIdleMillis 0 for never
+     */
+    public Spec(long maxWeight, long timeToLiveMillis, long timeToIdleMillis) {
+      this.maxWeight = maxWeight;
+      this.timeToLiveMillis = timeToLiveMillis;
+      this.timeToIdleMillis = timeToIdleMillis;
+    }
+  }
+}
@@ -2,6 +2,7 @@ package dbpedia.api.factory;
 
 
 import dbpedia.api.model.Filter;
+import dbpedia.api.model.NamespaceTrie;
 import dbpedia.api.model.RequestModel;
 import dbpedia.api.model.RequestModel.Style;
 import dbpedia.api.model.ResourceModel;
@@ -14,7 +15,6 @@ import org.apache.jena.ontology.OntModel;
 import org.apache.jena.ontology.OntResource;
 import org.apache.jena.query.ParameterizedSparqlString;
 import org.apache.jena.query.Query;
-import org.apache.jena.shared.impl.PrefixMappingImpl;
 import org.springframework.core.GenericTypeResolver;
 import org.springframework.stereotype.Component;
 
@@ -24,15 +24,15 @@ public abstract class DBpediaQueryFactory<T extends RequestModel> {
   private final Class<T> genericType;
   protected OntModel ontology;
   protected ParameterizedSparqlString prefix;
-  protected final PrefixMappingImpl prefixMap;
+  protected final NamespaceTrie namespaces;
 
-  public DBpediaQueryFactory(OntModel ontology, PrefixMappingImpl prefixMapping) {
+  public DBpediaQueryFactory(OntModel ontology, NamespaceTrie namespaces) {
     this.ontology = ontology;
     //this is needed because java cannot determine the class of a generic type at runtime
     //only spring can do this
     this.genericType = (Class<T>) GenericTypeResolver
         .resolveTypeArgument(getClass(), DBpediaQueryFactory.class);
-    this.prefixMap = prefixMapping;
+    this.namespaces = namespaces;
   }
 
   /**
@@ -91,18 +91,18 @@ public abstract class DBpediaQueryFactory<T extends RequestModel> {
    * @param sparqlString The main String which contains the prefix definition
    */
   protected final void setDefaultPrefixes(ParameterizedSparqlString sparqlString) {
-    sparqlString.setNsPrefix("rdfs", prefixMap.getNsPrefixURI("rdfs"));
-    sparqlString.setNsPrefix("rdf", prefixMap.getNsPrefixURI("rdf"));
-    sparqlString.setNsPrefix("dbo", prefixMap.getNsPrefixURI("dbo"));
-    sparqlString.setNsPrefix("dbr", prefixMap.getNsPrefixURI("dbr"));
+    sparqlString.setNsPrefix("rdfs", namespaces.getNamespace("rdfs"));
+    sparqlString.setNsPrefix("rdf", namespaces.getNamespace("rdf"));
+    sparqlString.setNsPrefix("dbo", namespaces.getNamespace("dbo"));
+    sparqlString.setNsPrefix("dbr", namespaces.getNamespace("dbr"));
   }
 
-  public PrefixMappingImpl getPrefixMap() {
-    return this.prefixMap;
+  public NamespaceTrie getNamespaces() {
+    return this.namespaces;
   }
 
   protected String getUnprefixedString (ResourceModel model){
-    return "<"+prefixMap.getNsPrefixURI(model.getPrefix())+model.getIdentifier()+">";
+    return "<"+namespaces.getNamespace(model.getPrefix())+model.getIdentifier()+">";
   }
 
 
@@ -2,6 +2,7 @@ package dbpedia.api.factory;
 
 import dbpedia.api.model.EntityRequestModel;
 import dbpedia.api.model.Filter;
+import dbpedia.api.model.NamespaceTrie;
 import dbpedia.api.model.RequestModel.Style;
 import java.util.ArrayList;
 import java.util.List;
@@ -13,14 +14,13 @@ import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryFactory;
 import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.ResourceFactory;
-import org.apache.jena.shared.impl.PrefixMappingImpl;
 import org.springframework.stereotype.Component;
 
 @Component
 public class EntityRequestQueryFactory extends DBpediaQueryFactory<EntityRequestModel> {
 
-  public EntityRequestQueryFactory(OntModel ontology, PrefixMappingImpl prefixMapping) {
-    super(ontology, prefixMapping);
+  public EntityRequestQueryFactory(OntModel ontology, NamespaceTrie namespaces) {
+    super(ontology, namespaces);
   }
 
 
@@ -85,7 +85,7 @@ public class EntityRequestQueryFactory extends DBpediaQueryFactory<EntityRequest
     for (Filter filter : filterList) {
       if (filter.getFilterProp() != null) {
         sparqlString.setNsPrefix(filter.getFilterProp().getPrefix(),
-            prefixMap.getNsPrefixURI(filter.getFilterProp().getPrefix()));
+            namespaces.getNamespace(filter.getFilterProp().getPrefix()));
       }
     }
 
@@ -136,8 +136,8 @@ public class EntityRequestQueryFactory extends DBpediaQueryFactory<EntityRequest
           break;
       }
     }
-    sparqlString.setNsPrefix("dbr", prefixMap.getNsPrefixURI("dbr"));
-    sparqlString.setNsPrefix("dbo", prefixMap.getNsPrefixURI("dbo"));
+    sparqlString.setNsPrefix("dbr", namespaces.getNamespace("dbr"));
+    sparqlString.setNsPrefix("dbo", namespaces.getNamespace("dbo"));
 
     sparqlString.append(queryHead(returnvalues));
     sparqlString.append(" \n");
@@ -1,5 +1,6 @@
 package dbpedia.api.factory;
 
+import dbpedia.api.model.NamespaceTrie;
 import dbpedia.api.model.RequestModel.Style;
 import dbpedia.api.model.ResourceModel;
 import dbpedia.api.model.ValueRequestModel;
@@ -9,14 +10,13 @@ import org.apache.jena.ontology.OntModel;
 import org.apache.jena.query.ParameterizedSparqlString;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryFactory;
-import org.apache.jena.shared.impl.PrefixMappingImpl;
 import org.springframework.stereotype.Component;
 
 @Component
 public class ValueRequestQueryFactory extends DBpediaQueryFactory<ValueRequestModel> {
 
-  public ValueRequestQueryFactory(OntModel ontology, PrefixMappingImpl prefixMapping) {
-    super(ontology, prefixMapping);
+  public ValueRequestQueryFactory(OntModel ontology, NamespaceTrie namespaces) {
+    super(ontology, namespaces);
   }
 
 
@@ -38,11 +38,11 @@ public class ValueRequestQueryFactory extends DBpediaQueryFactory<ValueRequestMo
     List<String> returnvalues = new ArrayList<>();
 
     for (ResourceModel prop : model.getProperties()) {
-      String uri = prefixMap.getNsPrefixURI(prop.getPrefix());
+      String uri = namespaces.getNamespace(prop.getPrefix());
       if (uri == null) {
         throw new IllegalArgumentException("Prefix " + prop.getPrefix() + " not found!");
       } else {
-        sparqlString.setNsPrefix(prop.getPrefix(), prefixMap.getNsPrefixURI(prop.getPrefix()));
+        sparqlString.setNsPrefix(prop.getPrefix(), namespaces.getNamespace(prop.getPrefix()));
       }
     }
     valuesString.append("VALUES ?entities {");
@@ -62,11 +62,11 @@ public class ValueRequestQueryFactory extends DBpediaQueryFactory<ValueRequestMo
           returnvalues.add(propname + "Label");
         }
         tripleString.append("}");
-        String uri = prefixMap.getNsPrefixURI(prop.getPrefix());
+        String uri = namespaces.getNamespace(prop.getPrefix());
         if (uri == null) {
           throw new IllegalArgumentException("Prefix " + prop.getPrefix() + " not found!");
         } else {
-          sparqlString.setNsPrefix(prop.getPrefix(), prefixMap.getNsPrefixURI(prop.getPrefix()));
+          sparqlString.setNsPrefix(prop.getPrefix(), namespaces.getNamespace(prop.getPrefix()));
         }
       }
     } else {
@@ -79,7 +79,7 @@ public class ValueRequestQueryFactory extends DBpediaQueryFactory<ValueRequestMo
 
     for (String entity : model.getEntities()) {
       valuesString.append(" <http://dbpedia.org/resource/" + entity+">");
-      sparqlString.setNsPrefix("dbr", prefixMap.getNsPrefixURI("dbr"));
+      sparqlString.setNsPrefix("dbr", namespaces.getNamespace("dbr"));
       //model.
     }
     valuesString.append("}");
@@ -0,0 +1,58 @@
+package dbpedia.api.model;
+
+import java.io.Serializable;
+
+/**
+ * Body of a successful response after format and style were applied, as it is sent to the client
+ */
+public final class FormattedResponse implements Serializable {
+
+  private static final long serialVersionUID = 2L;
+
+  private final byte[] body;
+  private final String contentType;
+  /**
+   * length of the formatted result before the style was applied, for the QueryLogger
+   */
+  private final int answerLength;
+  /**
+   * ETag of the body, null if ETags are switched off
+   */
+  private final String etag;
+  /**
+   * when the result of the body was fetched from the endpoint, 0 if unknown
+   */
+  private final long fetchedAt;
+
+  public FormattedResponse(byte[] body, String contentType, int answerLength, String etag,
+      long fetchedAt) {
+    this.body = body;
+    this.contentType = contentType;
+    this.answerLength = answerLength;
+    this.etag = etag;
+    this.fetchedAt = fetchedAt;
+  }
+
+  /**
+   * @return the body, must not be modified
+   */
+  public byte[] getBody() {
+    return body;
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  public int getAnswerLength() {
+    return answerLength;
+  }
+
+  public String getEtag() {
+    return etag;
+  }
+
+  public long getFetchedAt() {
+    return fetchedAt;
+  }
+}
@@ -0,0 +1,210 @@
+package dbpedia.api.model;
+
+import dbpedia.api.model.RequestModel.Style;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.jena.shared.PrefixMapping;
+
+/**
+ * Immutable index of the namespaces of the prefix mapping, shared by the query factories and the
+ * formatters. URIs are shortened with the longest namespace they start with, found in one pass over
+ * the URI through a character trie without allocating.
+ * <p>
+ * Several prefixes of prefixes.json may stand for the same namespace (e.g. dbr, dbpedia and res).
+ * URIs are shortened with the first of the preferred prefixes, otherwise with the shortest one
+ * (alphabetically first on ties), so the output does not depend on the order of a hash map.
+ */
+public final class NamespaceTrie {
+
+  /**
+   * prefixes which are used for their namespace if there are several, unless configured otherwise
+   */
+  public static final List<String> DEFAULT_PREFERRED_PREFIXES = Collections
+      .unmodifiableList(Arrays.asList("dbr", "dbo", "dbp", "dbc", "xsd", "rdf", "rdfs", "owl"));
+
+  private static final String DBR = "http://dbpedia.org/resource/";
+  private static final String DBO = "http://dbpedia.org/ontology/";
+
+  private final Map<String, String> namespaceByPrefix;
+  /**
+   * per node the sorted characters of its children and the children with these characters
+   */
+  private final char[][] labels;
+  private final int[][] children;
+  /**
+   * per node the index of the namespace which ends at the node, -1 if none
+   */
+  private final int[] terminals;
+  private final int[] namespaceLengths;
+  private final String[] prefixedReplacements;
+  private final String[] shortReplacements;
+
+  /**
+   * @param namespaceByPrefix the namespaces by their prefixes
+   * @param preferredPrefixes used for their namespace if several prefixes stand for it
+   */
+  public NamespaceTrie(Map<String, String> namespaceByPrefix, List<String> preferredPrefixes) {
+    this.namespaceByPrefix = Collections.unmodifiableMap(new HashMap<>(namespaceByPrefix));
+
+    // one prefix per namespace
+    Map<String, String> prefixByNamespace = new TreeMap<>();
+    for (Map.Entry<String, String> entry : namespaceByPrefix.entrySet()) {
+      String namespace = entry.getValue();
+      if (namespace == null || namespace.isEmpty()) {
+        continue;
+      }
+      String current = prefixByNamespace.get(namespace);
+      if (current == null || isBetter(entry.getKey(), current, preferredPrefixes)) {
+        prefixByNamespace.put(namespace, entry.getKey());
+      }
+    }
+
+    BuildNode root = new BuildNode();
+    List<BuildNode> nodes = new ArrayList<>();
+    nodes.add(root);
+    int count = prefixByNamespace.size();
+    namespaceLengths = new int[count];
+    prefixedReplacements = new String[count];
+    shortReplacements = new String[count];
+    int index = 0;
+    for (Map.Entry<String, String> entry : prefixByNamespace.entrySet()) {
+      String namespace = entry.getKey();
+      BuildNode node = root;
+      for (int i = 0; i < namespace.length(); i++) {
+        BuildNode child = node.children.get(namespace.charAt(i));
+        if (child == null) {
+          child = new BuildNode();
+          child.id = nodes.size();
+          nodes.add(child);
+          node.children.put(namespace.charAt(i), child);
+        }
+        node = child;
+      }
+      node.terminal = index;
+      namespaceLengths[index] = namespace.length();
+      prefixedReplacements[index] = entry.getValue() + ":";
+      // the SHORT style leaves out the prefixes of DBpedia resources and the ontology
+      shortReplacements[index] = namespace.equals(DBR) || namespace.equals(DBO)
+          ? "" : prefixedReplacements[index];
+      index++;
+    }
+
+    labels = new char[nodes.size()][];
+    children = new int[nodes.size()][];
+    terminals = new int[nodes.size()];
+    for (BuildNode node : nodes) {
+      labels[node.id] = new char[node.children.size()];
+      children[node.id] = new int[node.children.size()];
+      int i = 0;
+      for (Map.Entry<Character, BuildNode> child : node.children.entrySet()) {
+        labels[node.id][i] = child.getKey();
+        children[node.id][i] = child.getValue().id;
+        i++;
+      }
+      terminals[node.id] = node.terminal;
+    }
+  }
+
+  /**
+   * Creates the trie of the prefix mapping with the default preferred prefixes
+   */
+  public static NamespaceTrie of(PrefixMapping prefixMapping) {
+    return new NamespaceTrie(prefixMapping.getNsPrefixMap(), DEFAULT_PREFERRED_PREFIXES);
+  }
+
+  private static boolean isBetter(String prefix, String current, List<String> preferred) {
+    int rank = preferred.indexOf(prefix);
+    int currentRank = preferred.indexOf(current);
+    if (rank >= 0 || currentRank >= 0) {
+      return rank >= 0 && (currentRank < 0 || rank < currentRank);
+    }
+    if (prefix.length() != current.length()) {
+      return prefix.length() < current.length();
+    }
+    return prefix.compareTo(current) < 0;
+  }
+
+  /**
+   * @return the namespace of the prefix, null if it is unknown
+   */
+  public String getNamespace(String prefix) {
+    return namespaceByPrefix.get(prefix);
+  }
+
+  /**
+   * @return all namespaces by their prefixes
+   */
+  public Map<String, String> getNamespaces() {
+    return namespaceByPrefix;
+  }
+
+  /**
+   * @return index of the longest namespace the URI starts with, -1 if there is none
+   */
+  public int find(CharSequence uri) {
+    int node = 0;
+    int match = -1;
+    for (int i = 0; i < uri.length(); i++) {
+      int child = Arrays.binarySearch(labels[node], uri.charAt(i));
+      if (child < 0) {
+        break;
+      }
+      node = children[node][child];
+      if (terminals[node] >= 0) {
+        match = terminals[node];
+      }
+    }
+    return match;
+  }
+
+  /**
+   * @param namespace index returned by find()
+   * @return number of characters of the namespace
+   */
+  public int getNamespaceLength(int namespace) {
+    return namespaceLengths[namespace];
+  }
+
+  /**
+   * @param namespace index returned by find()
+   * @return what replaces the namespace in the style: "prefix:", or nothing for DBpedia resources
+   *     and ontology terms in the SHORT style
+   */
+  public String getReplacement(int namespace, Style style) {
+    return style == Style.PREFIXED ? prefixedReplacements[namespace]
+        : shortReplacements[namespace];
+  }
+
+  /**
+   * Replaces the longest namespace the URI starts with according to the style (PREFIXED or
+   * SHORT; NESTED shortens like SHORT)
+   *
+   * @return the shortened URI, the URI itself if it is in none of the namespaces
+   */
+  public String shorten(String uri, Style style) {
+    int namespace = find(uri);
+    if (namespace < 0) {
+      return uri;
+    }
+    return getReplacement(namespace, style) + uri.substring(namespaceLengths[namespace]);
+  }
+
+  /**
+   * @return number of distinct namespaces
+   */
+  public int size() {
+    return namespaceLengths.length;
+  }
+
+  private static final class BuildNode {
+
+    private final TreeMap<Character, BuildNode> children = new TreeMap<>();
+    private int id;
+    private int terminal = -1;
+  }
+}
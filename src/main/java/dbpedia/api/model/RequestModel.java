@@ -21,6 +21,10 @@ public abstract class RequestModel {
   private String key;
   private Window window; //contains offset and window length
   private boolean allowIncompatibleVersion;
+  /**
+   * If-None-Match header of the request, not part of the request itself
+   */
+  private String ifNoneMatch;
 
   protected RequestModel() {
   }
@@ -59,6 +63,13 @@ public abstract class RequestModel {
     return allowIncompatibleVersion;
   }
 
+  /**
+   * @return the ETags the client already has, null if it sent no If-None-Match header
+   */
+  public String getIfNoneMatch() {
+    return ifNoneMatch;
+  }
+
   public enum ReturnFormat {
     JSON, JSONLD, TSV, RDF, TURTLE, NTRIPLES, RDFXML, RDFJSON
   }
@@ -110,6 +121,7 @@ public abstract class RequestModel {
       setWindow(model.getWindow());
       setKey(model.getKey());
       setAllowIncompatibleVersion(model.isAllowIncompatibleVersion());
+      setIfNoneMatch(model.getIfNoneMatch());
       return getSubclassInstance();
     }
 
@@ -138,6 +150,11 @@ public abstract class RequestModel {
       return getSubclassInstance();
     }
 
+    public SubClass setIfNoneMatch(String ifNoneMatch) {
+      ((RequestModel) instance).ifNoneMatch = ifNoneMatch;
+      return getSubclassInstance();
+    }
+
     public SubClass setVersion(String version) {
       ((RequestModel) instance).version = version;
       return getSubclassInstance();
@@ -0,0 +1,340 @@
+package dbpedia.api.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidObjectException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+
+/**
+ * Compact binary encoding of results for the disk tier of the cache. Every term is written once
+ * into a dictionary of the entry, the rows only contain indexes into it. IRIs are split into a
+ * namespace, which is shared by all terms, and a local name. Numbers are written as varints.
+ * <pre>
+ * version
+ * vars:       count, string*
+ * namespaces: count, string*
+ * terms:      count, (kind, ...)*
+ * rows:       count, (term index + 1 per var, 0 if unbound)*
+ * </pre>
+ * Strings are written as byte length and UTF-8 bytes.
+ */
+public final class ResultSetCodec {
+
+  /**
+   * Entries with another version are rejected
+   */
+  public static final int VERSION = 1;
+
+  private static final int IRI = 0;
+  private static final int BLANK = 1;
+  private static final int STRING = 2;
+  private static final int LANG_STRING = 3;
+  private static final int TYPED = 4;
+
+  /**
+   * Rows measured by estimateSize
+   */
+  private static final int SAMPLED_ROWS = 32;
+
+  private static final AtomicLong encodedResults = new AtomicLong();
+
+  private ResultSetCodec() {
+  }
+
+  public static byte[] encode(List<String> vars, List<Binding> rows) {
+    encodedResults.incrementAndGet();
+    Output out = new Output();
+    out.write(VERSION);
+    out.writeVarint(vars.size());
+    List<Var> variables = new ArrayList<>(vars.size());
+    for (String var : vars) {
+      out.writeString(var);
+      variables.add(Var.alloc(var));
+    }
+
+    Dictionary<String> namespaces = new Dictionary<>();
+    Dictionary<Node> terms = new Dictionary<>();
+    int[] indexes = new int[rows.size() * variables.size()];
+    int i = 0;
+    for (Binding row : rows) {
+      for (Var var : variables) {
+        Node node = row.get(var);
+        indexes[i++] = node == null ? 0 : terms.indexOf(node) + 1;
+        if (node != null && node.isURI()) {
+          namespaces.indexOf(namespace(node.getURI()));
+        } else if (node != null && node.isLiteral() && isTyped(node)) {
+          namespaces.indexOf(namespace(node.getLiteralDatatypeURI()));
+        }
+      }
+    }
+
+    out.writeVarint(namespaces.values.size());
+    for (String namespace : namespaces.values) {
+      out.writeString(namespace);
+    }
+    out.writeVarint(terms.values.size());
+    for (Node node : terms.values) {
+      writeTerm(out, node, namespaces);
+    }
+    out.writeVarint(rows.size());
+    for (int index : indexes) {
+      out.writeVarint(index);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Estimates the length of the encoding without building it: the terms of up to 32 rows spread
+   * over the result are measured and scaled to all rows. Terms which repeat are counted in every
+   * row, so such results are overestimated.
+   */
+  public static int estimateSize(List<String> vars, List<Binding> rows) {
+    long size = 8;
+    List<Var> variables = new ArrayList<>(vars.size());
+    for (String var : vars) {
+      size += var.length() + 1;
+      variables.add(Var.alloc(var));
+    }
+    if (rows.isEmpty()) {
+      return (int) size;
+    }
+    int step = Math.max(1, rows.size() / SAMPLED_ROWS);
+    long sampledSize = 0;
+    int sampled = 0;
+    for (int i = 0; i < rows.size(); i += step) {
+      Binding row = rows.get(i);
+      for (Var var : variables) {
+        Node node = row.get(var);
+        sampledSize += 1 + (node == null ? 0 : estimateTermSize(node));
+      }
+      sampled++;
+    }
+    size += sampledSize * rows.size() / sampled;
+    return (int) Math.min(size, Integer.MAX_VALUE);
+  }
+
+  private static int estimateTermSize(Node node) {
+    if (node.isURI()) {
+      return 3 + localNameLength(node.getURI());
+    }
+    if (node.isBlank()) {
+      return 2 + node.getBlankNodeLabel().length();
+    }
+    String lang = node.getLiteralLanguage();
+    if (!lang.isEmpty()) {
+      return 3 + node.getLiteralLexicalForm().length() + lang.length();
+    }
+    if (isTyped(node)) {
+      return 4 + node.getLiteralLexicalForm().length()
+          + localNameLength(node.getLiteralDatatypeURI());
+    }
+    return 2 + node.getLiteralLexicalForm().length();
+  }
+
+  private static int localNameLength(String iri) {
+    return iri.length() - 1 - Math.max(iri.lastIndexOf('/'), iri.lastIndexOf('#'));
+  }
+
+  /**
+   * @return number of results which were encoded since the start
+   */
+  public static long getEncodedResults() {
+    return encodedResults.get();
+  }
+
+  /**
+   * @throws InvalidObjectException if the data has another version or is corrupt
+   */
+  public static ResultSetWrapper decode(byte[] data) throws InvalidObjectException {
+    Input in = new Input(data);
+    try {
+      int version = in.read();
+      if (version != VERSION) {
+        throw new InvalidObjectException("Unsupported result encoding version " + version);
+      }
+      int varCount = in.readVarint();
+      List<String> vars = new ArrayList<>(varCount);
+      Var[] variables = new Var[varCount];
+      for (int i = 0; i < varCount; i++) {
+        vars.add(in.readString());
+        variables[i] = Var.alloc(vars.get(i));
+      }
+      String[] namespaces = new String[in.readVarint()];
+      for (int i = 0; i < namespaces.length; i++) {
+        namespaces[i] = in.readString();
+      }
+      Node[] terms = new Node[in.readVarint()];
+      for (int i = 0; i < terms.length; i++) {
+        terms[i] = readTerm(in, namespaces);
+      }
+      int rowCount = in.readVarint();
+      List<Binding> rows = new ArrayList<>(rowCount);
+      for (int r = 0; r < rowCount; r++) {
+        BindingMap row = BindingFactory.create();
+        for (Var var : variables) {
+          int index = in.readVarint();
+          if (index > 0) {
+            row.add(var, terms[index - 1]);
+          }
+        }
+        rows.add(row);
+      }
+      return new ResultSetWrapper(vars, rows);
+    } catch (IndexOutOfBoundsException e) {
+      throw new InvalidObjectException("Corrupt result encoding");
+    }
+  }
+
+  private static void writeTerm(Output out, Node node, Dictionary<String> namespaces) {
+    if (node.isURI()) {
+      out.write(IRI);
+      writeIri(out, node.getURI(), namespaces);
+    } else if (node.isBlank()) {
+      out.write(BLANK);
+      out.writeString(node.getBlankNodeLabel());
+    } else if (!node.getLiteralLanguage().isEmpty()) {
+      out.write(LANG_STRING);
+      out.writeString(node.getLiteralLexicalForm());
+      out.writeString(node.getLiteralLanguage());
+    } else if (isTyped(node)) {
+      out.write(TYPED);
+      out.writeString(node.getLiteralLexicalForm());
+      writeIri(out, node.getLiteralDatatypeURI(), namespaces);
+    } else {
+      out.write(STRING);
+      out.writeString(node.getLiteralLexicalForm());
+    }
+  }
+
+  private static Node readTerm(Input in, String[] namespaces) throws InvalidObjectException {
+    int kind = in.read();
+    switch (kind) {
+      case IRI:
+        return NodeFactory.createURI(readIri(in, namespaces));
+      case BLANK:
+        return NodeFactory.createBlankNode(in.readString());
+      case LANG_STRING:
+        return NodeFactory.createLiteral(in.readString(), in.readString());
+      case TYPED:
+        String lexicalForm = in.readString();
+        return NodeFactory.createLiteral(lexicalForm,
+            TypeMapper.getInstance().getSafeTypeByName(readIri(in, namespaces)));
+      case STRING:
+        return NodeFactory.createLiteral(in.readString());
+      default:
+        throw new InvalidObjectException("Unknown term kind " + kind);
+    }
+  }
+
+  private static void writeIri(Output out, String iri, Dictionary<String> namespaces) {
+    String namespace = namespace(iri);
+    out.writeVarint(namespaces.indexOf(namespace));
+    out.writeString(iri.substring(namespace.length()));
+  }
+
+  private static String readIri(Input in, String[] namespaces) {
+    String namespace = namespaces[in.readVarint()];
+    return namespace + in.readString();
+  }
+
+  private static boolean isTyped(Node literal) {
+    return literal.getLiteralLanguage().isEmpty()
+        && !XSDDatatype.XSDstring.getURI().equals(literal.getLiteralDatatypeURI());
+  }
+
+  /**
+   * @return the IRI up to the last '/' or '#'
+   */
+  private static String namespace(String iri) {
+    int end = Math.max(iri.lastIndexOf('/'), iri.lastIndexOf('#')) + 1;
+    return iri.substring(0, end);
+  }
+
+  /**
+   * Values in the order they were first seen
+   */
+  private static final class Dictionary<T> {
+
+    private final Map<T, Integer> indexes = new HashMap<>();
+    private final List<T> values = new ArrayList<>();
+
+    int indexOf(T value) {
+      Integer index = indexes.get(value);
+      if (index == null) {
+        index = values.size();
+        indexes.put(value, index);
+        values.add(value);
+      }
+      return index;
+    }
+  }
+
+  private static final class Output extends ByteArrayOutputStream {
+
+    Output() {
+      super(1024);
+    }
+
+    void writeVarint(int value) {
+      while ((value & ~0x7F) != 0) {
+        write((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      write(value);
+    }
+
+    void writeString(String value) {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarint(bytes.length);
+      write(bytes, 0, bytes.length);
+    }
+  }
+
+  private static final class Input {
+
+    private final byte[] data;
+    private int position;
+
+    Input(byte[] data) {
+      this.data = data;
+    }
+
+    int read() {
+      return data[position++] & 0xFF;
+    }
+
+    int readVarint() {
+      int value = 0;
+      int shift = 0;
+      int b;
+      do {
+        b = read();
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+
+    String readString() {
+      int length = readVarint();
+      if (length > data.length - position) {
+        throw new IndexOutOfBoundsException();
+      }
+      String value = new String(data, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return value;
+    }
+  }
+}
@@ -1,39 +1,208 @@
 package dbpedia.api.model;
 
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.apache.jena.query.ResultSet;
-import org.apache.jena.query.ResultSetFactory;
-import org.apache.jena.query.ResultSetFormatter;
+import org.apache.jena.sparql.engine.ResultSetStream;
+import org.apache.jena.sparql.engine.binding.Binding;
 
 /**
- * makes ResultSet serializable (needed for caching)
+ * makes ResultSet serializable (needed for caching). The rows are read once and kept as an
+ * immutable list, so the result can be shared (cache, concurrent requests) and every reader gets
+ * its own ResultSet over the same rows without copying them.
+ * <p>
+ * The result is read completely before the response is written, also on a cache miss: the ETag,
+ * the NegativeCache and the callers sharing an execution need the whole result. Rows are not
+ * streamed from the endpoint to the client while they arrive.
  */
 public final class ResultSetWrapper implements Serializable {
 
-  private ResultSet mem;
+  private static final long serialVersionUID = 1L;
 
-  public ResultSetWrapper(ResultSet mem) {
-    this.mem = mem;
+  private List<String> vars;
+  private List<Binding> rows;
+  /**
+   * true if the result was taken from an expired cache entry, not serialized
+   */
+  private transient boolean stale;
+  /**
+   * when the result was received from the endpoint (epoch millis), 0 if unknown
+   */
+  private long fetchedAt;
+  /**
+   * how long it took to get the result from the endpoint
+   */
+  private long fetchMillis;
+  /**
+   * hash of the encoded rows, computed on first use and shared by all wrappers of the rows
+   */
+  private transient volatile String contentHash;
+
+  /**
+   * @param resultSet is read completely, it may be a streaming ResultSet of a parser
+   */
+  public ResultSetWrapper(ResultSet resultSet) {
+    read(resultSet);
+  }
+
+  public ResultSetWrapper(List<String> vars, List<Binding> rows) {
+    this.vars = Collections.unmodifiableList(new ArrayList<>(vars));
+    this.rows = Collections.unmodifiableList(new ArrayList<>(rows));
   }
 
+  /**
+   * @return a new ResultSet over the rows, it can be consumed independent of other readers
+   */
   public ResultSet getResultSet() {
-    return mem;
+    return new ResultSetStream(vars, null, rows.iterator());
+  }
+
+  public List<String> getResultVars() {
+    return vars;
+  }
+
+  public List<Binding> getRows() {
+    return rows;
+  }
+
+  /**
+   * @return number of rows
+   */
+  public int size() {
+    return rows.size();
+  }
+
+  public boolean isStale() {
+    return stale;
+  }
+
+  public long getFetchedAt() {
+    return fetchedAt;
+  }
+
+  public long getFetchMillis() {
+    return fetchMillis;
+  }
+
+  /**
+   * @return hex SHA-256 of the {@link ResultSetCodec} encoding (first 128 bits), equal rows in
+   *     the same order have the same hash. Unless the hash was passed on with the rows (see
+   *     withContentHash), the rows are encoded on the first call.
+   */
+  public String getContentHash() {
+    String hash = contentHash;
+    if (hash == null) {
+      hash = contentHash(ResultSetCodec.encode(vars, rows));
+      contentHash = hash;
+    }
+    return hash;
+  }
+
+  /**
+   * @return hex SHA-256 of the data (first 128 bits), like the content hash of encoded rows
+   */
+  public static String contentHash(byte[] data) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+      StringBuilder hex = new StringBuilder(32);
+      for (int i = 0; i < 16; i++) {
+        hex.append(Character.forDigit((digest[i] >> 4) & 0xf, 16))
+            .append(Character.forDigit(digest[i] & 0xf, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @param contentHash hash that identifies the rows, e.g. the one stored with a cache entry or
+   *     one derived from the hashes of the results the rows were taken from
+   * @return a wrapper of the same ResultSet with the hash, so it does not have to encode its rows
+   */
+  public ResultSetWrapper withContentHash(String contentHash) {
+    ResultSetWrapper wrapper = share();
+    wrapper.contentHash = contentHash;
+    return wrapper;
+  }
+
+  /**
+   * @return a wrapper of the same ResultSet which is marked as stale
+   */
+  public ResultSetWrapper asStale() {
+    ResultSetWrapper wrapper = share();
+    wrapper.stale = true;
+    return wrapper;
+  }
+
+  /**
+   * @param fetchedAt when the result was received (epoch millis)
+   * @param fetchMillis how long it took to get it
+   * @return a wrapper of the same ResultSet with the time it was fetched
+   */
+  public ResultSetWrapper fetched(long fetchedAt, long fetchMillis) {
+    ResultSetWrapper wrapper = share();
+    wrapper.fetchedAt = fetchedAt;
+    wrapper.fetchMillis = fetchMillis;
+    return wrapper;
+  }
+
+  private ResultSetWrapper share() {
+    ResultSetWrapper wrapper = new ResultSetWrapper();
+    wrapper.vars = vars;
+    wrapper.rows = rows;
+    wrapper.stale = stale;
+    wrapper.fetchedAt = fetchedAt;
+    wrapper.fetchMillis = fetchMillis;
+    wrapper.contentHash = contentHash;
+    return wrapper;
   }
 
   public ResultSetWrapper() {//needed for Serialization
   }
 
+  /**
+   * writes the rows in the binary encoding of {@link ResultSetCodec}
+   */
   private void writeObject(ObjectOutputStream objectOutputStream)
       throws IOException {
-    ResultSetFormatter.outputAsJSON(objectOutputStream, ResultSetFactory.copyResults(mem));
+    byte[] data = ResultSetCodec.encode(vars, rows);
+    objectOutputStream.writeInt(data.length);
+    objectOutputStream.write(data);
+    objectOutputStream.writeLong(fetchedAt);
+    objectOutputStream.writeLong(fetchMillis);
   }
 
+  /**
+   * @throws InvalidObjectException for entries of another encoding version, the cache drops them
+   */
   private void readObject(ObjectInputStream objectInputStream)
       throws IOException, ClassNotFoundException {
-    this.mem = ResultSetFactory.fromJSON(objectInputStream);
-    objectInputStream.close();
+    byte[] data = new byte[objectInputStream.readInt()];
+    objectInputStream.readFully(data);
+    ResultSetWrapper read = ResultSetCodec.decode(data);
+    this.vars = read.vars;
+    this.rows = read.rows;
+    this.fetchedAt = objectInputStream.readLong();
+    this.fetchMillis = objectInputStream.readLong();
+    // the encoded rows are at hand, so they need not be encoded again for the ETag
+    this.contentHash = contentHash(data);
+  }
+
+  private void read(ResultSet resultSet) {
+    List<Binding> read = new ArrayList<>();
+    while (resultSet.hasNext()) {
+      read.add(resultSet.nextBinding());
+    }
+    this.vars = Collections.unmodifiableList(new ArrayList<>(resultSet.getResultVars()));
+    this.rows = Collections.unmodifiableList(read);
   }
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import dbpedia.api.client.Deadline;
+import dbpedia.api.client.KeyedQuery;
+import dbpedia.api.controller.AlignedWindowFetcher;
+import dbpedia.api.model.ResultSetCodec;
+import dbpedia.api.model.ResultSetWrapper;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.vocabulary.RDF;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AlignedWindowFetcherTest {
+
+  private Model model;
+  private List<Query> sentQueries = new CopyOnWriteArrayList<>();
+  /**
+   * Answers the queries from the model instead of an endpoint
+   */
+  private AlignedWindowFetcher fetcher = new AlignedWindowFetcher((query, deadline) -> {
+    sentQueries.add(query.getQuery());
+    return execute(query);
+  }, true, 20);
+
+  @Before
+  public void setUp() {
+    model = ModelFactory.createDefaultModel();
+    for (int i = 0; i < 25; i++) {
+      model.add(model.createResource(String.format("http://dbpedia.org/resource/City_%02d", i)),
+          RDF.type, model.createResource("http://dbpedia.org/ontology/City"));
+    }
+  }
+
+  @Test
+  public void windowWithinOneBlock() {
+    assertWindow(5, 10);
+    assertEquals(1, sentQueries.size());
+    assertEquals(0, sentQueries.get(0).getOffset());
+    assertEquals(20, sentQueries.get(0).getLimit());
+  }
+
+  @Test
+  public void windowAcrossTwoBlocks() {
+    assertWindow(15, 10);
+    assertEquals(2, sentQueries.size());
+    assertEquals(20, sentQueries.get(1).getOffset());
+  }
+
+  @Test
+  public void windowsAtTheEnd() {
+    assertWindow(18, 10);
+    assertWindow(20, 10);
+    assertWindow(30, 10);
+    // an incomplete first block ends the result
+    sentQueries.clear();
+    assertWindow(22, 20);
+    assertEquals(1, sentQueries.size());
+  }
+
+  @Test
+  public void pagesShareTheBlockQuery() {
+    assertWindow(0, 10);
+    assertWindow(10, 10);
+    assertEquals(sentQueries.get(0).toString(), sentQueries.get(1).toString());
+  }
+
+  @Test
+  public void largerWindowsAreSentAsTheyAre() {
+    assertWindow(0, 21);
+    assertEquals(1, sentQueries.size());
+    assertEquals(21, sentQueries.get(0).getLimit());
+    assertEquals(0, fetcher.getAlignedRequests());
+  }
+
+  @Test
+  public void repeatedHitsDoNotEncodeTheWindow() {
+    // the blocks are cached like by the DBpediaClient
+    Map<String, ResultSetWrapper> cache = new ConcurrentHashMap<>();
+    AlignedWindowFetcher cached = new AlignedWindowFetcher(
+        (query, deadline) -> cache.computeIfAbsent(query.getKey(), key -> execute(query)), true,
+        20);
+    String hash = cached.fetch(query(15, 10), Deadline.none()).getContentHash();
+    long encoded = ResultSetCodec.getEncodedResults();
+    assertEquals(hash, cached.fetch(query(15, 10), Deadline.none()).getContentHash());
+    assertNotEquals(hash, cached.fetch(query(14, 10), Deadline.none()).getContentHash());
+    assertEquals(encoded, ResultSetCodec.getEncodedResults());
+  }
+
+  private void assertWindow(int offset, int limit) {
+    KeyedQuery query = query(offset, limit);
+    assertEquals(execute(query).getRows(), fetcher.fetch(query, Deadline.none()).getRows());
+  }
+
+  private static KeyedQuery query(int offset, int limit) {
+    Query query = QueryFactory.create("SELECT ?entities WHERE "
+        + "{ ?entities a <http://dbpedia.org/ontology/City> } ORDER BY ?entities");
+    query.setOffset(offset);
+    query.setLimit(limit);
+    return new KeyedQuery(query);
+  }
+
+  private ResultSetWrapper execute(KeyedQuery query) {
+    try (QueryExecution execution = QueryExecutionFactory.create(query.getQuery(), model)) {
+      return new ResultSetWrapper(execution.execSelect());
+    }
+  }
+}
@@ -0,0 +1,214 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import dbpedia.api.client.Deadline;
+import dbpedia.api.configuration.Configuration;
+import dbpedia.api.controller.AlignedWindowFetcher;
+import dbpedia.api.controller.DeadlinePolicy;
+import dbpedia.api.controller.HttpCachePolicy;
+import dbpedia.api.controller.OutputBufferPool;
+import dbpedia.api.controller.RequestHandler;
+import dbpedia.api.controller.RequestHandlerImplementation;
+import dbpedia.api.controller.ResponseCache;
+import dbpedia.api.factory.DBpediaQueryFactory;
+import dbpedia.api.model.ApiVersion;
+import dbpedia.api.model.LogDataModel;
+import dbpedia.api.model.RequestModel;
+import dbpedia.api.model.RequestModel.ReturnFormat;
+import dbpedia.api.model.RequestModel.Style;
+import dbpedia.api.model.ResultSetWrapper;
+import dbpedia.api.model.ValueRequestModel;
+import dbpedia.api.model.Window;
+import dbpedia.api.versioning.SemanticVersionSet;
+import dbpedia.api.versioning.VersionHandler;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+public class AsyncRequestTest {
+
+  private static final ResultSetWrapper RESULT = new ResultSetWrapper(
+      Collections.singletonList("entities"), Collections.singletonList(BindingFactory.binding(
+          Var.alloc("entities"), NodeFactory.createURI("http://dbpedia.org/resource/Leipzig"))));
+
+  private final ExecutorService executor = Configuration.createSparqlExecutor(2, 0, false);
+  private final CountDownLatch answer = new CountDownLatch(1);
+  private final AtomicReference<Thread> sender = new AtomicReference<>();
+  private final AtomicReference<Deadline> deadline = new AtomicReference<>();
+
+  @After
+  public void tearDown() {
+    answer.countDown();
+    executor.shutdown();
+  }
+
+  @Test
+  public void queryIsSentOnTheSparqlExecutor() throws Exception {
+    CompletableFuture<ResponseEntity> response = handler()
+        .handleAsync(request(), new LogDataModel());
+    // the endpoint has not answered yet, but the calling thread is free again
+    assertFalse(response.isDone());
+    answer.countDown();
+
+    ResponseEntity entity = response.get(5, TimeUnit.SECONDS);
+    assertEquals(HttpStatus.OK, entity.getStatusCode());
+    assertTrue(sender.get().getName().startsWith("sparql-"));
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    ((StreamingResponseBody) entity.getBody()).writeTo(body);
+    assertTrue(body.toString("UTF-8").contains("http://dbpedia.org/resource/Leipzig"));
+  }
+
+  @Test
+  public void streamedBodyDeclaresItsCharsetAndLogsTheBytesSent() throws Exception {
+    answer.countDown();
+    LogDataModel logDataModel = new LogDataModel();
+    ResponseEntity entity = handler().handleAsync(request(), logDataModel)
+        .get(5, TimeUnit.SECONDS);
+    assertEquals("application/json;charset=UTF-8",
+        entity.getHeaders().getContentType().toString());
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    ((StreamingResponseBody) entity.getBody()).writeTo(body);
+    assertEquals(body.size(), logDataModel.getAnswerLength());
+  }
+
+  @Test
+  public void cancelledResponseCancelsTheQuery() throws Exception {
+    CompletableFuture<ResponseEntity> response = handler()
+        .handleAsync(request(), new LogDataModel());
+    while (deadline.get() == null) {
+      Thread.sleep(5);
+    }
+    assertFalse(deadline.get().isCancelled());
+    response.cancel(false);
+    assertTrue(deadline.get().isCancelled());
+  }
+
+  @Test
+  public void fullExecutorRejectsWithServiceUnavailable() throws Exception {
+    RequestHandler handler = handler();
+    // both sparql threads wait for the endpoint, and no query may wait for them
+    handler.handleAsync(request(), new LogDataModel());
+    handler.handleAsync(request(), new LogDataModel());
+    while (((ThreadPoolExecutor) executor).getActiveCount() < 2) {
+      Thread.sleep(5);
+    }
+    CompletableFuture<ResponseEntity> rejected = handler
+        .handleAsync(request(), new LogDataModel());
+    assertTrue(rejected.isDone());
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.get().getStatusCode());
+  }
+
+  @Test
+  public void queueHoldsQueriesUntilAThreadIsFree() throws Exception {
+    ExecutorService queued = Configuration.createSparqlExecutor(1, 1, false);
+    CountDownLatch running = new CountDownLatch(1);
+    try {
+      queued.execute(() -> {
+        running.countDown();
+        try {
+          answer.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      running.await();
+      CompletableFuture<String> waiting = CompletableFuture.supplyAsync(() -> "done", queued);
+      try {
+        queued.execute(() -> { });
+        fail("RejectedExecutionException expected");
+      } catch (RejectedExecutionException e) {
+        // the queue is full
+      }
+      answer.countDown();
+      assertEquals("done", waiting.get(5, TimeUnit.SECONDS));
+    } finally {
+      queued.shutdown();
+    }
+  }
+
+  @Test
+  public void sparqlThreadsAreDaemons() throws Exception {
+    Thread thread = CompletableFuture.supplyAsync(Thread::currentThread, executor)
+        .get(5, TimeUnit.SECONDS);
+    assertEquals("sparql-1", thread.getName());
+    assertTrue(thread.isDaemon());
+  }
+
+  @Test
+  public void executorWorksWithAndWithoutVirtualThreads() throws Exception {
+    // virtual threads if the JVM has them, the fixed pool otherwise
+    ExecutorService virtual = Configuration.createSparqlExecutor(1, 0, true);
+    try {
+      assertEquals("done", CompletableFuture.supplyAsync(() -> "done", virtual)
+          .get(5, TimeUnit.SECONDS));
+    } finally {
+      virtual.shutdown();
+    }
+  }
+
+  @Test
+  public void defaultHandleAsyncCompletesWithTheBlockingResponse() {
+    ResponseEntity<String> blocking = new ResponseEntity<>("body", HttpStatus.OK);
+    RequestHandler handler = (request, logDataModel) -> blocking;
+    assertSame(blocking, handler.handleAsync(request(), new LogDataModel()).join());
+  }
+
+  private RequestHandler handler() {
+    DBpediaQueryFactory<ValueRequestModel> factory =
+        new DBpediaQueryFactory<ValueRequestModel>(null, null) {
+          @Override
+          public Query makeQuery(ValueRequestModel model) {
+            return QueryFactory.create("SELECT ?entities WHERE { ?entities ?p ?o }");
+          }
+        };
+    Map<Class<? extends RequestModel>, DBpediaQueryFactory> factories = new HashMap<>();
+    factories.put(ValueRequestModel.class, factory);
+    VersionHandler versions = new VersionHandler(new SemanticVersionSet.Builder<ApiVersion>()
+        .add(new ApiVersion(1, 0, 0, new HashMap<>(), new HashMap<>())).build());
+    AlignedWindowFetcher fetcher = new AlignedWindowFetcher((query, queryDeadline) -> {
+      sender.set(Thread.currentThread());
+      deadline.set(queryDeadline);
+      try {
+        answer.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return RESULT;
+    }, false, 0);
+    return new RequestHandlerImplementation(factories, null, versions, false, executor,
+        new DeadlinePolicy(60000, 60000, 60000, 60000), new ResponseCache(null, false, 0),
+        fetcher, new HttpCachePolicy(false, 0, false), new OutputBufferPool(1, 1024));
+  }
+
+  private static ValueRequestModel request() {
+    return new ValueRequestModel.Builder()
+        .setEntities(Collections.singleton("dbr:Leipzig"))
+        .setProperties(Collections.emptySet())
+        .setVersion("1.0.0")
+        .setFormat(ReturnFormat.JSON)
+        .setStyle(Style.NONE)
+        .setWindow(new Window(0, 100))
+        .build();
+  }
+}
@@ -0,0 +1,114 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import dbpedia.api.client.CircuitBreaker;
+import dbpedia.api.client.CircuitBreaker.State;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+  private CircuitBreaker.Builder builder = new CircuitBreaker.Builder()
+      .setWindowSize(10)
+      .setMinimumCalls(4)
+      .setFailureRateThreshold(50)
+      .setSlowCallMillis(100)
+      .setSlowCallRateThreshold(75)
+      .setOpenMillis(50)
+      .setHalfOpenCalls(2);
+
+  @Test
+  public void opensAtFailureRate() {
+    CircuitBreaker breaker = builder.build("test");
+    call(breaker, true, 0);
+    call(breaker, false, 0);
+    call(breaker, true, 0);
+    assertEquals(State.CLOSED, breaker.getState()); // less than minimumCalls
+    call(breaker, false, 0);
+    assertEquals(State.OPEN, breaker.getState());
+    assertFalse(breaker.isAvailable());
+    assertFalse(breaker.tryAcquire());
+    assertEquals(1, breaker.getRejectedCalls());
+  }
+
+  @Test
+  public void opensAtSlowCallRate() {
+    CircuitBreaker breaker = builder.build("test");
+    call(breaker, true, 0);
+    for (int i = 0; i < 2; i++) {
+      call(breaker, true, 200);
+    }
+    assertEquals(State.CLOSED, breaker.getState());
+    call(breaker, true, 200);
+    assertEquals(State.OPEN, breaker.getState());
+  }
+
+  @Test
+  public void oldCallsLeaveTheWindow() {
+    CircuitBreaker breaker = builder.build("test");
+    for (int i = 0; i < 4; i++) {
+      call(breaker, false, 0);
+      if (i == 0) {
+        for (int j = 0; j < 9; j++) {
+          call(breaker, true, 0);
+        }
+      }
+    }
+    // the first failure left the window: 3 of the last 10 calls failed
+    assertEquals(State.CLOSED, breaker.getState());
+    call(breaker, false, 0);
+    call(breaker, false, 0);
+    assertEquals(State.OPEN, breaker.getState());
+  }
+
+  @Test
+  public void closesAfterSuccessfulProbes() throws InterruptedException {
+    CircuitBreaker breaker = openBreaker();
+    Thread.sleep(60);
+    assertTrue(breaker.isAvailable());
+    call(breaker, true, 0);
+    assertEquals(State.HALF_OPEN, breaker.getState());
+    call(breaker, true, 0);
+    assertEquals(State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void halfOpenPermitsOnlyProbes() throws InterruptedException {
+    CircuitBreaker breaker = openBreaker();
+    Thread.sleep(60);
+    assertTrue(breaker.tryAcquire());
+    assertTrue(breaker.tryAcquire());
+    assertFalse(breaker.tryAcquire());
+    breaker.onFailure();
+    assertEquals(State.OPEN, breaker.getState());
+    assertEquals(2, breaker.getOpenings());
+  }
+
+  @Test
+  public void disabledBreakerStaysClosed() {
+    CircuitBreaker breaker = builder.setEnabled(false).build("test");
+    for (int i = 0; i < 10; i++) {
+      call(breaker, false, 0);
+    }
+    assertEquals(State.CLOSED, breaker.getState());
+    assertTrue(breaker.tryAcquire());
+  }
+
+  private CircuitBreaker openBreaker() {
+    CircuitBreaker breaker = builder.build("test");
+    for (int i = 0; i < 4; i++) {
+      call(breaker, false, 0);
+    }
+    assertEquals(State.OPEN, breaker.getState());
+    return breaker;
+  }
+
+  private static void call(CircuitBreaker breaker, boolean success, long millis) {
+    assertTrue(breaker.tryAcquire());
+    if (success) {
+      breaker.onSuccess(millis);
+    } else {
+      breaker.onFailure();
+    }
+  }
+}
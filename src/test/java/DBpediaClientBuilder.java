@@ -0,0 +1,63 @@
+import dbpedia.api.client.EndpointConnectionPool;
+import dbpedia.api.client.EndpointRouter;
+import dbpedia.api.client.MicroBatcher;
+import dbpedia.api.client.ResultFormat;
+import dbpedia.api.client.ResultFormatNegotiator;
+import dbpedia.api.controller.DBpediaClient;
+import dbpedia.api.controller.NegativeCache;
+import java.util.Arrays;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+/**
+ * Creates the DBpediaClient of the tests: by default without batching and negative cache, with
+ * all result formats and an in-memory stale result cache.
+ */
+public class DBpediaClientBuilder {
+
+  private EndpointRouter router;
+  private EndpointConnectionPool pool;
+  private MicroBatcher batcher = new MicroBatcher.Builder().setEnabled(false).build();
+  private ResultFormatNegotiator formatNegotiator =
+      new ResultFormatNegotiator(Arrays.asList(ResultFormat.values()));
+  private CacheManager cacheManager = new ConcurrentMapCacheManager();
+  private int maxCachedRows = 100000;
+  private NegativeCache negativeCache = new NegativeCache(null, false, 0);
+
+  public DBpediaClientBuilder setRouter(EndpointRouter router) {
+    this.router = router;
+    return this;
+  }
+
+  public DBpediaClientBuilder setPool(EndpointConnectionPool pool) {
+    this.pool = pool;
+    return this;
+  }
+
+  public DBpediaClientBuilder setNegativeCache(NegativeCache negativeCache) {
+    this.negativeCache = negativeCache;
+    return this;
+  }
+
+  public DBpediaClient build() {
+    return build(DBpediaClient::new);
+  }
+
+  /**
+   * @param factory creates the client, e.g. a subclass which overrides the queries
+   */
+  public DBpediaClient build(Factory factory) {
+    return factory.create(router, pool, batcher, formatNegotiator, cacheManager, maxCachedRows,
+        negativeCache);
+  }
+
+  /**
+   * The constructor of DBpediaClient
+   */
+  public interface Factory {
+
+    DBpediaClient create(EndpointRouter router, EndpointConnectionPool pool, MicroBatcher batcher,
+        ResultFormatNegotiator formatNegotiator, CacheManager cacheManager, int maxCachedRows,
+        NegativeCache negativeCache);
+  }
+}
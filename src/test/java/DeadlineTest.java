@@ -0,0 +1,186 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import dbpedia.api.client.CircuitBreaker;
+import dbpedia.api.client.Deadline;
+import dbpedia.api.client.DeadlineExceededException;
+import dbpedia.api.client.EndpointConnectionPool;
+import dbpedia.api.client.EndpointRouter;
+import dbpedia.api.client.KeyedQuery;
+import dbpedia.api.controller.DBpediaClient;
+import dbpedia.api.controller.DeadlinePolicy;
+import dbpedia.api.model.EntityRequestModel;
+import dbpedia.api.model.UserModel.userType;
+import dbpedia.api.model.ValueRequestModel;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.query.QueryFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeadlineTest {
+
+  private static final KeyedQuery QUERY = new KeyedQuery(QueryFactory
+      .create("SELECT ?entities WHERE { ?entities a <http://dbpedia.org/ontology/City> }"));
+
+  private StubEndpoint stub;
+  private EndpointConnectionPool pool;
+  private EndpointRouter router;
+  private DBpediaClient client;
+
+  @Before
+  public void setUp() {
+    stub = StubEndpoint.start(3000, 200);
+    pool = new EndpointConnectionPool.Builder().build();
+    router = new EndpointRouter.Builder()
+        .setEndpoints(Collections.singletonList(stub.url))
+        .setCircuitBreaker(new CircuitBreaker.Builder().setMinimumCalls(1))
+        .build();
+    client = new DBpediaClientBuilder().setRouter(router).setPool(pool).build();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    router.close();
+    stub.stop();
+    pool.close();
+  }
+
+  @Test
+  public void expiredDeadlineAbortsQuery() throws InterruptedException {
+    long start = System.currentTimeMillis();
+    try {
+      client.sendQuery(QUERY, Deadline.after(300));
+      fail("DeadlineExceededException expected");
+    } catch (DeadlineExceededException e) {
+      long duration = System.currentTimeMillis() - start;
+      assertTrue("took " + duration + " ms", duration < 2000);
+    }
+    assertEquals(1, client.getAbortedQueries());
+    // the aborting thread releases the connection, possibly after the caller got the exception
+    waitForReleasedConnections();
+    assertEquals(0, pool.getStats().getLeased());
+    // an aborted query is no failure of the endpoint
+    assertEquals(CircuitBreaker.State.CLOSED,
+        router.getEndpoints().get(0).getCircuitBreaker().getState());
+  }
+
+  @Test
+  public void cancelAbortsQuery() throws Exception {
+    Deadline deadline = Deadline.none();
+    CompletableFuture<Object> result = CompletableFuture
+        .supplyAsync(() -> client.sendQuery(QUERY, deadline));
+    waitForHits(1);
+    long start = System.currentTimeMillis();
+    deadline.cancel();
+    try {
+      result.get(2, TimeUnit.SECONDS);
+      fail("QueryCancelledException expected");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof QueryCancelledException);
+    }
+    assertTrue(System.currentTimeMillis() - start < 1000);
+    assertEquals(1, client.getCancelledQueries());
+  }
+
+  @Test
+  public void cancelDoesNotAbortSharedQuery() throws Exception {
+    stub.delayMillis = 500;
+    Deadline first = Deadline.none();
+    CompletableFuture<Object> firstResult = CompletableFuture
+        .supplyAsync(() -> client.sendQuery(QUERY, first));
+    waitForHits(1);
+    CompletableFuture<Object> secondResult = CompletableFuture
+        .supplyAsync(() -> client.sendQuery(QUERY, Deadline.none()));
+    while (client.getSharedQueries() < 1) {
+      Thread.sleep(5);
+    }
+    first.cancel();
+
+    assertTrue(secondResult.get(2, TimeUnit.SECONDS) != null);
+    assertTrue(firstResult.get(2, TimeUnit.SECONDS) != null);
+    assertEquals(0, client.getCancelledQueries());
+  }
+
+  @Test
+  public void abortActionRunsOnce() throws InterruptedException {
+    AtomicInteger aborts = new AtomicInteger();
+    Deadline deadline = Deadline.after(50);
+    deadline.onAbort(aborts::incrementAndGet);
+    Thread.sleep(150);
+    assertTrue(deadline.isExpired());
+    assertEquals(1, aborts.get());
+    deadline.cancel();
+    assertEquals(1, aborts.get());
+  }
+
+  @Test
+  public void closedRegistrationIsNotRun() throws InterruptedException {
+    AtomicInteger aborts = new AtomicInteger();
+    Deadline deadline = Deadline.after(50);
+    deadline.onAbort(aborts::incrementAndGet).close();
+    deadline.cancel();
+    Thread.sleep(100);
+    assertEquals(0, aborts.get());
+    assertTrue(deadline.isCancelled());
+  }
+
+  @Test
+  public void closedRegistrationLeavesNoTimer() {
+    int scheduled = Deadline.getScheduledAborts();
+    for (int i = 0; i < 100; i++) {
+      Deadline.after(60000).onAbort(() -> {
+      }).close();
+    }
+    assertEquals(scheduled, Deadline.getScheduledAborts());
+  }
+
+  @Test
+  public void noneSchedulesNoTimer() {
+    int scheduled = Deadline.getScheduledAborts();
+    AtomicInteger aborts = new AtomicInteger();
+    Deadline deadline = Deadline.none();
+    deadline.onAbort(aborts::incrementAndGet);
+    assertEquals(scheduled, Deadline.getScheduledAborts());
+    assertFalse(deadline.isExpired());
+    assertTrue(deadline.getRemainingMillis() > TimeUnit.DAYS.toMillis(300));
+    deadline.cancel();
+    assertEquals(1, aborts.get());
+  }
+
+  @Test
+  public void policyDependsOnRequestAndUserType() {
+    DeadlinePolicy policy = new DeadlinePolicy(1000, 2000, 3000, 4000);
+    ValueRequestModel values = new ValueRequestModel.Builder().setVersion("1.0.0")
+        .setEntities(Collections.singleton("Leipzig")).build();
+    EntityRequestModel entities = new EntityRequestModel.Builder().setVersion("1.0.0")
+        .setClassname("Person").build();
+    assertEquals(1000, policy.getMillis(values, userType.USER));
+    assertEquals(2000, policy.getMillis(entities, userType.USER));
+    assertEquals(3000, policy.getMillis(values, userType.ADMIN));
+    assertEquals(4000, policy.getMillis(entities, userType.ADMIN));
+    assertEquals(1000, policy.getMillis(values, null));
+    assertFalse(policy.start(values, userType.USER).isExpired());
+  }
+
+  private void waitForReleasedConnections() throws InterruptedException {
+    long end = System.currentTimeMillis() + 1000;
+    while (pool.getStats().getLeased() > 0 && System.currentTimeMillis() < end) {
+      Thread.sleep(5);
+    }
+  }
+
+  private void waitForHits(int hits) throws InterruptedException {
+    while (stub.hits.get() < hits) {
+      Thread.sleep(5);
+    }
+  }
+}
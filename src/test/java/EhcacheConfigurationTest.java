@@ -0,0 +1,64 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import dbpedia.api.controller.DBpediaClient;
+import dbpedia.api.model.ResultSetWrapper;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.config.ConfigurationFactory;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EhcacheConfigurationTest {
+
+  private CacheManager cacheManager;
+
+  @Before
+  public void setUp() throws Exception {
+    try (InputStream in = getClass().getResourceAsStream("/ehcache.xml")) {
+      Configuration configuration = ConfigurationFactory.parseConfiguration(in);
+      configuration.setName("EhcacheConfigurationTest");
+      cacheManager = CacheManager.newInstance(configuration);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    cacheManager.shutdown();
+  }
+
+  @Test
+  public void staleResultsAreKeptSerialized() {
+    Cache cache = cacheManager.getCache(DBpediaClient.STALE_CACHE);
+    ResultSetWrapper result = result(10000).fetched(1234, 56);
+    cache.put(new Element("query", result));
+
+    ResultSetWrapper loaded = (ResultSetWrapper) cache.get("query").getObjectValue();
+    assertNotSame(result, loaded);
+    assertEquals(result.getRows(), loaded.getRows());
+    assertEquals(1234, loaded.getFetchedAt());
+    // the encoding of 10000 rows, not their object graph
+    assertTrue(cache.getStatistics().getLocalHeapSizeInBytes() < 1 << 20);
+  }
+
+  private static ResultSetWrapper result(int size) {
+    List<Binding> rows = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      rows.add(BindingFactory.binding(Var.alloc("entities"),
+          NodeFactory.createURI("http://dbpedia.org/resource/Entity" + i)));
+    }
+    return new ResultSetWrapper(Collections.singletonList("entities"), rows);
+  }
+}
@@ -0,0 +1,125 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sun.net.httpserver.HttpServer;
+import dbpedia.api.client.EndpointConnectionPool;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EndpointConnectionPoolTest {
+
+  private HttpServer server;
+  private String url;
+  private final AtomicInteger requests = new AtomicInteger();
+  private volatile long delayMillis;
+  private EndpointConnectionPool pool;
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/sparql", exchange -> {
+      requests.incrementAndGet();
+      try {
+        Thread.sleep(delayMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      } catch (IOException e) {
+        // the client went away
+      }
+    });
+    server.start();
+    url = "http://127.0.0.1:" + server.getAddress().getPort() + "/sparql";
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (pool != null) {
+      pool.close();
+    }
+    server.stop(0);
+  }
+
+  @Test
+  public void warmUpOpensConnectionsWithoutRequests() {
+    pool = new EndpointConnectionPool.Builder().setMaxPerRoute(2).build();
+    assertEquals(2, pool.warmUp(url, 5));
+    assertEquals(2, pool.getStats().getAvailable());
+    assertEquals(0, pool.getStats().getLeased());
+    assertEquals(0, requests.get());
+  }
+
+  @Test
+  public void warmUpOfUnreachableEndpointOpensNothing() {
+    pool = new EndpointConnectionPool.Builder().setConnectTimeoutMillis(500).build();
+    assertEquals(0, pool.warmUp("http://127.0.0.1:1/sparql", 2));
+    assertEquals(0, pool.getStats().getAvailable());
+  }
+
+  @Test
+  public void connectionIsReused() throws IOException {
+    pool = new EndpointConnectionPool.Builder().build();
+    for (int i = 0; i < 5; i++) {
+      assertEquals("ok", get());
+    }
+    assertEquals(5, requests.get());
+    // the requests were sent one after another over the same connection
+    assertEquals(1, pool.getStats().getAvailable());
+    assertEquals(0, pool.getStats().getLeased());
+  }
+
+  @Test
+  public void contextCarriesTheTimeoutsOfThePool() {
+    pool = new EndpointConnectionPool.Builder().setConnectTimeoutMillis(5000)
+        .setSocketTimeoutMillis(30000).setConnectionRequestTimeoutMillis(2000).build();
+    RequestConfig config = pool.createContext().getRequestConfig();
+    assertEquals(5000, config.getConnectTimeout());
+    assertEquals(30000, config.getSocketTimeout());
+    assertEquals(2000, config.getConnectionRequestTimeout());
+
+    // a request with less time left gets shorter timeouts
+    RequestConfig shortened = pool.createContext(1000).getRequestConfig();
+    assertEquals(1000, shortened.getConnectTimeout());
+    assertEquals(1000, shortened.getSocketTimeout());
+    assertEquals(5000, pool.createContext(60000).getRequestConfig().getConnectTimeout());
+  }
+
+  @Test
+  public void socketTimeoutEndsSlowRequest() throws IOException {
+    delayMillis = 3000;
+    pool = new EndpointConnectionPool.Builder().setSocketTimeoutMillis(300).build();
+    long start = System.currentTimeMillis();
+    try {
+      get();
+      fail("SocketTimeoutException expected");
+    } catch (SocketTimeoutException e) {
+      long duration = System.currentTimeMillis() - start;
+      assertTrue("took " + duration + " ms", duration < 2000);
+    }
+  }
+
+  private String get() throws IOException {
+    try (CloseableHttpResponse response = pool.getHttpClient()
+        .execute(new HttpGet(url), pool.createContext())) {
+      return EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+    }
+  }
+}
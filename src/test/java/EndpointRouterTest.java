@@ -0,0 +1,254 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import dbpedia.api.client.CircuitBreaker;
+import dbpedia.api.client.CircuitOpenException;
+import dbpedia.api.client.Deadline;
+import dbpedia.api.client.Endpoint;
+import dbpedia.api.client.EndpointConnectionPool;
+import dbpedia.api.client.EndpointRouter;
+import dbpedia.api.client.KeyedQuery;
+import dbpedia.api.controller.DBpediaClient;
+import dbpedia.api.model.ResultSetWrapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EndpointRouterTest {
+
+  private static final KeyedQuery QUERY = new KeyedQuery(QueryFactory
+      .create("SELECT ?entities WHERE { ?entities a <http://dbpedia.org/ontology/City> }"));
+
+  private EndpointConnectionPool pool;
+  private List<StubEndpoint> stubs = new ArrayList<>();
+  private EndpointRouter router;
+
+  @Before
+  public void setUp() {
+    pool = new EndpointConnectionPool.Builder().build();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (router != null) {
+      router.close();
+    }
+    for (StubEndpoint stub : stubs) {
+      stub.stop();
+    }
+    pool.close();
+  }
+
+  @Test
+  public void queriesGoToTheFasterEndpoint() {
+    StubEndpoint slow = startStub(200, 200);
+    StubEndpoint fast = startStub(0, 200);
+    router = new EndpointRouter.Builder().setEndpoints(Arrays.asList(slow.url, fast.url))
+        .build();
+    DBpediaClient client = new DBpediaClientBuilder().setRouter(router).setPool(pool).build();
+
+    for (int i = 0; i < 20; i++) {
+      assertEquals(1, size(client.sendQuery(QUERY, Deadline.none())));
+    }
+    // both endpoints are tried once, afterwards the slow one is avoided
+    assertEquals(1, slow.hits.get());
+    assertEquals(19, fast.hits.get());
+    assertEquals(0, router.getHedgedRequests());
+  }
+
+  @Test
+  public void slowEndpointIsHedged() {
+    StubEndpoint slow = startStub(2000, 200);
+    StubEndpoint fast = startStub(0, 200);
+    router = new EndpointRouter.Builder().setEndpoints(Arrays.asList(slow.url, fast.url))
+        .setHedging(true).setInitialHedgeDelayMillis(100).build();
+    DBpediaClient client = new DBpediaClientBuilder().setRouter(router).setPool(pool).build();
+
+    long start = System.currentTimeMillis();
+    // equal costs, so the first (slow) endpoint is asked first
+    assertEquals(1, size(client.sendQuery(QUERY, Deadline.none())));
+    long duration = System.currentTimeMillis() - start;
+
+    assertTrue("took " + duration + " ms", duration < 1500);
+    assertEquals(1, slow.hits.get());
+    assertEquals(1, fast.hits.get());
+    assertEquals(1, router.getHedgedRequests());
+    assertEquals(1, router.getHedgeWins());
+  }
+
+  @Test
+  public void losingHedgedRequestIsAborted() throws InterruptedException {
+    StubEndpoint slow = startStub(3000, 200);
+    StubEndpoint fast = startStub(0, 200);
+    router = new EndpointRouter.Builder().setEndpoints(Arrays.asList(slow.url, fast.url))
+        .setHedging(true).setInitialHedgeDelayMillis(100).build();
+    DBpediaClient client = new DBpediaClientBuilder().setRouter(router).setPool(pool).build();
+
+    assertEquals(1, size(client.sendQuery(QUERY, Deadline.none())));
+    assertEquals(1, router.getHedgeWins());
+    // the request to the slow endpoint releases its connection long before it would answer
+    Endpoint loser = router.getEndpoints().get(0);
+    long end = System.currentTimeMillis() + 1000;
+    while ((pool.getStats().getLeased() > 0 || loser.getOutstanding() > 0)
+        && System.currentTimeMillis() < end) {
+      Thread.sleep(5);
+    }
+    assertEquals(0, pool.getStats().getLeased());
+    // an aborted loser is no failure of its endpoint, but it took at least the hedge delay
+    assertEquals(0, loser.getFailures());
+    assertTrue(loser.getEwmaMillis() >= 100);
+  }
+
+  @Test
+  public void fastEndpointIsNotHedged() {
+    StubEndpoint first = startStub(0, 200);
+    StubEndpoint second = startStub(0, 200);
+    router = new EndpointRouter.Builder().setEndpoints(Arrays.asList(first.url, second.url))
+        .setHedging(true).build();
+    DBpediaClient client = new DBpediaClientBuilder().setRouter(router).setPool(pool).build();
+
+    assertEquals(1, size(client.sendQuery(QUERY, Deadline.none())));
+    assertEquals(1, first.hits.get() + second.hits.get());
+    assertEquals(0, router.getHedgedRequests());
+  }
+
+  @Test
+  public void hedgedFailureUsesTheOtherResult() {
+    StubEndpoint failing = startStub(300, 500);
+    StubEndpoint slow = startStub(600, 200);
+    router = new EndpointRouter.Builder().setEndpoints(Arrays.asList(failing.url, slow.url))
+        .setHedging(true).setInitialHedgeDelayMillis(100).build();
+    DBpediaClient client = new DBpediaClientBuilder().setRouter(router).setPool(pool).build();
+
+    assertEquals(1, size(client.sendQuery(QUERY, Deadline.none())));
+    assertEquals(1, router.getHedgedRequests());
+    assertEquals(1, router.getEndpoints().get(0).getFailures());
+  }
+
+  @Test
+  public void failureBeforeTheHedgeDelayFailsOver() {
+    StubEndpoint failing = startStub(0, 503);
+    StubEndpoint other = startStub(0, 200);
+    router = new EndpointRouter.Builder().setEndpoints(Arrays.asList(failing.url, other.url))
+        .setHedging(true).setInitialHedgeDelayMillis(5000).build();
+    DBpediaClient client = new DBpediaClientBuilder().setRouter(router).setPool(pool).build();
+
+    long start = System.currentTimeMillis();
+    assertEquals(1, size(client.sendQuery(QUERY, Deadline.none())));
+    long duration = System.currentTimeMillis() - start;
+
+    assertTrue("took " + duration + " ms", duration < 2500);
+    assertEquals(1, failing.hits.get());
+    assertEquals(1, other.hits.get());
+    assertEquals(1, router.getFailovers());
+    assertEquals(0, router.getHedgedRequests());
+  }
+
+  @Test
+  public void queryErrorIsNotFailedOver() {
+    StubEndpoint rejecting = startStub(0, 400);
+    StubEndpoint other = startStub(0, 200);
+    router = new EndpointRouter.Builder().setEndpoints(Arrays.asList(rejecting.url, other.url))
+        .setHedging(true).setInitialHedgeDelayMillis(5000).build();
+    DBpediaClient client = new DBpediaClientBuilder().setRouter(router).setPool(pool).build();
+
+    try {
+      client.sendQuery(QUERY, Deadline.none());
+      fail("Exception expected");
+    } catch (QueryExceptionHTTP e) {
+      assertEquals(400, e.getResponseCode());
+    }
+    assertEquals(0, other.hits.get());
+    assertEquals(0, router.getFailovers());
+  }
+
+  @Test
+  public void requestIsNotHedgedWithoutFreeThread() {
+    StubEndpoint slow = startStub(500, 200);
+    StubEndpoint fast = startStub(0, 200);
+    router = new EndpointRouter.Builder().setEndpoints(Arrays.asList(slow.url, fast.url))
+        .setHedging(true).setInitialHedgeDelayMillis(100).setMaxHedgeThreads(1).build();
+    DBpediaClient client = new DBpediaClientBuilder().setRouter(router).setPool(pool).build();
+
+    // the primary request uses the only thread, so the slow endpoint is waited for
+    assertEquals(1, size(client.sendQuery(QUERY, Deadline.none())));
+    assertEquals(1, slow.hits.get());
+    assertEquals(0, fast.hits.get());
+    assertEquals(0, router.getHedgedRequests());
+    assertEquals(1, router.getUnhedgedRequests());
+  }
+
+  @Test
+  public void errorIsRethrownWithoutHedging() {
+    StubEndpoint failing = startStub(0, 500);
+    router = new EndpointRouter.Builder().setEndpoints(Arrays.asList(failing.url))
+        .setHedging(true).setInitialHedgeDelayMillis(100).build();
+    DBpediaClient client = new DBpediaClientBuilder().setRouter(router).setPool(pool).build();
+
+    try {
+      client.sendQuery(QUERY, Deadline.none());
+      fail("Exception expected");
+    } catch (RuntimeException e) {
+      assertEquals(1, failing.hits.get());
+    }
+    assertEquals(0, router.getHedgedRequests());
+    assertEquals(0, router.getEndpoints().get(0).getOutstanding());
+  }
+
+  @Test
+  public void staleResultIsReturnedWhileCircuitIsOpen() {
+    StubEndpoint endpoint = startStub(0, 200);
+    router = new EndpointRouter.Builder().setEndpoints(Arrays.asList(endpoint.url))
+        .setCircuitBreaker(new CircuitBreaker.Builder().setWindowSize(2).setMinimumCalls(2)
+            .setFailureRateThreshold(100))
+        .build();
+    DBpediaClient client = new DBpediaClientBuilder().setRouter(router).setPool(pool).build();
+    Query otherQuery = QueryFactory.create("SELECT ?entities WHERE { ?entities ?p ?o }");
+
+    assertFalse(client.sendQuery(QUERY, Deadline.none()).isStale());
+    endpoint.status = 503;
+    for (int i = 0; i < 2; i++) {
+      try {
+        client.sendQuery(new KeyedQuery(otherQuery), Deadline.none());
+        fail("Exception expected");
+      } catch (QueryExceptionHTTP e) {
+        assertEquals(503, e.getResponseCode());
+      }
+    }
+    assertEquals(CircuitBreaker.State.OPEN,
+        router.getEndpoints().get(0).getCircuitBreaker().getState());
+
+    // the endpoint is not asked anymore, the last result is returned as stale
+    ResultSetWrapper stale = client.sendQuery(QUERY, Deadline.none());
+    assertTrue(stale.isStale());
+    assertEquals(1, size(stale));
+    assertEquals(3, endpoint.hits.get());
+    assertEquals(1, client.getStaleQueries());
+    try {
+      client.sendQuery(new KeyedQuery(otherQuery), Deadline.none());
+      fail("CircuitOpenException expected");
+    } catch (CircuitOpenException e) {
+      assertEquals(3, endpoint.hits.get());
+    }
+  }
+
+  private static int size(ResultSetWrapper wrapper) {
+    return ResultSetFactory.copyResults(wrapper.getResultSet()).size();
+  }
+
+  private StubEndpoint startStub(long delayMillis, int status) {
+    StubEndpoint stub = StubEndpoint.start(delayMillis, status);
+    stubs.add(stub);
+    return stub;
+  }
+}
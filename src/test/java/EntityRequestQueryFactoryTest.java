@@ -7,6 +7,7 @@ import dbpedia.api.model.EntityRequestModel;
 import dbpedia.api.model.EntityRequestModel.Builder;
 import dbpedia.api.model.Filter;
 import dbpedia.api.model.Filter.Bool;
+import dbpedia.api.model.NamespaceTrie;
 import dbpedia.api.model.RequestModel.ReturnFormat;
 import dbpedia.api.model.RequestModel.Style;
 import dbpedia.api.model.ResourceModel;
@@ -26,7 +27,7 @@ public class EntityRequestQueryFactoryTest {
   EntityRequestQueryFactory factory = new EntityRequestQueryFactory(
 
       Configuration.createOntModel("config/dbpedia_2016-10.owl"),
-      Configuration.loadPrefixMapping("config/prefixes.json"));
+      NamespaceTrie.of(Configuration.loadPrefixMapping("config/prefixes.json")));
 
   public EntityRequestQueryFactoryTest() throws IOException {
   }
@@ -0,0 +1,70 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import dbpedia.api.controller.HttpCachePolicy;
+import dbpedia.api.model.RequestModel.ReturnFormat;
+import dbpedia.api.model.RequestModel.Style;
+import dbpedia.api.model.ResultSetWrapper;
+import java.util.Collections;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+public class HttpCachePolicyTest {
+
+  private final HttpCachePolicy policy = new HttpCachePolicy(true, 300000, true);
+
+  @Test
+  public void etagDependsOnContentFormatAndStyle() {
+    String etag = policy.etag(result("Leipzig"), ReturnFormat.JSON, Style.NONE);
+    assertEquals(etag, policy.etag(result("Leipzig").fetched(1234, 5), ReturnFormat.JSON,
+        Style.NONE));
+    assertNotEquals(etag, policy.etag(result("Dresden"), ReturnFormat.JSON, Style.NONE));
+    assertNotEquals(etag, policy.etag(result("Leipzig"), ReturnFormat.TSV, Style.NONE));
+    assertNotEquals(etag, policy.etag(result("Leipzig"), ReturnFormat.JSON, Style.SHORT));
+    assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+  }
+
+  @Test
+  public void ifNoneMatchIsCompared() {
+    String etag = policy.etag(result("Leipzig"), ReturnFormat.JSON, Style.NONE);
+    assertTrue(policy.isNotModified(etag, etag));
+    assertTrue(policy.isNotModified("\"other\", W/" + etag, etag));
+    assertTrue(policy.isNotModified("*", etag));
+    assertFalse(policy.isNotModified("\"other\"", etag));
+    assertFalse(policy.isNotModified(null, etag));
+
+    ResponseEntity response = policy.notModified(etag, 0);
+    assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+    assertEquals(etag, response.getHeaders().getETag());
+    assertEquals(1, policy.getNotModifiedResponses());
+  }
+
+  @Test
+  public void maxAgeDecreasesWithTheAgeOfTheResult() {
+    assertEquals("max-age=300, public", policy.cacheControl(0, false).getHeaderValue());
+    assertEquals("max-age=200, public",
+        policy.cacheControl(System.currentTimeMillis() - 99500, false).getHeaderValue());
+    assertEquals("no-cache, public",
+        policy.cacheControl(System.currentTimeMillis() - 400000, false).getHeaderValue());
+    assertEquals("no-cache, public", policy.cacheControl(0, true).getHeaderValue());
+    assertEquals("max-age=300, private",
+        new HttpCachePolicy(true, 300000, false).cacheControl(0, false).getHeaderValue());
+
+    HttpCachePolicy disabled = new HttpCachePolicy(false, 300000, true);
+    assertNull(disabled.etag(result("Leipzig"), ReturnFormat.JSON, Style.NONE));
+    assertNull(disabled.cacheControl(0, false));
+  }
+
+  private static ResultSetWrapper result(String entity) {
+    return new ResultSetWrapper(Collections.singletonList("entities"),
+        Collections.singletonList(BindingFactory.binding(Var.alloc("entities"),
+            NodeFactory.createURI("http://dbpedia.org/resource/" + entity))));
+  }
+}
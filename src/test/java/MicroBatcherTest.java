@@ -0,0 +1,143 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import dbpedia.api.client.MicroBatcher;
+import dbpedia.api.model.ResultSetWrapper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MicroBatcherTest {
+
+  private static final String DBR = "http://dbpedia.org/resource/";
+
+  private Model model;
+  private List<Query> sentQueries = new CopyOnWriteArrayList<>();
+  /**
+   * Answers the queries from the model, like an endpoint would
+   */
+  private BiFunction<Query, Boolean, ResultSetWrapper> send = (query, merged) -> {
+    sentQueries.add(query);
+    try (QueryExecution execution = QueryExecutionFactory.create(query, model)) {
+      return new ResultSetWrapper(ResultSetFactory.copyResults(execution.execSelect()));
+    }
+  };
+
+  @Before
+  public void setUp() {
+    model = ModelFactory.createDefaultModel();
+    Property name = model.createProperty("http://xmlns.com/foaf/0.1/name");
+    for (String entity : new String[]{"Leipzig", "Berlin", "Dresden"}) {
+      for (int i = 1; i <= 3; i++) {
+        model.add(model.createResource(DBR + entity), name, entity + i);
+      }
+    }
+  }
+
+  @Test
+  public void concurrentQueriesAreMerged() throws Exception {
+    MicroBatcher batcher = new MicroBatcher.Builder().setWindowMillis(500).setMaxBatchSize(3)
+        .build();
+    List<CompletableFuture<ResultSetWrapper>> results = new ArrayList<>();
+    for (String entity : new String[]{"Leipzig", "Berlin", "Dresden"}) {
+      results.add(CompletableFuture
+          .supplyAsync(() -> batcher.execute(valuesQuery(entity, 0, 10), send)));
+    }
+
+    for (CompletableFuture<ResultSetWrapper> result : results) {
+      assertEquals(3, size(result.get(5, TimeUnit.SECONDS)));
+    }
+    assertEquals(1, sentQueries.size());
+    assertEquals(1, batcher.getMergedQueries());
+    assertEquals(3, batcher.getBatchedQueries());
+  }
+
+  @Test
+  public void resultsAreSplitByEntityAndWindowed() throws Exception {
+    MicroBatcher batcher = new MicroBatcher.Builder().setWindowMillis(500).setMaxBatchSize(2)
+        .build();
+    CompletableFuture<ResultSetWrapper> leipzig = CompletableFuture
+        .supplyAsync(() -> batcher.execute(valuesQuery("Leipzig", 1, 10), send));
+    CompletableFuture<ResultSetWrapper> berlin = CompletableFuture
+        .supplyAsync(() -> batcher.execute(valuesQuery("Berlin", 0, 1), send));
+
+    ResultSet leipzigRows = leipzig.get(5, TimeUnit.SECONDS).getResultSet();
+    int rows = 0;
+    while (leipzigRows.hasNext()) {
+      assertEquals(DBR + "Leipzig", leipzigRows.next().getResource("entities").getURI());
+      rows++;
+    }
+    assertEquals(2, rows);
+    ResultSet berlinRows = berlin.get(5, TimeUnit.SECONDS).getResultSet();
+    assertEquals(DBR + "Berlin", berlinRows.next().getResource("entities").getURI());
+    assertTrue(!berlinRows.hasNext());
+    assertEquals(1, sentQueries.size());
+  }
+
+  @Test
+  public void singleQueryIsSentUnchanged() {
+    MicroBatcher batcher = new MicroBatcher.Builder().setWindowMillis(1).build();
+    Query query = valuesQuery("Leipzig", 0, 10);
+    assertEquals(3, size(batcher.execute(query, send)));
+    assertEquals(query, sentQueries.get(0));
+    assertEquals(0, batcher.getMergedQueries());
+  }
+
+  @Test
+  public void otherQueriesAreNotBatched() {
+    MicroBatcher batcher = new MicroBatcher.Builder().setWindowMillis(1000).build();
+    Query query = QueryFactory
+        .create("SELECT ?entities WHERE { ?entities <http://xmlns.com/foaf/0.1/name> ?x }");
+    long start = System.currentTimeMillis();
+    assertEquals(9, size(batcher.execute(query, send)));
+    assertTrue(System.currentTimeMillis() - start < 1000);
+  }
+
+  @Test
+  public void truncatedBatchFallsBackToSingleQueries() throws Exception {
+    MicroBatcher batcher = new MicroBatcher.Builder().setWindowMillis(500).setMaxBatchSize(2)
+        .setMaxRows(4).build();
+    CompletableFuture<ResultSetWrapper> leipzig = CompletableFuture
+        .supplyAsync(() -> batcher.execute(valuesQuery("Leipzig", 0, 10), send));
+    CompletableFuture<ResultSetWrapper> berlin = CompletableFuture
+        .supplyAsync(() -> batcher.execute(valuesQuery("Berlin", 0, 10), send));
+
+    assertEquals(3, size(leipzig.get(5, TimeUnit.SECONDS)));
+    assertEquals(3, size(berlin.get(5, TimeUnit.SECONDS)));
+    assertEquals(1, batcher.getTruncatedBatches());
+    assertEquals(3, sentQueries.size());
+  }
+
+  private static Query valuesQuery(String entity, long offset, long limit) {
+    Query query = QueryFactory.create("SELECT DISTINCT ?entities ?x WHERE {\n"
+        + "VALUES ?entities { <" + DBR + entity + "> }\n"
+        + "OPTIONAL { ?entities <http://xmlns.com/foaf/0.1/name> ?x } } ORDER BY ?x");
+    query.setOffset(offset);
+    query.setLimit(limit);
+    return query;
+  }
+
+  private static int size(ResultSetWrapper result) {
+    ResultSet resultSet = result.getResultSet();
+    int size = 0;
+    while (resultSet.hasNext()) {
+      resultSet.next();
+      size++;
+    }
+    return size;
+  }
+}
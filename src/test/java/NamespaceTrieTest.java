@@ -0,0 +1,65 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import dbpedia.api.configuration.Configuration;
+import dbpedia.api.model.NamespaceTrie;
+import dbpedia.api.model.RequestModel.Style;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class NamespaceTrieTest {
+
+  private static final NamespaceTrie PREFIXES;
+
+  static {
+    try {
+      PREFIXES = NamespaceTrie.of(Configuration.loadPrefixMapping("config/prefixes.json"));
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Test
+  public void longestNamespaceIsReplaced() {
+    assertEquals("dbr:Leipzig",
+        PREFIXES.shorten("http://dbpedia.org/resource/Leipzig", Style.PREFIXED));
+    assertEquals("dbc:Cities_in_Saxony",
+        PREFIXES.shorten("http://dbpedia.org/resource/Category:Cities_in_Saxony", Style.PREFIXED));
+    assertEquals("xsd:integer",
+        PREFIXES.shorten("http://www.w3.org/2001/XMLSchema#integer", Style.PREFIXED));
+  }
+
+  @Test
+  public void shortStyleDropsResourceAndOntologyPrefixes() {
+    assertEquals("Leipzig", PREFIXES.shorten("http://dbpedia.org/resource/Leipzig", Style.SHORT));
+    assertEquals("populationTotal",
+        PREFIXES.shorten("http://dbpedia.org/ontology/populationTotal", Style.SHORT));
+    assertEquals("dbp:name", PREFIXES.shorten("http://dbpedia.org/property/name", Style.SHORT));
+  }
+
+  @Test
+  public void unknownNamespacesAreKept() {
+    assertEquals("http://example.invalid/x",
+        PREFIXES.shorten("http://example.invalid/x", Style.PREFIXED));
+    assertEquals(-1, PREFIXES.find("http://example.invalid/x"));
+  }
+
+  @Test
+  public void preferredOrShortestPrefixIsUsed() {
+    Map<String, String> namespaces = new HashMap<>();
+    namespaces.put("resource", "http://dbpedia.org/resource/");
+    namespaces.put("res", "http://dbpedia.org/resource/");
+    namespaces.put("dbr", "http://dbpedia.org/resource/");
+    namespaces.put("ab", "http://example.invalid/");
+    namespaces.put("aa", "http://example.invalid/");
+    NamespaceTrie trie = new NamespaceTrie(namespaces, Arrays.asList("dbr"));
+    assertEquals(2, trie.size());
+    assertEquals("dbr:X", trie.shorten("http://dbpedia.org/resource/X", Style.PREFIXED));
+    assertEquals("aa:X", trie.shorten("http://example.invalid/X", Style.PREFIXED));
+    assertEquals("http://dbpedia.org/resource/", trie.getNamespace("res"));
+    assertNull(trie.getNamespace("dbo"));
+  }
+}
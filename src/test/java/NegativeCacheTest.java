@@ -0,0 +1,167 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import dbpedia.api.client.Deadline;
+import dbpedia.api.client.EndpointConnectionPool;
+import dbpedia.api.client.EndpointRouter;
+import dbpedia.api.client.KeyedQuery;
+import dbpedia.api.controller.DBpediaClient;
+import dbpedia.api.controller.NegativeCache;
+import dbpedia.api.controller.TieredCache;
+import dbpedia.api.controller.TieredCacheResolver;
+import dbpedia.api.model.ResultSetWrapper;
+import java.io.IOException;
+import java.util.Collections;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cache.annotation.AnnotationCacheOperationSource;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.interceptor.CacheInterceptor;
+
+public class NegativeCacheTest {
+
+  private static final KeyedQuery QUERY = new KeyedQuery(QueryFactory
+      .create("SELECT ?entities WHERE { ?entities a <http://dbpedia.org/ontology/Misspelled> }"));
+
+  private EndpointConnectionPool pool;
+  private StubEndpoint stub;
+  private EndpointRouter router;
+
+  @Before
+  public void setUp() {
+    pool = new EndpointConnectionPool.Builder().build();
+    stub = StubEndpoint.start(0, 200);
+    router = new EndpointRouter.Builder().setEndpoints(Collections.singletonList(stub.url))
+        .build();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    router.close();
+    stub.stop();
+    pool.close();
+  }
+
+  @Test
+  public void emptyResultsAreCachedUntilTheyExpire() throws Exception {
+    stub.rows = 0;
+    NegativeCache negativeCache = negativeCache(200);
+    DBpediaClient client = client(negativeCache);
+
+    assertEquals(0, client.sendQuery(QUERY, Deadline.none()).size());
+    ResultSetWrapper cached = client.sendQuery(QUERY, Deadline.none());
+    assertEquals(0, cached.size());
+    assertEquals(Collections.singletonList("entities"), cached.getResultVars());
+    assertEquals(1, stub.hits.get());
+    assertEquals(1, negativeCache.getEmptyHits());
+
+    Thread.sleep(300);
+    stub.rows = 1;
+    assertEquals(1, client.sendQuery(QUERY, Deadline.none()).size());
+    assertEquals(2, stub.hits.get());
+    assertEquals(1, negativeCache.getStoredEmptyResults());
+  }
+
+  @Test
+  public void queryErrorsAreCached() {
+    stub.status = 400;
+    NegativeCache negativeCache = negativeCache(60000);
+    DBpediaClient client = client(negativeCache);
+
+    for (int i = 0; i < 3; i++) {
+      try {
+        client.sendQuery(QUERY, Deadline.none());
+        fail();
+      } catch (QueryExceptionHTTP e) {
+        assertEquals(400, e.getResponseCode());
+      }
+    }
+    assertEquals(1, stub.hits.get());
+    assertEquals(1, negativeCache.getStoredErrors());
+    assertEquals(2, negativeCache.getErrorHits());
+  }
+
+  @Test
+  public void serverErrorsAreNotCached() {
+    stub.status = 503;
+    DBpediaClient client = client(negativeCache(60000));
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        client.sendQuery(QUERY, Deadline.none());
+        fail();
+      } catch (RuntimeException e) {
+        // the endpoint failed, not the query
+      }
+    }
+    assertEquals(2, stub.hits.get());
+  }
+
+  @Test
+  public void unacceptableFormatsAreNotCached() {
+    stub.contentTypes = Collections.singletonList("text/csv");
+    stub.rejectUnknownTypes = true;
+    NegativeCache negativeCache = negativeCache(60000);
+    DBpediaClient client = client(negativeCache);
+
+    try {
+      client.sendQuery(QUERY, Deadline.none());
+      fail();
+    } catch (QueryExceptionHTTP e) {
+      // the endpoint accepts none of the formats, that is no error of the query
+      assertEquals(502, e.getResponseCode());
+    }
+    assertEquals(0, negativeCache.getStoredErrors());
+    int hits = stub.hits.get();
+    stub.rejectUnknownTypes = false;
+    stub.contentTypes = Collections.singletonList("application/sparql-results+json");
+    assertEquals(1, client.sendQuery(QUERY, Deadline.none()).size());
+    assertEquals(hits + 1, stub.hits.get());
+  }
+
+  @Test
+  public void emptyRefreshDoesNotReplaceCachedResult() {
+    ConcurrentMapCache heap = new ConcurrentMapCache("DBpediaClient.sendQuery");
+    DBpediaClient client = cached(client(negativeCache(60000)), heap);
+
+    assertEquals(1, client.sendQuery(QUERY, Deadline.none()).size());
+    stub.rows = 0;
+    assertEquals(0, client.refreshQuery(QUERY, Deadline.none()).size());
+    assertEquals(1, heap.getNativeCache().size());
+    assertEquals(1, client.sendQuery(QUERY, Deadline.none()).size());
+    assertEquals(2, stub.hits.get());
+  }
+
+  /**
+   * @return the client behind the cache proxy, like Spring creates it with the resultCacheResolver
+   */
+  private static DBpediaClient cached(DBpediaClient client, ConcurrentMapCache heap) {
+    TieredCacheResolver resolver = new TieredCacheResolver(new TieredCache(heap, null, 0));
+    StaticListableBeanFactory beans = new StaticListableBeanFactory();
+    beans.addBean("resultCacheResolver", resolver);
+    CacheInterceptor interceptor = new CacheInterceptor();
+    interceptor.setCacheOperationSources(new AnnotationCacheOperationSource());
+    interceptor.setCacheResolver(resolver);
+    interceptor.setBeanFactory(beans);
+    interceptor.afterPropertiesSet();
+    interceptor.afterSingletonsInstantiated();
+    ProxyFactory proxy = new ProxyFactory(client);
+    proxy.setProxyTargetClass(true);
+    proxy.addAdvice(interceptor);
+    return (DBpediaClient) proxy.getProxy();
+  }
+
+  private static NegativeCache negativeCache(long timeToLiveMillis) {
+    return new NegativeCache(new ConcurrentMapCache(NegativeCache.CACHE), true, timeToLiveMillis);
+  }
+
+  private DBpediaClient client(NegativeCache negativeCache) {
+    return new DBpediaClientBuilder().setRouter(router).setPool(pool)
+        .setNegativeCache(negativeCache).build();
+  }
+}
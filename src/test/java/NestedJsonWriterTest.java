@@ -0,0 +1,121 @@
+import static org.junit.Assert.assertEquals;
+
+import dbpedia.api.controller.NestedJsonWriter;
+import dbpedia.api.model.NamespaceTrie;
+import dbpedia.api.model.ResultSetWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.junit.Test;
+
+public class NestedJsonWriterTest {
+
+  private static final String DBR = StyleFixtures.DBR;
+  private static final String DBO = StyleFixtures.DBO;
+
+  /**
+   * The expected outputs were recorded with the former org.json based allMightyNested
+   */
+  @Test
+  public void outputMatchesTheRecordedFixtures() throws IOException {
+    NamespaceTrie namespaces = StyleFixtures.namespaces();
+    assertEquals(StyleFixtures.fixture("nested.json"), write(entities(), namespaces));
+    assertEquals(StyleFixtures.fixture("nested-values.json"),
+        write(values(), namespaces));
+  }
+
+  @Test
+  public void emptyResultIsAnEmptyArray() throws IOException {
+    NamespaceTrie namespaces = StyleFixtures.namespaces();
+    assertEquals("[]", write(new ResultSetWrapper(Arrays.asList("entities", "label"),
+        Collections.emptyList()), namespaces));
+  }
+
+  /**
+   * Rows of an entity request: entities in several rows, labelled values, repeated values and
+   * strings which org.json escapes
+   */
+  static ResultSetWrapper entities() {
+    List<String> vars = Arrays.asList("entities", "label", "populationTotal", "child",
+        "childLabel", "abstract", "founder", "year");
+    Node leipzig = NodeFactory.createURI(DBR + "Leipzig");
+    Node dresden = NodeFactory.createURI(DBR + "Dresden");
+    Node unknown = NodeFactory.createURI("http://example.org/unknown/Dresden");
+    Node population = NodeFactory.createLiteral("560472", XSDDatatype.XSDnonNegativeInteger);
+    Node blank = NodeFactory.createBlankNode();
+    List<Binding> rows = new ArrayList<>();
+    rows.add(row(vars, leipzig, NodeFactory.createLiteral("Leipzig", "de"), population,
+        NodeFactory.createURI(DBR + "Gohlis"), NodeFactory.createLiteral("Gohlis", "en"),
+        NodeFactory.createLiteral("A city in <b>Saxony</b></p>, \"Germany\".\n"), blank,
+        NodeFactory.createLiteral("1165")));
+    rows.add(row(vars, dresden, NodeFactory.createLiteral("Dresden"), null,
+        NodeFactory.createURI(DBR + "Altstadt"), null,
+        NodeFactory.createLiteral("Tab\tcontrol\u0001 C1\u0085 separator  emoji 😀"),
+        NodeFactory.createBlankNode(), NodeFactory.createLiteral("")));
+    rows.add(row(vars, leipzig, NodeFactory.createLiteral("Leipzig", "de"), population,
+        NodeFactory.createURI(DBR + "Gohlis"), NodeFactory.createLiteral("Gohlis", "en"),
+        NodeFactory.createLiteral("A city in <b>Saxony</b></p>, \"Germany\".\n"), blank,
+        NodeFactory.createLiteral("1165")));
+    rows.add(row(vars, leipzig, NodeFactory.createLiteral("\"Leipzig\""), null,
+        NodeFactory.createURI(DBR + "Plagwitz"), NodeFactory.createLiteral("Plagwitz"), null,
+        null, NodeFactory.createLiteral("")));
+    rows.add(row(vars, unknown, NodeFactory.createLiteral("true"), null, null,
+        NodeFactory.createLiteral("no child"), null, null,
+        NodeFactory.createLiteral("1206-05-31", XSDDatatype.XSDdate)));
+    rows.add(row(vars, unknown, NodeFactory.createLiteral("true"),
+        NodeFactory.createLiteral("12 thousand"), NodeFactory.createURI(DBO + "Person"), null,
+        null, null, NodeFactory.createLiteral("1206-05-31", XSDDatatype.XSDdate)));
+    rows.add(row(vars, dresden, null, null, NodeFactory.createURI(DBR + "Altstadt"), null, null,
+        null, NodeFactory.createLiteral("")));
+    rows.add(row(vars, NodeFactory.createURI("http://example.org/?of=" + DBR + "Leipzig")));
+    rows.add(row(vars, NodeFactory.createURI(DBR + "Category:Cities_in_Saxony")));
+    return new ResultSetWrapper(vars, rows);
+  }
+
+  /**
+   * Rows of a request for all values of the entities
+   */
+  static ResultSetWrapper values() {
+    List<String> vars = Arrays.asList("entities", "properties", "values", "label",
+        "childLabel");
+    Node loup = NodeFactory.createURI(DBR + "St_Loup");
+    Node sens = NodeFactory.createURI(DBR + "Sens");
+    Node label = NodeFactory.createURI("http://www.w3.org/2000/01/rdf-schema#label");
+    Node id = NodeFactory.createURI(DBO + "wikiPageID");
+    Node child = NodeFactory.createURI(DBO + "child");
+    List<Binding> rows = new ArrayList<>();
+    rows.add(row(vars, loup, NodeFactory.createURI(DBO + "wikiPageRedirects"),
+        NodeFactory.createURI(DBR + "Lupus_of_Sens"), NodeFactory.createLiteral("Lupus of Sens")));
+    rows.add(row(vars, loup, label, NodeFactory.createLiteral("St Loup", "en")));
+    rows.add(row(vars, loup, id, NodeFactory.createLiteral("1070303", XSDDatatype.XSDinteger)));
+    rows.add(row(vars, sens, label, NodeFactory.createLiteral("Sens", "fr")));
+    rows.add(row(vars, loup, id, NodeFactory.createLiteral("1070303", XSDDatatype.XSDinteger)));
+    rows.add(row(vars, loup, label, NodeFactory.createLiteral("St Loup", "de")));
+    rows.add(row(vars, loup, child, NodeFactory.createURI(DBR + "Kid"), null,
+        NodeFactory.createLiteral("Kid")));
+    rows.add(row(vars, loup, child, NodeFactory.createURI(DBR + "Kid"), null,
+        NodeFactory.createLiteral("Kid")));
+    rows.add(row(vars, loup, child, null, null, NodeFactory.createLiteral("Nobody")));
+    rows.add(row(vars, sens, NodeFactory.createURI("http://example.org/unknown#prop"),
+        NodeFactory.createURI("http://en.wikipedia.org/wiki/Sens")));
+    return new ResultSetWrapper(vars, rows);
+  }
+
+  private static Binding row(List<String> vars, Node... nodes) {
+    return StyleFixtures.row(vars, nodes);
+  }
+
+  static String write(ResultSetWrapper result, NamespaceTrie namespaces) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new NestedJsonWriter(namespaces).write(result.getResultSet(), os);
+    return new String(os.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,99 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import dbpedia.api.controller.OutputBufferPool;
+import dbpedia.api.controller.OutputBufferPool.PooledOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+
+public class OutputBufferPoolTest {
+
+  @Test
+  public void bytesArriveInOrderAndAreCopied() throws Exception {
+    byte[] data = new byte[10000];
+    new Random(1).nextBytes(data);
+    OutputBufferPool pool = new OutputBufferPool(2, 64);
+    ByteArrayOutputStream target = new ByteArrayOutputStream();
+    PooledOutputStream os = pool.open(target, 20000);
+    int position = 0;
+    int length = 1;
+    while (position < data.length) {
+      int chunk = Math.min(length, data.length - position);
+      if (chunk == 1) {
+        os.write(data[position]);
+      } else {
+        os.write(data, position, chunk);
+      }
+      position += chunk;
+      length = length * 3 % 211;
+    }
+    os.close();
+    assertArrayEquals(data, target.toByteArray());
+    assertArrayEquals(data, os.getCopy());
+    assertEquals(data.length, os.getCount());
+  }
+
+  @Test
+  public void copyIsDroppedWhenItExceedsTheLimit() throws Exception {
+    OutputBufferPool pool = new OutputBufferPool(2, 64);
+    ByteArrayOutputStream target = new ByteArrayOutputStream();
+    PooledOutputStream os = pool.open(target, 100);
+    os.write(new byte[101]);
+    os.close();
+    assertNull(os.getCopy());
+    assertEquals(101, target.size());
+
+    PooledOutputStream noCopy = pool.open(new ByteArrayOutputStream(), 0);
+    noCopy.write(1);
+    noCopy.close();
+    assertNull(noCopy.getCopy());
+  }
+
+  @Test
+  public void buffersAreReused() throws Exception {
+    OutputBufferPool pool = new OutputBufferPool(1, 64);
+    for (int i = 0; i < 10; i++) {
+      PooledOutputStream os = pool.open(new ByteArrayOutputStream(), 0);
+      os.write(new byte[100]);
+      os.close();
+    }
+    assertEquals(1, pool.getAllocated());
+    assertEquals(10, pool.getBorrowed());
+
+    PooledOutputStream first = pool.open(new ByteArrayOutputStream(), 0);
+    PooledOutputStream second = pool.open(new ByteArrayOutputStream(), 0);
+    first.close();
+    second.close();
+    assertEquals(2, pool.getAllocated());
+    assertEquals(1, pool.getFreeBuffers());
+  }
+
+  @Test
+  public void closedStreamRejectsWrites() throws Exception {
+    PooledOutputStream os = new OutputBufferPool(1, 64).open(new ByteArrayOutputStream(), 0);
+    os.close();
+    os.close();
+    try {
+      os.write(1);
+      fail("IOException expected");
+    } catch (IOException e) {
+      assertEquals("stream closed", e.getMessage());
+    }
+    try {
+      os.write(new byte[10], 0, 10);
+      fail("IOException expected");
+    } catch (IOException e) {
+      assertEquals("stream closed", e.getMessage());
+    }
+    try {
+      os.flush();
+      fail("IOException expected");
+    } catch (IOException e) {
+      assertEquals("stream closed", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,60 @@
+import static org.junit.Assert.assertEquals;
+
+import dbpedia.api.controller.PrefixedJsonWriter;
+import dbpedia.api.model.NamespaceTrie;
+import dbpedia.api.model.RequestModel.Style;
+import dbpedia.api.model.ResultSetWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingHashMap;
+import org.junit.Test;
+
+public class PrefixedJsonWriterTest {
+
+  /**
+   * The layout of the expected outputs was recorded with the former org.json based formatting
+   */
+  @Test
+  public void outputMatchesTheRecordedFixtures() throws IOException {
+    NamespaceTrie namespaces = StyleFixtures.namespaces();
+    assertEquals(StyleFixtures.fixture("prefixed.json"),
+        write(StyleFixtures.result(), namespaces, Style.PREFIXED));
+    assertEquals(StyleFixtures.fixture("short.json"),
+        write(StyleFixtures.result(), namespaces, Style.SHORT));
+  }
+
+  @Test
+  public void singleEntriesAreWrittenOnOneLine() throws IOException {
+    NamespaceTrie namespaces = StyleFixtures.namespaces();
+    List<String> vars = Collections.singletonList("entities");
+    assertEquals("{\n"
+            + "  \"head\": {\"vars\": [\"entities\"]},\n"
+            + "  \"results\": {\"bindings\": []}\n"
+            + "}",
+        write(new ResultSetWrapper(vars, Collections.emptyList()), namespaces, Style.PREFIXED));
+
+    BindingHashMap row = new BindingHashMap();
+    row.add(Var.alloc("entities"), NodeFactory.createURI(StyleFixtures.DBR + "Leipzig"));
+    assertEquals("{\n"
+            + "  \"head\": {\"vars\": [\"entities\"]},\n"
+            + "  \"results\": {\"bindings\": [{\"entities\": {\n"
+            + "    \"type\": \"uri\",\n"
+            + "    \"value\": \"Leipzig\"\n"
+            + "  }}]}\n"
+            + "}",
+        write(new ResultSetWrapper(vars, Collections.singletonList(row)), namespaces,
+            Style.SHORT));
+  }
+
+  private static String write(ResultSetWrapper result, NamespaceTrie namespaces, Style style)
+      throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new PrefixedJsonWriter(namespaces, style).write(result.getResultSet(), os);
+    return new String(os.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,52 @@
+import static org.junit.Assert.assertEquals;
+
+import dbpedia.api.controller.PrefixedTsvWriter;
+import dbpedia.api.model.NamespaceTrie;
+import dbpedia.api.model.RequestModel.Style;
+import dbpedia.api.model.ResultSetWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingHashMap;
+import org.junit.Test;
+
+public class PrefixedTsvWriterTest {
+
+  /**
+   * The expected outputs were recorded with the former JSON based formatting, with the literals
+   * escaped
+   */
+  @Test
+  public void outputMatchesTheRecordedFixtures() throws IOException {
+    NamespaceTrie namespaces = StyleFixtures.namespaces();
+    assertEquals(StyleFixtures.fixture("prefixed.tsv"),
+        write(StyleFixtures.result(), namespaces, Style.PREFIXED));
+    assertEquals(StyleFixtures.fixture("short.tsv"),
+        write(StyleFixtures.result(), namespaces, Style.SHORT));
+  }
+
+  @Test
+  public void literalsAreEscaped() throws IOException {
+    NamespaceTrie namespaces = StyleFixtures.namespaces();
+    List<String> vars = Arrays.asList("entities", "abstract");
+    BindingHashMap row = new BindingHashMap();
+    row.add(Var.alloc("entities"), NodeFactory.createURI(StyleFixtures.DBR + "Leipzig"));
+    row.add(Var.alloc("abstract"), NodeFactory.createLiteral("a\tb\r\nc \"d\" \\e"));
+    assertEquals("?entities\t?abstract\n"
+            + "dbr:Leipzig\t\"a\\tb\\r\\nc \\\"d\\\" \\\\e\"\n",
+        write(new ResultSetWrapper(vars, Collections.singletonList(row)), namespaces,
+            Style.PREFIXED));
+  }
+
+  private static String write(ResultSetWrapper result, NamespaceTrie namespaces, Style style)
+      throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new PrefixedTsvWriter(namespaces, style).write(result.getResultSet(), os);
+    return new String(os.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
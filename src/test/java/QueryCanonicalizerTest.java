@@ -0,0 +1,67 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import dbpedia.api.client.KeyedQuery;
+import dbpedia.api.client.QueryCanonicalizer;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.junit.Test;
+
+public class QueryCanonicalizerTest {
+
+  private static final String PREFIXES = "PREFIX dbo: <http://dbpedia.org/ontology/>\n"
+      + "PREFIX dbr: <http://dbpedia.org/resource/>\n";
+
+  @Test
+  public void orderOfValuesDoesNotMatter() {
+    assertEquals(key(PREFIXES + "SELECT ?entities ?x WHERE { VALUES ?entities { dbr:Leipzig dbr:Berlin }"
+            + " OPTIONAL { ?entities dbo:country ?x } }"),
+        key(PREFIXES + "SELECT ?entities ?x WHERE { VALUES ?entities { dbr:Berlin dbr:Leipzig }"
+            + " OPTIONAL { ?entities dbo:country ?x } }"));
+  }
+
+  @Test
+  public void orderOfIndependentOptionalsDoesNotMatter() {
+    assertEquals(key(PREFIXES + "SELECT ?entities ?x ?y WHERE { VALUES ?entities { dbr:Leipzig }"
+            + " OPTIONAL { ?entities dbo:country ?x } OPTIONAL { ?entities dbo:mayor ?y } }"),
+        key(PREFIXES + "SELECT ?entities ?x ?y WHERE { VALUES ?entities { dbr:Leipzig }"
+            + " OPTIONAL { ?entities dbo:mayor ?y } OPTIONAL { ?entities dbo:country ?x } }"));
+  }
+
+  @Test
+  public void optionalsSharingUnboundVariablesKeepTheirOrder() {
+    assertNotEquals(key(PREFIXES + "SELECT * WHERE { VALUES ?entities { dbr:Leipzig }"
+            + " OPTIONAL { ?entities dbo:country ?x } OPTIONAL { ?entities dbo:state ?x } }"),
+        key(PREFIXES + "SELECT * WHERE { VALUES ?entities { dbr:Leipzig }"
+            + " OPTIONAL { ?entities dbo:state ?x } OPTIONAL { ?entities dbo:country ?x } }"));
+  }
+
+  @Test
+  public void prefixesDoNotMatter() {
+    assertEquals(key(PREFIXES + "SELECT ?entities WHERE { ?entities a dbo:City }"),
+        key("PREFIX foaf: <http://xmlns.com/foaf/0.1/>\n"
+            + "SELECT ?entities WHERE { ?entities a <http://dbpedia.org/ontology/City> }"));
+  }
+
+  @Test
+  public void differentQueriesHaveDifferentKeys() {
+    String query = PREFIXES + "SELECT ?entities WHERE { ?entities a dbo:City }";
+    assertNotEquals(key(query), key(query + " LIMIT 10"));
+    assertNotEquals(key(query), key(query.replace("SELECT", "SELECT DISTINCT")));
+    assertNotEquals(key(query), key(query.replace("dbo:City", "dbo:Town")));
+  }
+
+  @Test
+  public void keysOfOtherWindowsAreDerived() {
+    Query query = QueryFactory.create(PREFIXES + "SELECT ?entities WHERE { ?entities a dbo:City }"
+        + " ORDER BY ?entities OFFSET 5 LIMIT 10");
+    KeyedQuery block = new KeyedQuery(query).withWindow(20, 20);
+    assertEquals(20, block.getQuery().getOffset());
+    assertEquals(QueryCanonicalizer.canonicalKey(block.getQuery()), block.getKey());
+    assertNotEquals(QueryCanonicalizer.canonicalKey(query), block.getKey());
+  }
+
+  private static String key(String query) {
+    return QueryCanonicalizer.canonicalKey(QueryFactory.create(query));
+  }
+}
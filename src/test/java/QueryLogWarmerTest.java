@@ -0,0 +1,45 @@
+import static org.junit.Assert.assertEquals;
+
+import dbpedia.api.controller.QueryLogWarmer;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class QueryLogWarmerTest {
+
+  private static final DateTimeFormatter TIME = DateTimeFormatter
+      .ofPattern("yyyy-MM-dd HH:mm:ss");
+  private static final LocalDateTime NOW = LocalDateTime.of(2018, 1, 10, 12, 0);
+
+  @Test
+  public void callsAreRankedByFrequencyAndRecency() {
+    List<String> lines = Arrays.asList(
+        line(NOW.minusHours(1), "/values?entities=Leipzig&property=dbo:mayor&key=a"),
+        line(NOW.minusHours(2), "/values?entities=Leipzig&property=dbo:mayor&key=a"),
+        // three calls of last week count less than two of today
+        line(NOW.minusDays(7), "/instances/City?null"),
+        line(NOW.minusDays(7), "/instances/City?null"),
+        line(NOW.minusDays(7), "/instances/City?null"),
+        line(NOW.minusMinutes(5), "/entities?value=Leipzig"),
+        // failed calls are not replayed
+        "[ERROR]\t" + NOW.format(TIME) + "\t\tquery: /values?entities=X\tkey: a\texception: x",
+        "[INFO ]\tnot a log line");
+
+    assertEquals(Arrays.asList("/values?entities=Leipzig&property=dbo:mayor&key=a",
+        "/entities?value=Leipzig", "/instances/City?null"),
+        QueryLogWarmer.rank(lines, millis(NOW), 10, 24));
+    assertEquals(1, QueryLogWarmer.rank(lines, millis(NOW), 1, 24).size());
+  }
+
+  private static String line(LocalDateTime time, String call) {
+    return "[INFO ]\t" + time.format(TIME) + "\t\tquery: " + call
+        + "\tkey: a\tday: 1\thour: 1\tminute: 1\tlength: 10 Duration(ms): 5";
+  }
+
+  private static long millis(LocalDateTime time) {
+    return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+}
@@ -1,9 +1,14 @@
 import static org.junit.Assert.assertEquals;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import dbpedia.api.configuration.Configuration;
-import dbpedia.api.controller.RequestHandlerImplementation;
+import dbpedia.api.controller.NestedJsonWriter;
+import dbpedia.api.model.NamespaceTrie;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import org.apache.jena.query.ResultSetFactory;
 import org.apache.jena.shared.impl.PrefixMappingImpl;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -72,7 +77,7 @@ public class RequestHandlerImplementationTest {
       prefixMap = null;
     }
 
-    assertEquals(expected.toString(2),RequestHandlerImplementation.allMightyNested(json, prefixMap));
+    assertEquals(expected.toString(2),nested(json, prefixMap));
   }
 
   @Test
@@ -100,7 +105,7 @@ public class RequestHandlerImplementationTest {
     } catch ( IOException ioEx) {
       prefixMap = null;
     }
-    assertEquals(expected,RequestHandlerImplementation.allMightyNested(jsonObject, prefixMap));
+    assertEquals(expected,nested(jsonObject, prefixMap));
   }
 
   @Test
@@ -131,7 +136,7 @@ public class RequestHandlerImplementationTest {
       prefixMap = null;
     }
 
-    assertEquals(expected,RequestHandlerImplementation.allMightyNested(jsonObject, prefixMap));
+    assertEquals(expected,nested(jsonObject, prefixMap));
   }
 
   @Test
@@ -208,6 +213,20 @@ public class RequestHandlerImplementationTest {
       prefixMap = null;
     }
 
-    assertEquals(expected.toString(2), RequestHandlerImplementation.allMightyNested(source, prefixMap));
+    assertEquals(expected.toString(2), nested(source, prefixMap));
+  }
+
+  /**
+   * Writes the SPARQL-JSON result in the NESTED style
+   */
+  private static String nested(JSONObject result, PrefixMappingImpl prefixMap) {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    try {
+      new NestedJsonWriter(NamespaceTrie.of(prefixMap)).write(ResultSetFactory.fromJSON(
+          new ByteArrayInputStream(result.toString().getBytes(StandardCharsets.UTF_8))), os);
+    } catch (IOException ioEx) {
+      throw new UncheckedIOException(ioEx);
+    }
+    return new String(os.toByteArray(), StandardCharsets.UTF_8);
   }
 }
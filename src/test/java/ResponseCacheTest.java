@@ -0,0 +1,61 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import dbpedia.api.client.KeyedQuery;
+import dbpedia.api.controller.ResponseCache;
+import dbpedia.api.model.FormattedResponse;
+import dbpedia.api.model.RequestModel.ReturnFormat;
+import dbpedia.api.model.RequestModel.Style;
+import org.apache.jena.query.QueryFactory;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+public class ResponseCacheTest {
+
+  private static final KeyedQuery QUERY = new KeyedQuery(QueryFactory
+      .create("SELECT ?entities WHERE { ?entities a <http://dbpedia.org/ontology/City> }"));
+
+  @Test
+  public void keyContainsFormatAndStyle() {
+    String key = ResponseCache.key(QUERY, ReturnFormat.JSON, Style.NONE);
+    assertEquals(key, ResponseCache.key(new KeyedQuery(QueryFactory.create(
+        "PREFIX dbo: <http://dbpedia.org/ontology/>\nSELECT ?entities WHERE { ?entities a dbo:City }")),
+        ReturnFormat.JSON, Style.NONE));
+    assertNotEquals(key, ResponseCache.key(QUERY, ReturnFormat.TSV, Style.NONE));
+    assertNotEquals(key, ResponseCache.key(QUERY, ReturnFormat.JSON, Style.SHORT));
+  }
+
+  @Test
+  public void hitsAndMissesAreCounted() {
+    ResponseCache cache = new ResponseCache(new ConcurrentMapCache("responses"), true, 100);
+    String key = ResponseCache.key(QUERY, ReturnFormat.JSON, Style.NONE);
+    assertNull(cache.get(key));
+    FormattedResponse response =
+        new FormattedResponse(new byte[10], "application/JSON", 10, null, 0);
+    cache.put(key, response);
+    assertSame(response, cache.get(key));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getStoredResponses());
+  }
+
+  @Test
+  public void largeResponsesAreNotStored() {
+    ResponseCache cache = new ResponseCache(new ConcurrentMapCache("responses"), true, 100);
+    cache.put("key", new FormattedResponse(new byte[101], "application/JSON", 101, null, 0));
+    assertNull(cache.get("key"));
+    assertEquals(1, cache.getSkippedResponses());
+  }
+
+  @Test
+  public void missingCacheSwitchesItOff() {
+    ResponseCache cache = new ResponseCache(null, true, 100);
+    assertFalse(cache.isEnabled());
+    cache.put("key", new FormattedResponse(new byte[1], "application/JSON", 1, null, 0));
+    assertNull(cache.get("key"));
+    assertEquals(0, cache.getMisses());
+  }
+}
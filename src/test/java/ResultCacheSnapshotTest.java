@@ -0,0 +1,97 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import dbpedia.api.controller.OffHeapStore;
+import dbpedia.api.controller.ResultCacheSnapshot;
+import dbpedia.api.controller.TieredCache;
+import dbpedia.api.model.ResultSetWrapper;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.ehcache.EhCacheCache;
+
+public class ResultCacheSnapshotTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void savedEntriesAreLoaded() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("snapshots/sendQuery.snapshot");
+    ConcurrentMapCache cache = new ConcurrentMapCache("DBpediaClient.sendQuery");
+    long now = System.currentTimeMillis();
+    ResultSetWrapper result = result(now);
+    cache.put("fresh", result);
+    cache.put("old", result(now - TimeUnit.HOURS.toMillis(2)));
+
+    assertEquals(2, new ResultCacheSnapshot(cache, file, TimeUnit.HOURS.toMillis(1)).save());
+    assertEquals(1, Files.list(file.getParent()).count());
+
+    ConcurrentMapCache restarted = new ConcurrentMapCache("DBpediaClient.sendQuery");
+    assertEquals(1, new ResultCacheSnapshot(restarted, file, TimeUnit.HOURS.toMillis(1)).load());
+    ResultSetWrapper loaded = restarted.get("fresh", ResultSetWrapper.class);
+    assertEquals(result.getRows(), loaded.getRows());
+    assertEquals(now, loaded.getFetchedAt());
+    assertNull(restarted.get("old"));
+  }
+
+  @Test
+  public void loadedEntriesKeepTheirRemainingTimeToLive() {
+    Path file = folder.getRoot().toPath().resolve("sendQuery.snapshot");
+    ConcurrentMapCache saved = new ConcurrentMapCache("DBpediaClient.sendQuery");
+    long now = System.currentTimeMillis();
+    saved.put("young", result(now - TimeUnit.SECONDS.toMillis(100)));
+    saved.put("expired", result(now - TimeUnit.SECONDS.toMillis(700)));
+    new ResultCacheSnapshot(saved, file, TimeUnit.HOURS.toMillis(1)).save();
+
+    CacheManager cacheManager = CacheManager.newInstance(
+        new Configuration().name("ResultCacheSnapshotTest"));
+    try {
+      net.sf.ehcache.Cache ehcache = new net.sf.ehcache.Cache(
+          new CacheConfiguration("DBpediaClient.sendQuery", 100).timeToLiveSeconds(600));
+      cacheManager.addCache(ehcache);
+      assertEquals(1, new ResultCacheSnapshot(new EhCacheCache(ehcache), file,
+          TimeUnit.HOURS.toMillis(1)).load());
+      Element young = ehcache.get("young");
+      assertTrue(young.getTimeToLive() > 490 && young.getTimeToLive() <= 500);
+      assertNull(ehcache.get("expired"));
+    } finally {
+      cacheManager.shutdown();
+    }
+
+    // large results of the off-heap tier
+    OffHeapStore offHeap = new OffHeapStore(1 << 20, TimeUnit.SECONDS.toMillis(600), 0);
+    TieredCache tiered = new TieredCache(new ConcurrentMapCache("heap"), offHeap, 0);
+    assertEquals(1, new ResultCacheSnapshot(tiered, file, TimeUnit.HOURS.toMillis(1)).load());
+    assertEquals(1, offHeap.size());
+    assertNull(tiered.get("expired"));
+  }
+
+  @Test
+  public void missingSnapshotIsNoError() {
+    ConcurrentMapCache cache = new ConcurrentMapCache("DBpediaClient.sendQuery");
+    assertEquals(0, new ResultCacheSnapshot(cache,
+        folder.getRoot().toPath().resolve("missing.snapshot"), 1000).load());
+    assertEquals(0, new ResultCacheSnapshot(cache, null, 1000).save());
+  }
+
+  private static ResultSetWrapper result(long fetchedAt) {
+    return new ResultSetWrapper(Collections.singletonList("entities"),
+        Collections.singletonList(BindingFactory.binding(Var.alloc("entities"),
+            NodeFactory.createURI("http://dbpedia.org/resource/Leipzig"))))
+        .fetched(fetchedAt, 10);
+  }
+}
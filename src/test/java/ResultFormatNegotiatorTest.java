@@ -0,0 +1,91 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import dbpedia.api.client.CancellableHttpClient;
+import dbpedia.api.client.EndpointConnectionPool;
+import dbpedia.api.client.ResultFormat;
+import dbpedia.api.client.ResultFormatNegotiator;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.jena.sparql.engine.http.QueryExceptionHTTP;
+import org.junit.After;
+import org.junit.Test;
+
+public class ResultFormatNegotiatorTest {
+
+  private static final String QUERY =
+      "SELECT ?entities WHERE { ?entities a <http://dbpedia.org/ontology/City> }";
+
+  private StubEndpoint stub = StubEndpoint.start(0, 200);
+  private EndpointConnectionPool pool = new EndpointConnectionPool.Builder().build();
+  private ResultFormatNegotiator negotiator = new ResultFormatNegotiator(
+      Arrays.asList(ResultFormat.THRIFT, ResultFormat.JSON, ResultFormat.XML));
+
+  @After
+  public void tearDown() throws IOException {
+    stub.stop();
+    pool.close();
+  }
+
+  @Test
+  public void thriftIsPreferred() {
+    stub.contentTypes = Arrays.asList("application/sparql-results+json",
+        "application/sparql-results+thrift", "application/sparql-results+xml");
+    assertEquals(1, select());
+    assertTrue(stub.accept.startsWith("application/sparql-results+thrift,"));
+    assertEquals(ResultFormat.THRIFT, negotiator.getFormat(stub.url));
+    assertEquals(1, negotiator.getParsedResults(ResultFormat.THRIFT));
+  }
+
+  @Test
+  public void learnedFormatIsRequestedAlone() {
+    assertNull(negotiator.getFormat(stub.url));
+    select();
+    assertEquals(ResultFormat.JSON, negotiator.getFormat(stub.url));
+    select();
+    assertEquals("application/sparql-results+json", stub.accept);
+    assertEquals(2, negotiator.getParsedResults(ResultFormat.JSON));
+    assertEquals(0, negotiator.getParsedResults(ResultFormat.THRIFT));
+  }
+
+  @Test
+  public void unacceptableFormatsAreDropped() {
+    stub.contentTypes = Arrays.asList("application/sparql-results+xml",
+        "application/sparql-results+json");
+    stub.rejectUnknownTypes = true;
+    assertEquals(1, select());
+    // thrift was rejected, json and xml are requested again
+    assertEquals(2, stub.hits.get());
+    assertEquals("application/sparql-results+json, application/sparql-results+xml;q=0.9",
+        stub.accept);
+    assertEquals(ResultFormat.JSON, negotiator.getFormat(stub.url));
+    select();
+    assertEquals(3, stub.hits.get());
+  }
+
+  @Test
+  public void endpointAcceptingNoFormatFailsWithBadGateway() {
+    stub.contentTypes = Collections.singletonList("text/csv");
+    stub.rejectUnknownTypes = true;
+    try {
+      select();
+      fail("QueryExceptionHTTP expected");
+    } catch (QueryExceptionHTTP e) {
+      assertEquals(502, e.getResponseCode());
+    }
+    assertEquals(3, stub.hits.get());
+    // the formats are negotiated again with the next query
+    stub.rejectUnknownTypes = false;
+    stub.contentTypes = Collections.singletonList("application/sparql-results+thrift");
+    assertEquals(1, select());
+    assertEquals(ResultFormat.THRIFT, negotiator.getFormat(stub.url));
+  }
+
+  private int select() {
+    return negotiator.select(new CancellableHttpClient(pool.getHttpClient()),
+        pool.createContext(), stub.url, QUERY).size();
+  }
+}
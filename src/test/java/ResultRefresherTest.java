@@ -0,0 +1,92 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import dbpedia.api.client.Deadline;
+import dbpedia.api.client.KeyedQuery;
+import dbpedia.api.controller.DBpediaClient;
+import dbpedia.api.controller.ResultRefresher;
+import dbpedia.api.model.ResultSetWrapper;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.jena.query.QueryFactory;
+import org.junit.Test;
+
+public class ResultRefresherTest {
+
+  private static final KeyedQuery QUERY = new KeyedQuery(QueryFactory
+      .create("SELECT ?entities WHERE { ?entities a <http://dbpedia.org/ontology/City> }"));
+  private static final long SOFT_TTL = 60000;
+
+  private ResultSetWrapper cached;
+  private AtomicInteger refreshes = new AtomicInteger();
+  /**
+   * Returns the cached result and counts the refreshes, like the cache proxy would
+   */
+  private DBpediaClient client = new DBpediaClientBuilder().build(
+      (router, pool, batcher, formatNegotiator, cacheManager, maxCachedRows, negativeCache) ->
+          new DBpediaClient(router, pool, batcher, formatNegotiator, cacheManager, maxCachedRows,
+              negativeCache) {
+            @Override
+            public ResultSetWrapper sendQuery(KeyedQuery query, Deadline deadline) {
+              return cached;
+            }
+
+            @Override
+            public ResultSetWrapper refreshQuery(KeyedQuery query, Deadline deadline) {
+              refreshes.incrementAndGet();
+              return cached;
+            }
+          });
+  private List<Runnable> tasks = new CopyOnWriteArrayList<>();
+
+  @Test
+  public void freshResultsAreNotRefreshed() {
+    cached = result(1000, 10);
+    assertSame(cached, refresher(0).sendQuery(QUERY, Deadline.none()));
+    assertEquals(0, tasks.size());
+  }
+
+  @Test
+  public void expiredResultIsReturnedAndRefreshedOnce() {
+    cached = result(SOFT_TTL + 1000, 10);
+    ResultRefresher refresher = refresher(0);
+    assertSame(cached, refresher.sendQuery(QUERY, Deadline.none()));
+    assertSame(cached, refresher.sendQuery(QUERY, Deadline.none()));
+    assertEquals(1, tasks.size());
+    tasks.get(0).run();
+    assertEquals(1, refreshes.get());
+    // the refresh is over, the next expired hit starts a new one
+    refresher.sendQuery(QUERY, Deadline.none());
+    assertEquals(2, tasks.size());
+    assertEquals(2, refresher.getStartedRefreshes());
+  }
+
+  @Test
+  public void slowResultsAreRefreshedEarly() {
+    // one second before the soft TTL, the fetch took much longer than that
+    cached = result(SOFT_TTL - 1000, 10000000);
+    refresher(1).sendQuery(QUERY, Deadline.none());
+    assertEquals(1, tasks.size());
+    tasks.clear();
+    refresher(0).sendQuery(QUERY, Deadline.none());
+    assertEquals(0, tasks.size());
+  }
+
+  @Test
+  public void staleResultsAreNotRefreshed() {
+    cached = result(SOFT_TTL + 1000, 10).asStale();
+    refresher(0).sendQuery(QUERY, Deadline.none());
+    assertEquals(0, tasks.size());
+  }
+
+  private ResultRefresher refresher(double beta) {
+    return new ResultRefresher(client, tasks::add, true, SOFT_TTL, beta, 1000);
+  }
+
+  private static ResultSetWrapper result(long age, long fetchMillis) {
+    return new ResultSetWrapper(Collections.singletonList("entities"), Collections.emptyList())
+        .fetched(System.currentTimeMillis() - age, fetchMillis);
+  }
+}
@@ -0,0 +1,82 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import dbpedia.api.model.ResultSetCodec;
+import dbpedia.api.model.ResultSetWrapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidObjectException;
+import java.nio.charset.StandardCharsets;
+import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.query.ResultSetFormatter;
+import org.junit.Test;
+
+public class ResultSetCodecTest {
+
+  private static final String RESULT = "{\"head\":{\"vars\":[\"entities\",\"x\"]},"
+      + "\"results\":{\"bindings\":["
+      + "{\"entities\":{\"type\":\"uri\",\"value\":\"http://dbpedia.org/resource/Leipzig\"},"
+      + "\"x\":{\"type\":\"literal\",\"value\":\"Leipzig\",\"xml:lang\":\"de\"}},"
+      + "{\"entities\":{\"type\":\"uri\",\"value\":\"http://dbpedia.org/resource/Leipzig\"},"
+      + "\"x\":{\"type\":\"typed-literal\",\"value\":\"582277\","
+      + "\"datatype\":\"http://www.w3.org/2001/XMLSchema#integer\"}},"
+      + "{\"entities\":{\"type\":\"bnode\",\"value\":\"b0\"},"
+      + "\"x\":{\"type\":\"literal\",\"value\":\"Stra\\u00dfe\"}},"
+      + "{\"entities\":{\"type\":\"uri\",\"value\":\"http://dbpedia.org/resource/Berlin\"}}]}}";
+
+  @Test
+  public void allTermsAreKept() throws Exception {
+    ResultSetWrapper wrapper = parse(RESULT);
+    ResultSetWrapper decoded = ResultSetCodec
+        .decode(ResultSetCodec.encode(wrapper.getResultVars(), wrapper.getRows()));
+    assertEquals(wrapper.getResultVars(), decoded.getResultVars());
+    assertEquals(wrapper.getRows(), decoded.getRows());
+  }
+
+  @Test
+  public void otherVersionsAreRejected() {
+    ResultSetWrapper wrapper = parse(RESULT);
+    byte[] data = ResultSetCodec.encode(wrapper.getResultVars(), wrapper.getRows());
+    data[0] = (byte) (ResultSetCodec.VERSION + 1);
+    try {
+      ResultSetCodec.decode(data);
+      fail("InvalidObjectException expected");
+    } catch (InvalidObjectException e) {
+      assertTrue(e.getMessage().contains("version"));
+    }
+  }
+
+  /**
+   * Compares the binary encoding with the SPARQL JSON results which were cached before
+   */
+  @Test
+  public void binaryEncodingIsSmallerThanJson() throws Exception {
+    ResultSetWrapper wrapper = parse(largeResult(5000));
+    ByteArrayOutputStream json = new ByteArrayOutputStream();
+    ResultSetFormatter.outputAsJSON(json, wrapper.getResultSet());
+    byte[] binary = ResultSetCodec.encode(wrapper.getResultVars(), wrapper.getRows());
+    assertTrue(binary.length * 4 < json.size());
+    assertEquals(wrapper.getRows(), ResultSetCodec.decode(binary).getRows());
+  }
+
+  private static String largeResult(int rows) {
+    StringBuilder result = new StringBuilder(
+        "{\"head\":{\"vars\":[\"entities\",\"label\",\"population\"]},\"results\":{\"bindings\":[");
+    for (int i = 0; i < rows; i++) {
+      result.append(i > 0 ? "," : "")
+          .append("{\"entities\":{\"type\":\"uri\",\"value\":\"http://dbpedia.org/resource/City_")
+          .append(i / 2).append("\"},\"label\":{\"type\":\"literal\",\"xml:lang\":\"")
+          .append(i % 2 == 0 ? "en" : "de").append("\",\"value\":\"City ").append(i / 2)
+          .append("\"},\"population\":{\"type\":\"typed-literal\",\"datatype\":")
+          .append("\"http://www.w3.org/2001/XMLSchema#integer\",\"value\":\"")
+          .append(1000 + i / 2).append("\"}}");
+    }
+    return result.append("]}}").toString();
+  }
+
+  private static ResultSetWrapper parse(String json) {
+    return new ResultSetWrapper(ResultSetFactory
+        .fromJSON(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))));
+  }
+}
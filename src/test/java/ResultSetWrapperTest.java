@@ -0,0 +1,73 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import dbpedia.api.model.ResultSetWrapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.ResultSetFactory;
+import org.junit.Test;
+
+public class ResultSetWrapperTest {
+
+  private static final String RESULT = "{\"head\":{\"vars\":[\"entities\",\"x\"]},"
+      + "\"results\":{\"bindings\":["
+      + "{\"entities\":{\"type\":\"uri\",\"value\":\"http://dbpedia.org/resource/Leipzig\"},"
+      + "\"x\":{\"type\":\"literal\",\"value\":\"Leipzig\",\"xml:lang\":\"de\"}},"
+      + "{\"entities\":{\"type\":\"uri\",\"value\":\"http://dbpedia.org/resource/Berlin\"}}]}}";
+
+  @Test
+  public void everyReaderGetsAllRows() {
+    ResultSetWrapper wrapper = new ResultSetWrapper(parse());
+    ResultSet first = wrapper.getResultSet();
+    ResultSet second = wrapper.getResultSet();
+    assertEquals(2, count(first));
+    assertEquals(2, count(second));
+    assertEquals(2, count(wrapper.getResultSet()));
+    assertEquals(2, wrapper.size());
+  }
+
+  @Test
+  public void staleWrapperSharesTheRows() {
+    ResultSetWrapper wrapper = new ResultSetWrapper(parse());
+    ResultSetWrapper stale = wrapper.asStale();
+    assertTrue(stale.isStale());
+    assertSame(wrapper.getRows(), stale.getRows());
+  }
+
+  @Test
+  public void serializationKeepsRows() throws Exception {
+    ResultSetWrapper wrapper = new ResultSetWrapper(parse()).fetched(1000, 20);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(wrapper);
+    }
+    ResultSetWrapper read;
+    try (ObjectInputStream in = new ObjectInputStream(
+        new ByteArrayInputStream(bytes.toByteArray()))) {
+      read = (ResultSetWrapper) in.readObject();
+    }
+    assertEquals(wrapper.getResultVars(), read.getResultVars());
+    assertEquals(wrapper.getRows(), read.getRows());
+    assertEquals(1000, read.getFetchedAt());
+    assertEquals(20, read.getFetchMillis());
+  }
+
+  private static ResultSet parse() {
+    return ResultSetFactory
+        .fromJSON(new ByteArrayInputStream(RESULT.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static int count(ResultSet resultSet) {
+    int count = 0;
+    while (resultSet.hasNext()) {
+      resultSet.next();
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,117 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import dbpedia.api.client.Deadline;
+import dbpedia.api.client.SingleFlight;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutionException;
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.query.QueryException;
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+  @Test
+  public void concurrentCallsShareOneExecution() throws Exception {
+    SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    Object result = new Object();
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+
+    List<Future<Object>> futures = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      futures.add(pool.submit(() -> singleFlight.execute("query", () -> {
+        calls.incrementAndGet();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+        return result;
+      })));
+    }
+    // wait until all callers are waiting for the first execution
+    while (singleFlight.getSharedCalls() < 7) {
+      Thread.sleep(5);
+    }
+    release.countDown();
+    for (Future<Object> future : futures) {
+      assertSame(result, future.get(5, TimeUnit.SECONDS));
+    }
+    pool.shutdown();
+
+    assertEquals(1, calls.get());
+    assertEquals(1, singleFlight.getExecutions());
+    assertEquals(7, singleFlight.getSharedCalls());
+    assertEquals(0, singleFlight.getInFlight());
+  }
+
+  @Test
+  public void cancelledCallerStopsWaiting() throws Exception {
+    SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    Future<Object> executing = pool.submit(() -> singleFlight.execute("query", () -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      return "result";
+    }));
+    while (singleFlight.getCallers("query") < 1) {
+      Thread.sleep(5);
+    }
+    Deadline deadline = Deadline.none();
+    Future<Object> waiting = pool
+        .submit(() -> singleFlight.execute("query", () -> "own", deadline));
+    while (singleFlight.getCallers("query") < 2) {
+      Thread.sleep(5);
+    }
+
+    deadline.cancel();
+    try {
+      waiting.get(5, TimeUnit.SECONDS);
+      fail("QueryCancelledException expected");
+    } catch (ExecutionException e) {
+      assertEquals(QueryCancelledException.class, e.getCause().getClass());
+    }
+    // only the executing caller is left
+    assertEquals(1, singleFlight.getCallers("query"));
+    release.countDown();
+    assertEquals("result", executing.get(5, TimeUnit.SECONDS));
+    pool.shutdown();
+  }
+
+  @Test
+  public void sequentialCallsAreNotShared() {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    singleFlight.execute("query", () -> "first");
+    assertEquals("second", singleFlight.execute("query", () -> "second"));
+    assertEquals(2, singleFlight.getExecutions());
+    assertEquals(0, singleFlight.getSharedCalls());
+  }
+
+  @Test
+  public void exceptionIsRethrownUnwrapped() {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    try {
+      singleFlight.execute("query", () -> {
+        throw new QueryException("bad query");
+      });
+      fail("QueryException expected");
+    } catch (QueryException e) {
+      assertEquals("bad query", e.getMessage());
+    }
+    assertEquals(0, singleFlight.getInFlight());
+  }
+}
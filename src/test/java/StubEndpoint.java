@@ -0,0 +1,181 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.riot.ResultSetMgr;
+import org.apache.jena.riot.resultset.ResultSetLang;
+
+/**
+ * Local SPARQL endpoint for tests, which answers every query with the same result after a delay
+ */
+public class StubEndpoint {
+
+  static final String RESULT = "{\"head\":{\"vars\":[\"entities\"]},\"results\":{\"bindings\":"
+      + "[{\"entities\":{\"type\":\"uri\",\"value\":\"http://dbpedia.org/resource/Leipzig\"}}]}}";
+  private static final String ROW =
+      "{\"entities\":{\"type\":\"uri\",\"value\":\"http://dbpedia.org/resource/Leipzig\"}}";
+
+  private final HttpServer server;
+  final String url;
+  volatile long delayMillis;
+  volatile int status;
+  /**
+   * Number of rows of the result
+   */
+  volatile int rows = 1;
+  /**
+   * Send gzip encoded results if the client accepts them
+   */
+  volatile boolean gzip;
+  /**
+   * Content-Encoding and decoded body of the last request
+   */
+  volatile String requestEncoding;
+  volatile String requestBody;
+  /**
+   * Result content types the stub can send, the first is sent if the client accepts none of them
+   */
+  volatile List<String> contentTypes = Collections
+      .singletonList("application/sparql-results+json");
+  /**
+   * Answer 406 Not Acceptable if the client accepts a content type the stub cannot send
+   */
+  volatile boolean rejectUnknownTypes;
+  /**
+   * Accept header of the last request
+   */
+  volatile String accept;
+  /**
+   * Number of received queries
+   */
+  final AtomicInteger hits = new AtomicInteger();
+  /**
+   * Number of queries for which the response could not be sent, e.g. because they were aborted
+   */
+  final AtomicInteger brokenResponses = new AtomicInteger();
+
+  private StubEndpoint(long delayMillis, int status) throws IOException {
+    this.delayMillis = delayMillis;
+    this.status = status;
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/sparql", exchange -> {
+      hits.incrementAndGet();
+      try {
+        Thread.sleep(this.delayMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      requestEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+      InputStream in = exchange.getRequestBody();
+      requestBody = new String(readAll("gzip".equals(requestEncoding)
+          ? new GZIPInputStream(in) : in), StandardCharsets.UTF_8);
+
+      accept = exchange.getRequestHeaders().getFirst("Accept");
+      String contentType = negotiate(accept);
+      if (contentType == null) {
+        exchange.sendResponseHeaders(406, -1);
+        exchange.close();
+        return;
+      }
+      byte[] body = encode(result(), contentType);
+      exchange.getResponseHeaders().add("Content-Type", contentType);
+      String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+      if (gzip && accepted != null && accepted.contains("gzip")) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(compressed)) {
+          out.write(body);
+        }
+        body = compressed.toByteArray();
+        exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+      }
+      try (OutputStream out = exchange.getResponseBody()) {
+        exchange.sendResponseHeaders(this.status, body.length);
+        out.write(body);
+      } catch (IOException e) {
+        brokenResponses.incrementAndGet();
+      }
+    });
+    server.start();
+    url = "http://127.0.0.1:" + server.getAddress().getPort() + "/sparql";
+  }
+
+  /**
+   * @return the first content type of the Accept header which the stub can send, null if the
+   * request is rejected
+   */
+  private String negotiate(String accept) {
+    String negotiated = null;
+    if (accept != null) {
+      for (String range : accept.split(",")) {
+        String type = range.split(";")[0].trim();
+        if (!contentTypes.contains(type)) {
+          if (rejectUnknownTypes) {
+            return null;
+          }
+        } else if (negotiated == null) {
+          negotiated = type;
+        }
+      }
+    }
+    return negotiated != null ? negotiated : contentTypes.get(0);
+  }
+
+  private static byte[] encode(String json, String contentType) {
+    if (contentType.endsWith("json")) {
+      return json.getBytes(StandardCharsets.UTF_8);
+    }
+    ResultSet resultSet = ResultSetFactory
+        .fromJSON(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ResultSetMgr.write(out, resultSet, contentType.endsWith("thrift")
+        ? ResultSetLang.SPARQLResultSetThrift : ResultSetLang.SPARQLResultSetXML);
+    return out.toByteArray();
+  }
+
+  private String result() {
+    if (rows == 1) {
+      return RESULT;
+    }
+    StringBuilder result = new StringBuilder(
+        "{\"head\":{\"vars\":[\"entities\"]},\"results\":{\"bindings\":[");
+    for (int i = 0; i < rows; i++) {
+      result.append(i > 0 ? "," : "").append(ROW);
+    }
+    return result.append("]}}").toString();
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+
+  static StubEndpoint start(long delayMillis, int status) {
+    try {
+      return new StubEndpoint(delayMillis, status);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  void stop() {
+    server.stop(0);
+  }
+}
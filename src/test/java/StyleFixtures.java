@@ -0,0 +1,81 @@
+import dbpedia.api.configuration.Configuration;
+import dbpedia.api.model.NamespaceTrie;
+import dbpedia.api.model.ResultSetWrapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.jena.datatypes.BaseDatatype;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingHashMap;
+
+/**
+ * Results and recorded outputs (src/test/resources/styles) of the tests of the style writers
+ */
+final class StyleFixtures {
+
+  static final String DBR = "http://dbpedia.org/resource/";
+  static final String DBO = "http://dbpedia.org/ontology/";
+
+  private StyleFixtures() {
+  }
+
+  /**
+   * @return the namespaces of config/prefixes.json
+   */
+  static NamespaceTrie namespaces() throws IOException {
+    return NamespaceTrie.of(Configuration.loadPrefixMapping("config/prefixes.json"));
+  }
+
+  /**
+   * Rows with all kinds of terms, unbound variables and strings which org.json escapes
+   */
+  static ResultSetWrapper result() {
+    List<String> vars = Arrays.asList("entities", "label", "populationTotal", "areaTotal",
+        "abstract", "type", "sameAs", "founder");
+    Node blank = NodeFactory.createBlankNode();
+    List<Binding> rows = new ArrayList<>();
+    rows.add(row(vars, NodeFactory.createURI(DBR + "Leipzig"),
+        NodeFactory.createLiteral("Leipzig", "de"),
+        NodeFactory.createLiteral("560472", XSDDatatype.XSDnonNegativeInteger),
+        NodeFactory.createLiteral("297.36",
+            new BaseDatatype("http://dbpedia.org/datatype/squareKilometre")),
+        NodeFactory.createLiteral("Leipzig is a city in <b>Saxony</b>, \"Germany\".\n"),
+        NodeFactory.createURI(DBO + "City"),
+        NodeFactory.createURI("http://www.wikidata.org/entity/Q2079"), blank));
+    rows.add(row(vars, NodeFactory.createURI(DBR + "Dresden"),
+        NodeFactory.createLiteral("Dresden", "en"), null, null,
+        NodeFactory.createLiteral("Tab\tcontrol\u0001 C1\u0085 separator  emoji 😀"),
+        NodeFactory.createURI("http://xmlns.com/foaf/0.1/Place"),
+        NodeFactory.createURI("http://example.org/unknown/Dresden"), blank));
+    rows.add(row(vars, NodeFactory.createURI(DBR + "Category:Cities_in_Saxony"), null, null,
+        null, null, NodeFactory.createURI("http://www.w3.org/2004/02/skos/core#Concept"), null,
+        NodeFactory.createBlankNode()));
+    return new ResultSetWrapper(vars, rows);
+  }
+
+  /**
+   * @param nodes the values of the vars in their order, null for unbound
+   */
+  static Binding row(List<String> vars, Node... nodes) {
+    BindingHashMap row = new BindingHashMap();
+    for (int i = 0; i < nodes.length; i++) {
+      if (nodes[i] != null) {
+        row.add(Var.alloc(vars.get(i)), nodes[i]);
+      }
+    }
+    return row;
+  }
+
+  static String fixture(String name) throws IOException {
+    return new String(Files.readAllBytes(Paths.get("src/test/resources/styles", name)),
+        StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,104 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import dbpedia.api.controller.OffHeapStore;
+import dbpedia.api.controller.TieredCache;
+import dbpedia.api.model.ResultSetCodec;
+import dbpedia.api.model.ResultSetWrapper;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+public class TieredCacheTest {
+
+  @Test
+  public void largeResultsAreStoredOffHeap() {
+    ConcurrentMapCache heap = new ConcurrentMapCache("DBpediaClient.sendQuery");
+    OffHeapStore offHeap = new OffHeapStore(1 << 20, 0, 0);
+    TieredCache cache = new TieredCache(heap, offHeap, 5);
+    ResultSetWrapper small = result(5);
+    ResultSetWrapper large = result(100).fetched(1234, 56);
+    cache.put("small", small);
+    cache.put("large", large);
+
+    assertEquals(1, heap.getNativeCache().size());
+    assertEquals(1, offHeap.size());
+    assertEquals(small.getRows(), cache.get("small", ResultSetWrapper.class).getRows());
+    ResultSetWrapper loaded = cache.get("large", ResultSetWrapper.class);
+    assertEquals(large.getRows(), loaded.getRows());
+    assertEquals(1234, loaded.getFetchedAt());
+    assertEquals(56, loaded.getFetchMillis());
+    assertNull(cache.get("missing"));
+    assertEquals(1, cache.getHeapHits());
+    assertEquals(1, cache.getOffHeapHits());
+    assertEquals(1, cache.getMisses());
+
+    // a smaller result of the same key moves the entry back to the heap
+    cache.put("large", small);
+    assertEquals(0, offHeap.size());
+    assertEquals(0, offHeap.getUsedBytes());
+    assertEquals(small.getRows(), cache.get("large", ResultSetWrapper.class).getRows());
+  }
+
+  @Test
+  public void leastRecentlyUsedEntriesAreEvicted() {
+    int entryBytes = encodedSize(result(100));
+    OffHeapStore offHeap = new OffHeapStore(2 * entryBytes, 0, 0);
+    TieredCache cache = new TieredCache(new ConcurrentMapCache("heap"), offHeap, 5);
+    cache.put("first", result(100));
+    cache.put("second", result(100));
+    cache.get("first");
+    cache.put("third", result(100));
+
+    assertEquals(2, offHeap.size());
+    assertEquals(1, offHeap.getEvictions());
+    assertEquals(2 * entryBytes, offHeap.getUsedBytes());
+    assertNull(cache.get("second"));
+    assertEquals(100, cache.get("first", ResultSetWrapper.class).size());
+  }
+
+  @Test
+  public void expiredEntriesAreMisses() throws Exception {
+    OffHeapStore offHeap = new OffHeapStore(1 << 20, 0, 20);
+    TieredCache cache = new TieredCache(new ConcurrentMapCache("heap"), offHeap, 5);
+    cache.put("large", result(100));
+    Thread.sleep(50);
+
+    assertNull(cache.get("large"));
+    assertEquals(0, offHeap.size());
+  }
+
+  @Test
+  public void offHeapHitsKeepTheContentHash() {
+    OffHeapStore offHeap = new OffHeapStore(1 << 20, 0, 0);
+    ResultSetWrapper large = result(100);
+    offHeap.put("large", large);
+    long encoded = ResultSetCodec.getEncodedResults();
+
+    assertEquals(large.getContentHash(), offHeap.get("large").getContentHash());
+    assertEquals(large.getContentHash(), offHeap.get("large").getContentHash());
+    // only the hash of the original result was computed
+    assertEquals(encoded + 1, ResultSetCodec.getEncodedResults());
+  }
+
+  private static int encodedSize(ResultSetWrapper result) {
+    OffHeapStore store = new OffHeapStore(Long.MAX_VALUE, 0, 0);
+    store.put("size", result);
+    return (int) store.getUsedBytes();
+  }
+
+  private static ResultSetWrapper result(int size) {
+    List<Binding> rows = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      rows.add(BindingFactory.binding(Var.alloc("entities"),
+          NodeFactory.createURI("http://dbpedia.org/resource/Entity" + i)));
+    }
+    return new ResultSetWrapper(Collections.singletonList("entities"), rows);
+  }
+}
@@ -0,0 +1,178 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import dbpedia.api.controller.SerializedSizeWeigher;
+import dbpedia.api.controller.TinyLfuCache;
+import dbpedia.api.model.ResultSetCodec;
+import dbpedia.api.model.ResultSetWrapper;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.ehcache.EhCacheCache;
+
+public class TinyLfuCacheTest {
+
+  private static final ToIntFunction<Object> BYTES = value -> ((byte[]) value).length;
+
+  @Test
+  public void weightIsLimited() {
+    TinyLfuCache cache = new TinyLfuCache("test", 10000, 0, 0, BYTES);
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, new byte[1000]);
+    }
+    assertTrue(cache.getWeight() <= 10000);
+    assertEquals(cache.size() * 1000, cache.getWeight());
+    assertEquals(100 - cache.size(), cache.getEvictions());
+
+    cache.put("huge", new byte[20000]);
+    assertNull(cache.get("huge"));
+    assertEquals(1, cache.getRejections());
+
+    cache.evict(99);
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getWeight());
+  }
+
+  @Test
+  public void frequentEntriesSurviveAScan() {
+    TinyLfuCache cache = new TinyLfuCache("test", 100000, 0, 0, BYTES);
+    for (int round = 0; round < 10; round++) {
+      for (int i = 0; i < 50; i++) {
+        if (cache.get("hot" + i) == null) {
+          cache.put("hot" + i, new byte[1000]);
+        }
+      }
+    }
+    for (int i = 0; i < 10000; i++) {
+      cache.put("scan" + i, new byte[1000]);
+    }
+    for (int i = 0; i < 50; i++) {
+      assertNotNull("hot" + i, cache.get("hot" + i));
+    }
+  }
+
+  @Test
+  public void entriesExpire() throws Exception {
+    TinyLfuCache cache = new TinyLfuCache("test", 100000, 0, 20, BYTES);
+    cache.put("key", new byte[10]);
+    Thread.sleep(50);
+    assertNull(cache.get("key"));
+    assertEquals(0, cache.getWeight());
+  }
+
+  @Test
+  public void resultsWeighAboutTheirEncodedSize() {
+    List<Binding> rows = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      rows.add(BindingFactory.binding(Var.alloc("entities"),
+          NodeFactory.createURI("http://dbpedia.org/resource/Entity" + i)));
+    }
+    List<String> vars = Collections.singletonList("entities");
+    long encodedResults = ResultSetCodec.getEncodedResults();
+    int weight = new SerializedSizeWeigher().applyAsInt(new ResultSetWrapper(vars, rows));
+    assertEquals(encodedResults, ResultSetCodec.getEncodedResults());
+    int encodedSize = ResultSetCodec.encode(vars, rows).length;
+    assertTrue(weight + " for " + encodedSize + " bytes",
+        weight > encodedSize * 0.8 && weight < encodedSize * 1.25);
+  }
+
+  /**
+   * Replays a trace shaped like the query log against the ehcache policies (entry limit) and
+   * W-TinyLFU (byte limit) with the same memory: Zipf distributed popular queries of mostly small
+   * and a few large results, mixed with a crawler that requests each misspelled entity once.
+   */
+  @Test
+  public void tinyLfuHasTheBestHitRatioOnTheTrace() {
+    Random random = new Random(42);
+    int queries = 5000;
+    int[] sizes = new int[queries];
+    long totalSize = 0;
+    for (int i = 0; i < queries; i++) {
+      sizes[i] = random.nextInt(20) == 0 ? 50000 + random.nextInt(150000)
+          : 200 + random.nextInt(2000);
+      totalSize += sizes[i];
+    }
+    double[] zipf = new double[queries];
+    double sum = 0;
+    for (int i = 0; i < queries; i++) {
+      sum += 1 / Math.pow(i + 1, 0.9);
+      zipf[i] = sum;
+    }
+    List<String> keys = new ArrayList<>();
+    List<Integer> keySizes = new ArrayList<>();
+    for (int i = 0; i < 200000; i++) {
+      if (random.nextInt(10) < 3) {
+        keys.add("crawler" + i);
+        keySizes.add(100 + random.nextInt(300));
+      } else {
+        int query = search(zipf, random.nextDouble() * sum);
+        keys.add("query" + query);
+        keySizes.add(sizes[query]);
+      }
+    }
+    long budget = totalSize / 20;
+    int entries = (int) (budget / (totalSize / queries));
+
+    CacheManager manager = CacheManager.create(new net.sf.ehcache.config.Configuration()
+        .name("comparison"));
+    try {
+      double lfu = hitRatio(ehcache(manager, "lfu", entries, MemoryStoreEvictionPolicy.LFU),
+          keys, keySizes);
+      double lru = hitRatio(ehcache(manager, "lru", entries, MemoryStoreEvictionPolicy.LRU),
+          keys, keySizes);
+      double tinyLfu = hitRatio(new TinyLfuCache("tinylfu", budget, 0, 0, BYTES), keys,
+          keySizes);
+      assertTrue("W-TinyLFU " + tinyLfu + ", ehcache LFU " + lfu, tinyLfu > lfu);
+      assertTrue("W-TinyLFU " + tinyLfu + ", ehcache LRU " + lru, tinyLfu > lru);
+    } finally {
+      manager.shutdown();
+    }
+  }
+
+  private static Cache ehcache(CacheManager manager, String name, int entries,
+      MemoryStoreEvictionPolicy policy) {
+    manager.addCache(new net.sf.ehcache.Cache(new CacheConfiguration(name, entries)
+        .memoryStoreEvictionPolicy(policy).eternal(true)));
+    return new EhCacheCache(manager.getEhcache(name));
+  }
+
+  private static double hitRatio(Cache cache, List<String> keys, List<Integer> sizes) {
+    int hits = 0;
+    for (int i = 0; i < keys.size(); i++) {
+      if (cache.get(keys.get(i)) != null) {
+        hits++;
+      } else {
+        cache.put(keys.get(i), new byte[sizes.get(i)]);
+      }
+    }
+    return (double) hits / keys.size();
+  }
+
+  private static int search(double[] cumulative, double value) {
+    int low = 0;
+    int high = cumulative.length - 1;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (cumulative[middle] < value) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+}
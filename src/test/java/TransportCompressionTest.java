@@ -0,0 +1,101 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import dbpedia.api.client.Deadline;
+import dbpedia.api.client.EndpointConnectionPool;
+import dbpedia.api.client.EndpointRouter;
+import dbpedia.api.client.KeyedQuery;
+import dbpedia.api.client.TransferMetrics;
+import dbpedia.api.controller.DBpediaClient;
+import dbpedia.api.model.ResultSetWrapper;
+import java.io.IOException;
+import java.util.Collections;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSet;
+import org.junit.After;
+import org.junit.Test;
+
+public class TransportCompressionTest {
+
+  private static final KeyedQuery QUERY = new KeyedQuery(QueryFactory
+      .create("SELECT ?entities WHERE { ?entities a <http://dbpedia.org/ontology/City> }"));
+
+  private StubEndpoint stub = StubEndpoint.start(0, 200);
+  private EndpointConnectionPool pool;
+  private EndpointRouter router;
+
+  @After
+  public void tearDown() throws IOException {
+    router.close();
+    stub.stop();
+    pool.close();
+  }
+
+  @Test
+  public void compressedResponseIsDecodedAndCounted() {
+    stub.gzip = true;
+    stub.rows = 500;
+    DBpediaClient client = createClient(new EndpointConnectionPool.Builder());
+
+    assertEquals(500, size(client.sendQuery(QUERY, Deadline.none())));
+    TransferMetrics metrics = pool.getTransferMetrics();
+    assertEquals(1, metrics.getResponses());
+    assertEquals(1, metrics.getCompressedResponses());
+    assertTrue(metrics.getWireBytes() > 0);
+    assertTrue(metrics.getWireBytes() * 10 < metrics.getDecodedBytes());
+  }
+
+  @Test
+  public void compressionCanBeSwitchedOff() {
+    stub.gzip = true;
+    DBpediaClient client = createClient(
+        new EndpointConnectionPool.Builder().setResponseCompression(false));
+
+    assertEquals(1, size(client.sendQuery(QUERY, Deadline.none())));
+    TransferMetrics metrics = pool.getTransferMetrics();
+    assertEquals(0, metrics.getCompressedResponses());
+    assertEquals(metrics.getWireBytes(), metrics.getDecodedBytes());
+  }
+
+  @Test
+  public void longQueriesAreSentCompressed() {
+    DBpediaClient client = createClient(new EndpointConnectionPool.Builder()
+        .setRequestCompression(true).setRequestCompressionMinBytes(100));
+
+    // queries longer than the URL limit of Jena are sent as POST
+    StringBuilder entities = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      entities.append(" <http://dbpedia.org/resource/Entity_").append(i).append(">");
+    }
+    Query longQuery = QueryFactory.create("SELECT ?entities WHERE { VALUES ?entities {"
+        + entities + " } }");
+    assertEquals(1, size(client.sendQuery(new KeyedQuery(longQuery), Deadline.none())));
+    assertEquals("gzip", stub.requestEncoding);
+    assertTrue(stub.requestBody.startsWith("query="));
+    assertEquals(1, pool.getTransferMetrics().getCompressedRequests());
+
+    // short queries are sent as GET without body
+    client.sendQuery(QUERY, Deadline.none());
+    assertNull(stub.requestEncoding);
+    assertEquals(1, pool.getTransferMetrics().getCompressedRequests());
+  }
+
+  private DBpediaClient createClient(EndpointConnectionPool.Builder poolBuilder) {
+    pool = poolBuilder.build();
+    router = new EndpointRouter.Builder().setEndpoints(Collections.singletonList(stub.url))
+        .build();
+    return new DBpediaClientBuilder().setRouter(router).setPool(pool).build();
+  }
+
+  private static int size(ResultSetWrapper result) {
+    ResultSet resultSet = result.getResultSet();
+    int size = 0;
+    while (resultSet.hasNext()) {
+      resultSet.next();
+      size++;
+    }
+    return size;
+  }
+}
@@ -2,6 +2,7 @@ import static org.junit.Assert.assertEquals;
 
 import dbpedia.api.configuration.Configuration;
 import dbpedia.api.factory.ValueRequestQueryFactory;
+import dbpedia.api.model.NamespaceTrie;
 import dbpedia.api.model.RequestModel.Style;
 import dbpedia.api.model.ResourceModel;
 import dbpedia.api.model.ValueRequestModel;
@@ -17,7 +18,7 @@ public class ValueRequestQueryFactoryTest {
 
   ValueRequestQueryFactory factory = new ValueRequestQueryFactory(
       Configuration.createOntModel("config/dbpedia_2016-10.owl"),
-      Configuration.loadPrefixMapping("config/prefixes.json"));
+      NamespaceTrie.of(Configuration.loadPrefixMapping("config/prefixes.json")));
    //ParameterizedSparqlString prefix = factory.getPrefix();
 
   public ValueRequestQueryFactoryTest() throws IOException {